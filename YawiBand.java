@@ -0,0 +1,113 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// A narrow band of pixels around an outline. The tracer treats the
+// pixels outside the band as outside the threshold, so the work done
+// in the band is proportional to its area and not to the image.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// pixels within a distance from an outline
+class YawiBand
+{
+	final int width;
+	final int height;
+	/// true for the pixels of the band
+	final boolean[] mask;
+
+	/// indexes of the pixels set in mask, used to clear it
+	private int[] marked = new int[1024];
+	private int n_marked = 0;
+
+	YawiBand(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+
+		mask = new boolean[width * height];
+	}
+
+	/// add the pixels within radius pixels from the outline, the outline
+	/// coordinates are multiplied by scale (pixel corners, as traced)
+	void Add(YawiContour contour, int scale, int radius)
+	{
+		int n = contour.npoints;
+
+		for(int i = 0; i < n; i++)
+		{
+			int x0 = contour.xpoints[i] * scale;
+			int y0 = contour.ypoints[i] * scale;
+			int x1 = contour.xpoints[(i + 1) % n] * scale;
+			int y1 = contour.ypoints[(i + 1) % n] * scale;
+
+			// the traced edges are horizontal or vertical: the band of an edge is
+			// the rectangle it sweeps, the corners are covered by both edges
+			if(x0 == x1 || y0 == y1)
+			{
+				Mark(Math.min(x0, x1) - radius, Math.min(y0, y1) - radius,
+					 Math.max(x0, x1) + radius - 1, Math.max(y0, y1) + radius - 1);
+				continue;
+			}
+
+			int steps = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+
+			for(int s = 0; s <= steps; s++)
+			{
+				int x = x0 + (x1 - x0) * s / steps;
+				int y = y0 + (y1 - y0) * s / steps;
+
+				Mark(x - radius, y - radius, x + radius - 1, y + radius - 1);
+			}
+		}
+	}
+
+	/// add the rectangle [x_a,x_b]x[y_a,y_b] clipped to the image
+	private void Mark(int x_a, int y_a, int x_b, int y_b)
+	{
+		x_a = Math.max(x_a, 0);
+		y_a = Math.max(y_a, 0);
+		x_b = Math.min(x_b, width - 1);
+		y_b = Math.min(y_b, height - 1);
+
+		for(int y = y_a; y <= y_b; y++)
+			for(int i = y * width + x_a; i <= y * width + x_b; i++)
+			{
+				if(mask[i])
+					continue;
+
+				mask[i] = true;
+
+				if(n_marked == marked.length)
+				{
+					int[] temp = new int[marked.length * 2];
+					System.arraycopy(marked, 0, temp, 0, n_marked);
+					marked = temp;
+				}
+
+				marked[n_marked++] = i;
+			}
+	}
+
+	/// true if the pixel (x,y) is in the band
+	boolean Contains(int x, int y)
+	{
+		return x >= 0 && y >= 0 && x < width && y < height && mask[y * width + x];
+	}
+
+	/// number of pixels of the band
+	int Size() { return n_marked; }
+
+	/// empty the band, the cost is proportional to its size
+	void Clear()
+	{
+		for(int i = 0; i < n_marked; i++)
+			mask[marked[i]] = false;
+
+		n_marked = 0;
+	}
+}
@@ -0,0 +1,580 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Batch runner for long unattended runs: segments a list of units
+// (study, slice, seed) with the headless segmenter and records every
+// completed unit in an append-only journal, so a run stopped by a
+// crash or a restart goes on from where it was, skipping the units
+// already in the journal. A study is a directory of slices, as for
+// Import sequence, or an image file, a stack for TIFF. The slices are
+// segmented by a bounded pool of workers, one job for every slice so
+// a slice is decoded once for all its seeds, and the outlines are
+// appended to a CSV or JSON Lines ROIs file. Run with:
+//		java -cp ij.jar:. YawiBatch <units file> <journal> <ROIs file> [threads]
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.*;
+import ij.io.*;
+import ij.process.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// resumable batch segmentation of (study, slice, seed) units
+class YawiBatch
+{
+	/// status of a completed unit in the journal
+	static final String OK = "ok", FAILED = "failed";
+
+	/// milliseconds between two progress reports
+	static final long REPORT_DEF = 10000;
+
+	/// a line of the units file, the study can contain spaces
+	private static final Pattern UNIT_LINE = Pattern.compile("(.*\\S)\\s+(\\d+)\\s+(-?\\d+)\\s+(-?\\d+)");
+
+	/// a seed to segment: the study, the slice (1-based) and the point
+	static class Unit
+	{
+		final String study;
+		final int slice;
+		final int x;
+		final int y;
+
+		Unit(String study, int slice, int x, int y)
+		{
+			this.study = study;
+			this.slice = slice;
+			this.x = x;
+			this.y = y;
+		}
+
+		/// the key of the unit in the journal
+		String Key() { return study + '\t' + slice + '\t' + x + '\t' + y; }
+
+		public String toString() { return study + " slice " + slice + " seed " + x + "," + y; }
+	}
+
+	private final List<Unit> units;
+	private final File journal;
+	private final YawiRoiWriter writer;
+	private final YawiSettings settings;
+
+	/// converted slices of the studies, null if not enabled
+	private final YawiSliceCache cache = YawiSliceCache.Default();
+
+	/// units found in the journal, units to run
+	private int resumed = 0;
+	private int total = 0;
+
+	/// units of this run: completed, without an outline, not completed because of an error
+	private final AtomicInteger done = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicInteger errors = new AtomicInteger();
+
+	/// failures of the units found in the journal
+	private int resumed_failures = 0;
+
+	private long start_ns = 0;
+
+	/// the journal, written by a worker at a time
+	private Writer journal_out = null;
+
+	YawiBatch(List<Unit> units, File journal, YawiRoiWriter writer, YawiSettings settings)
+	{
+		this.units = units;
+		this.journal = journal;
+		this.writer = writer;
+		this.settings = settings;
+	}
+
+	int GetResumed() { return resumed; }
+
+	int GetDone() { return done.get(); }
+
+	int GetFailures() { return failures.get() + resumed_failures; }
+
+	int GetErrors() { return errors.get(); }
+
+	/// segment the units not in the journal with n_threads workers, a progress
+	/// report is printed every report_ms (never if 0)
+	void Run(int n_threads, long report_ms) throws IOException, InterruptedException
+	{
+		Set<String> completed = ReadJournal();
+
+		// the units left, grouped by slice in the order of the list
+		Map<String, List<Unit>> jobs = new LinkedHashMap<String, List<Unit>>();
+		// the slices of every study directory, listed once for all its jobs;
+		// null for a study that is an image file
+		final Map<String, String[]> listings = new HashMap<String, String[]>();
+
+		for(Unit u : units)
+		{
+			if(completed.contains(u.Key()))
+			{
+				resumed++;
+				continue;
+			}
+
+			if(!listings.containsKey(u.study))
+			{
+				File study = new File(u.study);
+				listings.put(u.study, study.isDirectory() ? ListSlices(study) : null);
+			}
+
+			String slice_key = u.study + '\t' + u.slice;
+			List<Unit> job = jobs.get(slice_key);
+
+			if(job == null)
+				jobs.put(slice_key, job = new ArrayList<Unit>());
+
+			job.add(u);
+			total++;
+		}
+
+		journal_out = OpenJournal();
+		start_ns = System.nanoTime();
+
+		// a full queue makes the submitting thread run the job, so no more than
+		// 3 * n_threads slices are waiting or decoded at the same time
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(n_threads, n_threads, 0, TimeUnit.MILLISECONDS,
+														 new ArrayBlockingQueue<Runnable>(2 * n_threads),
+														 new YawiSnapshot.DaemonFactory("Yawi batch"),
+														 new ThreadPoolExecutor.CallerRunsPolicy());
+
+		Thread reporter = (report_ms > 0) ? Reporter(report_ms) : null;
+
+		try
+		{
+			for(final List<Unit> job : jobs.values())
+			{
+				final String[] sorted = listings.get(job.get(0).study);
+
+				pool.execute(new Runnable()
+				{
+					public void run() { RunSlice(job, sorted); }
+				});
+			}
+
+			pool.shutdown();
+
+			while(!pool.awaitTermination(1, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			pool.shutdownNow();
+
+			if(reporter != null)
+				reporter.interrupt();
+
+			synchronized(this)
+			{
+				journal_out.close();
+			}
+		}
+	}
+
+	/// the keys of the units in the journal; a line cut by a crash is not a key
+	private Set<String> ReadJournal() throws IOException
+	{
+		Set<String> keys = new HashSet<String>();
+
+		if(!journal.isFile())
+			return keys;
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+
+		try
+		{
+			for(String line = in.readLine(); line != null; line = in.readLine())
+			{
+				String[] tok = line.split("\t");
+
+				if(tok.length < 5 || !(tok[4].equals(OK) || tok[4].equals(FAILED)))
+					continue;
+
+				if(keys.add(tok[0] + '\t' + tok[1] + '\t' + tok[2] + '\t' + tok[3]) && tok[4].equals(FAILED))
+					resumed_failures++;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return keys;
+	}
+
+	/// open the journal for appending, a line cut by a crash is ended first
+	private Writer OpenJournal() throws IOException
+	{
+		boolean cut = false;
+
+		if(journal.length() > 0)
+		{
+			RandomAccessFile f = new RandomAccessFile(journal, "r");
+
+			try
+			{
+				f.seek(f.length() - 1);
+				cut = f.read() != '\n';
+			}
+			finally
+			{
+				f.close();
+			}
+		}
+
+		Writer out = new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8");
+
+		if(cut)
+		{
+			out.write('\n');
+			out.flush();
+		}
+
+		return out;
+	}
+
+	/// segment the seeds of a slice, sorted are the slices of its study directory
+	private void RunSlice(List<Unit> job, String[] sorted)
+	{
+		Unit first = job.get(0);
+		ImageProcessor ip;
+
+		try
+		{
+			ip = LoadSlice(first.study, first.slice, sorted, cache);
+		}
+		catch(Exception ex)
+		{
+			ip = null;
+		}
+
+		if(ip == null)
+		{
+			// not journaled, the units are run again by the next run
+			errors.addAndGet(job.size());
+			System.out.println("Error, can't read " + first.study + " slice " + first.slice);
+			return;
+		}
+
+		byte[] pixels = (byte[])ip.getPixels();
+		int width = ip.getWidth();
+		int height = ip.getHeight();
+
+		// the seeds share the tables of the slice, a lone seed builds its window only
+		YawiMomentImage moments = (job.size() > 1 &&
+								   (settings._thr_mode == YawiSettings.THR_SIGMA || settings._snap_rad > 0)) ?
+			new YawiMomentImage(pixels, width, height) : null;
+
+		for(Unit u : job)
+		{
+			if(Thread.currentThread().isInterrupted())
+				return;
+
+			YawiContour c = null;
+			String reason = "seed out of the slice";
+
+			if(u.x >= 0 && u.y >= 0 && u.x < width && u.y < height)
+			{
+				YawiSegmenter seg = new YawiSegmenter(pixels, width, height, settings);
+
+				if(moments != null)
+					seg.SetMomentImage(moments);
+
+				c = seg.Segment(u.x, u.y);
+				reason = YawiSegmenter.FAIL_NAMES[seg.GetFailure()];
+			}
+
+			try
+			{
+				Complete(u, c, reason, pixels, width, height);
+			}
+			catch(IOException ex)
+			{
+				errors.incrementAndGet();
+				System.out.println("Error writing " + u + ": " + ex.getMessage());
+			}
+		}
+	}
+
+	/// write the outline of a unit and then its journal line: a unit in the
+	/// journal has its outline in the ROIs file
+	private synchronized void Complete(Unit u, YawiContour c, String reason, byte[] pixels, int width, int height)
+		throws IOException
+	{
+		if(c != null)
+		{
+			writer.Write(u.study + ":" + u.x + "," + u.y, u.slice, c, pixels, width, height);
+			done.incrementAndGet();
+
+			journal_out.write(u.Key() + '\t' + OK + '\n');
+		}
+		else
+		{
+			done.incrementAndGet();
+			failures.incrementAndGet();
+
+			journal_out.write(u.Key() + '\t' + FAILED + '\t' + reason + '\n');
+		}
+
+		journal_out.flush();
+	}
+
+	/// the slice files of a study directory in name order, as Import sequence
+	static String[] ListSlices(File dir)
+	{
+		String[] names = dir.list();
+		List<String> files = new ArrayList<String>();
+
+		for(int i = 0; names != null && i < names.length; i++)
+			if(!names[i].startsWith(".") && new File(dir, names[i]).isFile())
+				files.add(names[i]);
+
+		String[] sorted = files.toArray(new String[files.size()]);
+		Arrays.sort(sorted);
+
+		return sorted;
+	}
+
+	/// the file of a slice (1-based) of a study: the slice file of a directory, whose
+	/// slices are sorted (ListSlices), or the study itself; null if it doesn't exist
+	static File SliceFile(String study, int slice, String[] sorted)
+	{
+		if(sorted == null)
+			return new File(study);
+
+		if(slice < 1 || slice > sorted.length)
+			return null;
+
+		return new File(study, sorted[slice - 1]);
+	}
+
+	/// 8-bit gray slice (1-based) of a study, a directory of slices or an image
+	/// file, read through the cache if it is not null; null if it doesn't exist
+	static ImageProcessor LoadSlice(String study, int slice, YawiSliceCache cache) throws IOException
+	{
+		File file = new File(study);
+
+		return LoadSlice(study, slice, file.isDirectory() ? ListSlices(file) : null, cache);
+	}
+
+	/// LoadSlice of a study whose slices have already been listed, sorted is
+	/// ListSlices of a directory and null for an image file
+	static ImageProcessor LoadSlice(String study, int slice, String[] sorted, YawiSliceCache cache) throws IOException
+	{
+		File file = new File(study);
+		Opener opener = new Opener();
+		ImagePlus img;
+
+		if(sorted != null)
+		{
+			File slice_file = SliceFile(study, slice, sorted);
+
+			if(slice_file == null)
+				return null;
+
+			String path = slice_file.getPath();
+
+			YawiSliceCache.Slice cached = (cache != null) ? cache.Lookup(path) : null;
+
+			if(cached != null)
+				return new ByteProcessor(cached.width, cached.height, cached.Pixels(), null);
+
+			img = opener.openImage(path);
+
+			if(img == null)
+				return null;
+
+			int src_type = img.getType();
+
+			if(src_type != ImagePlus.GRAY8)
+				new ImageConverter(img).convertToGray8();
+
+			if(cache != null)
+				cache.Store(path, src_type, (byte[])img.getProcessor().getPixels(), img.getWidth(), img.getHeight());
+
+			return img.getProcessor();
+		}
+
+		String name = file.getName().toLowerCase();
+
+		// a TIFF stack is read a slice at a time
+		if(name.endsWith(".tif") || name.endsWith(".tiff"))
+			img = opener.openImage(study, slice);
+		else
+		{
+			img = opener.openImage(study);
+
+			if(img != null && slice > img.getStackSize())
+				return null;
+
+			if(img != null && img.getStackSize() > 1)
+				img = new ImagePlus(img.getTitle(), img.getStack().getProcessor(slice));
+		}
+
+		if(img == null)
+			return null;
+
+		if(img.getType() != ImagePlus.GRAY8)
+			new ImageConverter(img).convertToGray8();
+
+		return img.getProcessor();
+	}
+
+	/// a thread printing the progress every report_ms
+	private Thread Reporter(final long report_ms)
+	{
+		Thread t = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					while(true)
+					{
+						Thread.sleep(report_ms);
+						System.out.println(Progress());
+					}
+				}
+				catch(InterruptedException ex)
+				{
+					// the run is over
+				}
+			}
+		}, "Yawi batch report");
+
+		t.setDaemon(true);
+		t.start();
+
+		return t;
+	}
+
+	/// units done, throughput and estimated time left
+	String Progress()
+	{
+		int n = done.get();
+		int left = total - n - errors.get();
+		double secs = (System.nanoTime() - start_ns) / 1e9;
+		double rate = (secs > 0) ? n / secs : 0;
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(n).append('/').append(total).append(" units");
+
+		if(resumed > 0)
+			sb.append(" (+").append(resumed).append(" resumed)");
+
+		sb.append(", ").append(Math.round(rate * 10) / 10.0).append(" units/s");
+
+		if(rate > 0 && left > 0)
+			sb.append(", ETA ").append(Duration(left / rate));
+
+		sb.append(", ").append(GetFailures()).append(" failed, ").append(errors.get()).append(" errors");
+
+		return sb.toString();
+	}
+
+	/// seconds as h:mm:ss
+	private static String Duration(double secs)
+	{
+		long s = Math.round(secs);
+
+		return String.format("%d:%02d:%02d", s / 3600, (s / 60) % 60, s % 60);
+	}
+
+	/// read a units file, every line is: <study> <slice> <seed x> <seed y>
+	/// the study can contain spaces, the last three fields are the numbers
+	static List<Unit> ReadUnits(String path) throws IOException
+	{
+		List<Unit> units = new ArrayList<Unit>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+
+		try
+		{
+			String line;
+
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+
+				if(line.length() == 0 || line.startsWith("#"))
+					continue;
+
+				Matcher m = UNIT_LINE.matcher(line);
+
+				if(!m.matches())
+				{
+					System.err.println("Error, invalid line: " + line);
+					continue;
+				}
+
+				// the study of a unit is a field of the journal
+				units.add(new Unit(m.group(1).replace('\t', ' '), Integer.parseInt(m.group(2)),
+								   Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4))));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return units;
+	}
+
+	/// command line usage: YawiBatch <units file> <journal> <ROIs file> [threads]
+	/// the ROIs file is .csv or .jsonl and it is appended, as the journal
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 3)
+		{
+			System.err.println("usage: YawiBatch <units file> <journal> <ROIs file> [threads]");
+			return;
+		}
+
+		int n_threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		List<Unit> units = ReadUnits(args[0]);
+		final YawiRoiWriter writer = YawiRoiWriter.Append(args[2]);
+
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					writer.Close();
+				}
+				catch(IOException ex)
+				{
+					System.err.println("Error closing the ROIs file: " + ex.getMessage());
+				}
+			}
+		});
+
+		YawiBatch batch = new YawiBatch(units, new File(args[1]), writer, new YawiSettings());
+
+		batch.Run(n_threads, REPORT_DEF);
+
+		System.out.println(batch.Progress());
+	}
+}
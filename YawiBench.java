@@ -0,0 +1,298 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Micro benchmarks of the segmentation hot paths. Run with:
+//		java -cp ij.jar:. YawiBench
+// add --add-modules jdk.incubator.vector, with vector/YawiVectorCounter
+// compiled, to include the Vector API window count.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.util.Random;
+
+/// micro benchmarks, every case is warmed up before being measured
+class YawiBench
+{
+	/// a benchmarked operation, returns a value so the JIT can't drop the work
+	interface Op
+	{
+		long Run(int i);
+	}
+
+	static final int WIDTH = 512;
+	static final int HEIGHT = 512;
+	/// number of probes in a batch
+	static final int PROBES = 4096;
+
+	/// run op in batches for about ms milliseconds, returns the ns per call
+	static double Measure(Op op, int calls, long ms)
+	{
+		long sink = 0;
+		long start = System.nanoTime();
+		long end = start + ms * 1000000L;
+		long done = 0;
+
+		while(System.nanoTime() < end)
+		{
+			for(int i = 0; i < calls; i++)
+				sink += op.Run(i);
+
+			done += calls;
+		}
+
+		long elapsed = System.nanoTime() - start;
+
+		if(sink == 42)
+			System.out.print("");
+
+		return (double)elapsed / done;
+	}
+
+	/// warm up and measure
+	static void Bench(String name, Op op)
+	{
+		Measure(op, PROBES, 500);
+
+		double ns = Measure(op, PROBES, 1000);
+
+		System.out.println(String.format("%-32s %10.1f ns/op", name, ns));
+	}
+
+	/// warm up two operations and measure them in alternate rounds, the best round
+	/// of each is printed: the rounds of both see the same state of the machine
+	static void BenchPair(String name_a, Op op_a, String name_b, Op op_b, int rounds)
+	{
+		Measure(op_a, PROBES, 500);
+		Measure(op_b, PROBES, 500);
+
+		double best_a = Double.MAX_VALUE, best_b = Double.MAX_VALUE;
+
+		for(int r = 0; r < rounds; r++)
+		{
+			best_a = Math.min(best_a, Measure(op_a, PROBES, 200));
+			best_b = Math.min(best_b, Measure(op_b, PROBES, 200));
+		}
+
+		System.out.println(String.format("%-32s %10.1f ns/op", name_a, best_a));
+		System.out.println(String.format("%-32s %10.1f ns/op (%+.1f%%)", name_b, best_b, 100 * (best_b / best_a - 1)));
+	}
+
+	/// a noisy plane with a bright disc, the kind of slice the wand sees
+	static byte[] Phantom(Random rnd)
+	{
+		byte[] pixels = new byte[WIDTH * HEIGHT];
+
+		for(int y = 0; y < HEIGHT; y++)
+			for(int x = 0; x < WIDTH; x++)
+			{
+				double d = Math.hypot(x - WIDTH / 2, y - HEIGHT / 2);
+				pixels[y * WIDTH + x] = (byte)((d < WIDTH / 4 ? 170 : 70) + rnd.nextInt(30));
+			}
+
+		return pixels;
+	}
+
+	/// the window count of the first Yawi2D versions, column by column
+	static int ColumnCount(byte[] pixels, int x_a, int y_a, int x_b, int y_b, int lower, int upper)
+	{
+		int count = 0;
+
+		for(int xp = x_a; xp <= x_b; xp++)
+			for(int yp = y_a; yp <= y_b; yp++)
+			{
+				int value = pixels[WIDTH * yp + xp] & 0xff;
+
+				if(value >= lower && value <= upper)
+					count++;
+			}
+
+		return count;
+	}
+
+	/// window counts: column order, scalar, Vector API and summed area table
+	static void WindowCounts()
+	{
+		Random rnd = new Random(7);
+		final byte[] pixels = Phantom(rnd);
+
+		final int lower = 165;
+		final int upper = 200;
+
+		for(int rad = 2; rad <= 5; rad += 3)
+		{
+			final int side = 2 * rad;
+			final int[] px = new int[PROBES];
+			final int[] py = new int[PROBES];
+
+			for(int i = 0; i < PROBES; i++)
+			{
+				px[i] = rnd.nextInt(WIDTH - side);
+				py[i] = rnd.nextInt(HEIGHT - side);
+			}
+
+			System.out.println("\nwindow " + (side + 1) + "x" + (side + 1));
+
+			Bench("column order", new Op()
+			{
+				public long Run(int i) { return ColumnCount(pixels, px[i], py[i], px[i] + side, py[i] + side, lower, upper); }
+			});
+
+			final YawiWindowCounter scalar = new YawiWindowCounter.Scalar();
+
+			Bench(scalar.Name(), new Op()
+			{
+				public long Run(int i)
+				{
+					return scalar.Count(pixels, WIDTH, HEIGHT, px[i], py[i], px[i] + side, py[i] + side, lower, upper);
+				}
+			});
+
+			final YawiWindowCounter vector = YawiWindowCounter.LoadVector();
+
+			if(vector != null)
+				Bench(vector.Name(), new Op()
+				{
+					public long Run(int i)
+					{
+						return vector.Count(pixels, WIDTH, HEIGHT, px[i], py[i], px[i] + side, py[i] + side, lower, upper);
+					}
+				});
+			else
+				System.out.println("vector: not available (--add-modules jdk.incubator.vector)");
+
+			final YawiIntegralImage table = new YawiIntegralImage(pixels, WIDTH, HEIGHT, lower, upper);
+
+			Bench("summed area table", new Op()
+			{
+				public long Run(int i) { return table.Count(px[i], py[i], px[i] + side, py[i] + side); }
+			});
+
+			// the table has to be built before the first probe
+			Bench("summed area table build", new Op()
+			{
+				public long Run(int i) { return new YawiIntegralImage(pixels, WIDTH, HEIGHT, lower, upper).Count(0, 0, 1, 1); }
+			});
+		}
+	}
+
+	/// region criteria against the range test hardcoded in the segmenter:
+	/// pixel test, window count, a whole trace and a click on a RGB slice
+	static void Criteria()
+	{
+		Random rnd = new Random(11);
+		final byte[] pixels = Phantom(rnd);
+
+		final int lower = 165;
+		final int upper = 200;
+		final int side = 4;
+		final int[] px = new int[PROBES];
+		final int[] py = new int[PROBES];
+
+		for(int i = 0; i < PROBES; i++)
+		{
+			px[i] = rnd.nextInt(WIDTH - side);
+			py[i] = rnd.nextInt(HEIGHT - side);
+		}
+
+		System.out.println("\nregion criteria, window " + (side + 1) + "x" + (side + 1));
+
+		final YawiCriterion range = new YawiCriterion.Range(pixels, WIDTH, HEIGHT, lower, upper);
+		final YawiWindowCounter scalar = new YawiWindowCounter.Scalar();
+
+		BenchPair("pixel: hardcoded range", new Op()
+		{
+			public long Run(int i)
+			{
+				int value = pixels[py[i] * WIDTH + px[i]] & 0xff;
+
+				return (value >= lower && value <= upper) ? 1 : 0;
+			}
+		}, "pixel: criterion range", new Op()
+		{
+			public long Run(int i) { return range.Member(py[i] * WIDTH + px[i]) ? 1 : 0; }
+		}, 10);
+
+		BenchPair("window: hardcoded range", new Op()
+		{
+			public long Run(int i)
+			{
+				return scalar.Count(pixels, WIDTH, HEIGHT, px[i], py[i], px[i] + side, py[i] + side, lower, upper);
+			}
+		}, "window: criterion range", new Op()
+		{
+			public long Run(int i) { return range.Count(px[i], py[i], px[i] + side, py[i] + side); }
+		}, 10);
+
+		final YawiCriterion gradient = new YawiCriterion.GradientLimited(pixels, WIDTH, HEIGHT, lower, upper, 40);
+
+		Bench("window: gradient limited", new Op()
+		{
+			public long Run(int i) { return gradient.Count(px[i], py[i], px[i] + side, py[i] + side); }
+		});
+
+		final YawiCriterion texture = new YawiCriterion.Texture(new YawiMomentImage(pixels, WIDTH, HEIGHT),
+																 WIDTH, HEIGHT, 2, 0, 12);
+
+		Bench("window: texture", new Op()
+		{
+			public long Run(int i) { return texture.Count(px[i], py[i], px[i] + side, py[i] + side); }
+		});
+
+		// the disc of the phantom traced from its center, one trace every 64 calls
+		final YawiSegmenter plain = new YawiSegmenter(pixels, WIDTH, HEIGHT, new YawiSettings());
+		plain.SetCounter(scalar);
+		plain.SetThresholds(lower, upper);
+
+		final YawiSegmenter criterion = new YawiSegmenter(pixels, WIDTH, HEIGHT, new YawiSettings());
+		criterion.SetThresholds(lower, upper);
+		criterion.SetCriterion(range);
+
+		BenchPair("trace: hardcoded range", new Op()
+		{
+			public long Run(int i) { return (i % 64 == 0) ? plain.Outline(WIDTH / 2, HEIGHT / 2).npoints : 0; }
+		}, "trace: criterion range", new Op()
+		{
+			public long Run(int i) { return (i % 64 == 0) ? criterion.Outline(WIDTH / 2, HEIGHT / 2).npoints : 0; }
+		}, 10);
+
+		// a click on a RGB slice: the similarity plane built and traced against the
+		// session tracing the colours with the colour distance criterion
+		final int[] rgb = new int[pixels.length];
+
+		for(int i = 0; i < rgb.length; i++)
+			rgb[i] = (pixels[i] & 0xff) * 0x010101;
+
+		final YawiSettings settings = new YawiSettings();
+		final YawiSession session = new YawiSession("bench", new Object[] { rgb }, WIDTH, HEIGHT, settings);
+
+		BenchPair("RGB click: similarity plane", new Op()
+		{
+			public long Run(int i)
+			{
+				if(i % 64 != 0)
+					return 0;
+
+				YawiColorDistance d = new YawiColorDistance(YawiColorDistance.Reference(rgb, WIDTH, HEIGHT, WIDTH / 2, HEIGHT / 2,
+																						settings._side), settings._color_mode);
+
+				return new YawiSegmenter(d.Plane(rgb), WIDTH, HEIGHT, settings).Segment(WIDTH / 2, HEIGHT / 2).npoints;
+			}
+		}, "RGB click: colour criterion", new Op()
+		{
+			public long Run(int i) { return (i % 64 == 0) ? session.Segment(WIDTH / 2, HEIGHT / 2).npoints : 0; }
+		}, 10);
+	}
+
+	public static void main(String[] args)
+	{
+		System.out.println("Yawi2D micro benchmarks, " + WIDTH + "x" + HEIGHT + " plane");
+
+		WindowCounts();
+		Criteria();
+	}
+}
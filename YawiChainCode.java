@@ -0,0 +1,321 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Freeman chain code of an outline: the start point and one code per
+// unit step, packed in longs. A traced outline only has horizontal and
+// vertical edges and takes 2 bits per step, a smoothed one can have
+// diagonal edges and takes 3 bits per step. Area, centroid, second
+// order moments and perimeter are computed from the steps with Green's
+// theorem, in time linear in the perimeter and without touching the
+// pixels.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/// packed Freeman chain code of a closed outline
+class YawiChainCode
+{
+	/// steps of the 4 directions code (2 bits): right, down, left, up
+	static final int[] DX4 = { 1, 0, -1, 0 };
+	static final int[] DY4 = { 0, 1, 0, -1 };
+	/// steps of the 8 directions code (3 bits), clockwise on the screen from right
+	static final int[] DX8 = { 1, 1, 0, -1, -1, -1, 0, 1 };
+	static final int[] DY8 = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+	/// first point of the outline, a pixel corner
+	final int start_x;
+	final int start_y;
+	/// number of unit steps
+	final int length;
+	/// bits per step, 2 or 3
+	final int bits;
+
+	/// steps, 64 / bits per long from the lowest bits
+	private final long[] codes;
+
+	private YawiChainCode(int start_x, int start_y, int length, int bits, long[] codes)
+	{
+		this.start_x = start_x;
+		this.start_y = start_y;
+		this.length = length;
+		this.bits = bits;
+		this.codes = codes;
+	}
+
+	/// the chain code of an outline, null if an edge is neither horizontal,
+	/// vertical nor diagonal
+	static YawiChainCode Of(YawiContour c)
+	{
+		if(c.npoints < 2)
+			return null;
+
+		long steps = 0;
+		boolean diagonal = false;
+
+		for(int i = 0, j = c.npoints - 1; i < c.npoints; j = i++)
+		{
+			int dx = Math.abs(c.xpoints[i] - c.xpoints[j]);
+			int dy = Math.abs(c.ypoints[i] - c.ypoints[j]);
+
+			if(dx != 0 && dy != 0)
+			{
+				if(dx != dy)
+					return null;
+
+				diagonal = true;
+			}
+
+			steps += Math.max(dx, dy);
+		}
+
+		if(steps == 0 || steps > Integer.MAX_VALUE)
+			return null;
+
+		int bits = diagonal ? 3 : 2;
+		int per_long = 64 / bits;
+		long[] codes = new long[(int)((steps + per_long - 1) / per_long)];
+		int n = 0;
+
+		for(int i = 0; i < c.npoints; i++)
+		{
+			int k = (i + 1) % c.npoints;
+			int dx = c.xpoints[k] - c.xpoints[i];
+			int dy = c.ypoints[k] - c.ypoints[i];
+			int len = Math.max(Math.abs(dx), Math.abs(dy));
+
+			if(len == 0)
+				continue;
+
+			int code = diagonal ? Code8(Integer.signum(dx), Integer.signum(dy)) : Code4(Integer.signum(dx), Integer.signum(dy));
+
+			for(int s = 0; s < len; s++, n++)
+				codes[n / per_long] |= (long)code << ((n % per_long) * bits);
+		}
+
+		return new YawiChainCode(c.xpoints[0], c.ypoints[0], n, bits, codes);
+	}
+
+	private static int Code4(int dx, int dy)
+	{
+		for(int d = 0; d < 4; d++)
+			if(DX4[d] == dx && DY4[d] == dy)
+				return d;
+
+		return -1;
+	}
+
+	private static int Code8(int dx, int dy)
+	{
+		for(int d = 0; d < 8; d++)
+			if(DX8[d] == dx && DY8[d] == dy)
+				return d;
+
+		return -1;
+	}
+
+	/// code of step i
+	int Code(int i)
+	{
+		int per_long = 64 / bits;
+
+		return (int)(codes[i / per_long] >>> ((i % per_long) * bits)) & ((1 << bits) - 1);
+	}
+
+	int StepX(int i) { return (bits == 2) ? DX4[Code(i)] : DX8[Code(i)]; }
+
+	int StepY(int i) { return (bits == 2) ? DY4[Code(i)] : DY8[Code(i)]; }
+
+	/// bytes used by the steps
+	long Bytes() { return codes.length * 8L; }
+
+	/// the outline, a point where the direction changes and the start point
+	YawiContour ToContour()
+	{
+		int[] xpoints = new int[16];
+		int[] ypoints = new int[16];
+		int n = 0;
+
+		int x = start_x;
+		int y = start_y;
+		int prev = -1;
+
+		for(int i = 0; i < length; i++)
+		{
+			int code = Code(i);
+
+			if(code != prev)
+			{
+				if(n == xpoints.length)
+				{
+					xpoints = Arrays.copyOf(xpoints, n * 2);
+					ypoints = Arrays.copyOf(ypoints, n * 2);
+				}
+
+				xpoints[n] = x;
+				ypoints[n] = y;
+				n++;
+
+				prev = code;
+			}
+
+			x += StepX(i);
+			y += StepY(i);
+		}
+
+		return new YawiContour(xpoints, ypoints, n);
+	}
+
+	/// bounding rectangle of the outline
+	Rectangle GetBounds()
+	{
+		int x = start_x, y = start_y;
+		int min_x = x, max_x = x, min_y = y, max_y = y;
+
+		for(int i = 0; i < length; i++)
+		{
+			x += StepX(i);
+			y += StepY(i);
+
+			min_x = Math.min(min_x, x);
+			max_x = Math.max(max_x, x);
+			min_y = Math.min(min_y, y);
+			max_y = Math.max(max_y, y);
+		}
+
+		return new Rectangle(min_x, min_y, max_x - min_x, max_y - min_y);
+	}
+
+	/// area, centroid and second order moments of the region
+	Moments GetMoments()
+	{
+		// Green's theorem on every step: the integrals of 1, x, y, x^2, y^2
+		// and xy over the region are sums over the edges of the boundary
+		long a2 = 0, cx = 0, cy = 0, xx = 0, yy = 0, xy = 0;
+
+		long x0 = start_x;
+		long y0 = start_y;
+
+		for(int i = 0; i < length; i++)
+		{
+			long x1 = x0 + StepX(i);
+			long y1 = y0 + StepY(i);
+
+			long cross = x0 * y1 - x1 * y0;
+
+			a2 += cross;
+			cx += (x0 + x1) * cross;
+			cy += (y0 + y1) * cross;
+			xx += (x0 * x0 + x0 * x1 + x1 * x1) * cross;
+			yy += (y0 * y0 + y0 * y1 + y1 * y1) * cross;
+			xy += (x0 * y1 + 2 * x0 * y0 + 2 * x1 * y1 + x1 * y0) * cross;
+
+			x0 = x1;
+			y0 = y1;
+		}
+
+		// the sign depends on the direction of the outline
+		double s = (a2 < 0) ? -1 : 1;
+
+		return new Moments(s * a2 / 2.0, s * cx / 6.0, s * cy / 6.0, s * xx / 12.0, s * yy / 12.0, s * xy / 24.0);
+	}
+
+	/// perimeter as measured by ImageJ on a traced ROI: the steps minus
+	/// 2 - sqrt(2) for every corner, the length of a diagonal step is sqrt(2)
+	double Perimeter()
+	{
+		if(bits == 3)
+		{
+			int diagonal = 0;
+
+			for(int i = 0; i < length; i++)
+				diagonal += Code(i) & 1;
+
+			return (length - diagonal) + diagonal * Math.sqrt(2.0);
+		}
+
+		// the sides, a side is a run of equal steps
+		int corners = 0;
+		boolean corner = false;
+
+		// the last side ends at the start point
+		int last = Code(length - 1);
+		int side = 0;
+
+		for(int i = length - 1; i >= 0 && Code(i) == last; i--)
+			side++;
+
+		// the first side can continue the last one when the start point is not a corner
+		int i = 0;
+
+		while(i < length)
+		{
+			int code = Code(i);
+			int run = 0;
+
+			while(i < length && Code(i) == code)
+			{
+				run++;
+				i++;
+			}
+
+			// corner at the beginning of this side, as PolygonRoi.getTracedPerimeter
+			if(side > 1 || !corner)
+			{
+				corner = true;
+				corners++;
+			}
+			else
+				corner = false;
+
+			side = run;
+		}
+
+		return length - corners * (2.0 - Math.sqrt(2.0));
+	}
+
+	/// area, centroid and second order moments of a region, the moments
+	/// are the integrals over the region with pixel corners at integer coordinates
+	static class Moments
+	{
+		final double area;
+		/// integrals of x and y
+		final double m10, m01;
+		/// integrals of x^2, y^2 and xy
+		final double m20, m02, m11;
+
+		Moments(double area, double m10, double m01, double m20, double m02, double m11)
+		{
+			this.area = area;
+			this.m10 = m10;
+			this.m01 = m01;
+			this.m20 = m20;
+			this.m02 = m02;
+			this.m11 = m11;
+		}
+
+		double CentroidX() { return m10 / area; }
+
+		double CentroidY() { return m01 / area; }
+
+		/// central moments divided by the area
+		double Mu20() { return m20 / area - CentroidX() * CentroidX(); }
+
+		double Mu02() { return m02 / area - CentroidY() * CentroidY(); }
+
+		double Mu11() { return m11 / area - CentroidX() * CentroidY(); }
+
+		/// angle of the major axis in degrees, counterclockwise from the x axis
+		double Angle()
+		{
+			// y grows down in the image
+			return Math.toDegrees(-0.5 * Math.atan2(2 * Mu11(), Mu20() - Mu02()));
+		}
+	}
+}
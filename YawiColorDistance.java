@@ -0,0 +1,249 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Segmentation of RGB images by colour distance. The colour of the
+// seed is the reference and every pixel becomes its similarity to it,
+// 255 for the reference colour and less and less far from it: the
+// tracer, the threshold estimators and the 3D segmentation work on
+// this 8-bit plane as on a gray one. The distance is per channel (the
+// largest difference of R, G and B) or Delta E in CIE Lab; the values
+// are read from tables built once per seed, 3 x 256 entries per
+// channel or one entry for every colour with 6 bits per channel for
+// Lab, so no palette is computed and no pixel is converted to Lab.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// similarity of RGB pixels to a reference colour
+class YawiColorDistance
+{
+	/// distances
+	static final int PER_CHANNEL = 0, LAB = 1;
+	static final String[] MODE_NAMES = {"Per channel (R, G, B)", "CIE Lab (Delta E)"};
+
+	/// bits per channel of the colours of the Lab table
+	private static final int LAB_BITS = 6;
+	/// similarity levels for a Delta E of 1
+	private static final double LAB_SCALE = 2.55;
+
+	/// Lab values of the colours with LAB_BITS per channel, built once
+	private static float[] lab_table = null;
+
+	/// distance used, PER_CHANNEL or LAB
+	final int mode;
+	/// reference colour, 0xrrggbb
+	final int rgb;
+
+	/// PER_CHANNEL: distance of every value of a channel from the reference
+	private final byte[] lut_r, lut_g, lut_b;
+	/// LAB: similarity of every colour of the table
+	private final byte[] lut_lab;
+
+	YawiColorDistance(int rgb, int mode)
+	{
+		this.rgb = rgb & 0xffffff;
+		this.mode = mode;
+
+		int r = (rgb >> 16) & 0xff, g = (rgb >> 8) & 0xff, b = rgb & 0xff;
+
+		if(mode == LAB)
+		{
+			lut_r = lut_g = lut_b = null;
+
+			float[] table = LabTable();
+			float[] ref = Lab(r, g, b);
+
+			lut_lab = new byte[1 << (3 * LAB_BITS)];
+
+			for(int i = 0; i < lut_lab.length; i++)
+			{
+				double dl = table[3 * i] - ref[0];
+				double da = table[3 * i + 1] - ref[1];
+				double db = table[3 * i + 2] - ref[2];
+
+				int d = (int)Math.round(Math.sqrt(dl * dl + da * da + db * db) * LAB_SCALE);
+
+				lut_lab[i] = (byte)(255 - Math.min(d, 255));
+			}
+		}
+		else
+		{
+			lut_lab = null;
+
+			lut_r = new byte[256];
+			lut_g = new byte[256];
+			lut_b = new byte[256];
+
+			for(int v = 0; v < 256; v++)
+			{
+				lut_r[v] = (byte)Math.abs(v - r);
+				lut_g[v] = (byte)Math.abs(v - g);
+				lut_b[v] = (byte)Math.abs(v - b);
+			}
+		}
+	}
+
+	/// mean colour of the side x side square centered in (x,y), clipped to the image
+	static int Reference(int[] pixels, int width, int height, int x, int y, int side)
+	{
+		int dist = side / 2;
+
+		int x_a = Math.max(x - dist, 0);
+		int y_a = Math.max(y - dist, 0);
+		int x_b = Math.min(x + dist, width - 1);
+		int y_b = Math.min(y + dist, height - 1);
+
+		long r = 0, g = 0, b = 0;
+		int n = 0;
+
+		for(int i = y_a; i <= y_b; i++)
+			for(int k = x_a; k <= x_b; k++)
+			{
+				int c = pixels[i * width + k];
+
+				r += (c >> 16) & 0xff;
+				g += (c >> 8) & 0xff;
+				b += c & 0xff;
+				n++;
+			}
+
+		if(n == 0)
+			return 0;
+
+		return (int)((r + n / 2) / n) << 16 | (int)((g + n / 2) / n) << 8 | (int)((b + n / 2) / n);
+	}
+
+	/// similarity of a colour to the reference, 255 for the reference
+	int Similarity(int c)
+	{
+		if(mode == LAB)
+			return lut_lab[LabIndex(c)] & 0xff;
+
+		int d = Math.max(lut_r[(c >> 16) & 0xff] & 0xff, Math.max(lut_g[(c >> 8) & 0xff] & 0xff, lut_b[c & 0xff] & 0xff));
+
+		return 255 - d;
+	}
+
+	/// the similarity plane of a RGB plane
+	byte[] Plane(int[] pixels)
+	{
+		byte[] out = new byte[pixels.length];
+
+		if(mode == LAB)
+		{
+			for(int i = 0; i < pixels.length; i++)
+				out[i] = lut_lab[LabIndex(pixels[i])];
+		}
+		else
+		{
+			for(int i = 0; i < pixels.length; i++)
+			{
+				int c = pixels[i];
+				int d = Math.max(lut_r[(c >> 16) & 0xff] & 0xff, Math.max(lut_g[(c >> 8) & 0xff] & 0xff, lut_b[c & 0xff] & 0xff));
+
+				out[i] = (byte)(255 - d);
+			}
+		}
+
+		return out;
+	}
+
+	/// similarity of the pixels of the rectangle [x_a,x_b]x[y_a,y_b] of a RGB plane,
+	/// clipped to the plane, written in the same pixels of out; the rest of out is
+	/// left as it is
+	void Window(int[] pixels, int width, int height, int x_a, int y_a, int x_b, int y_b, byte[] out)
+	{
+		x_a = Math.max(x_a, 0);
+		y_a = Math.max(y_a, 0);
+		x_b = Math.min(x_b, width - 1);
+		y_b = Math.min(y_b, height - 1);
+
+		for(int y = y_a; y <= y_b; y++)
+		{
+			int row = y * width;
+
+			for(int i = row + x_a; i <= row + x_b; i++)
+				out[i] = (byte)Similarity(pixels[i]);
+		}
+	}
+
+	/// 8-bit gray plane of a RGB plane, the unweighted mean of the channels as
+	/// ImageJ converts RGB to 8-bit
+	static byte[] Gray(int[] pixels)
+	{
+		byte[] out = new byte[pixels.length];
+
+		for(int i = 0; i < pixels.length; i++)
+		{
+			int c = pixels[i];
+
+			out[i] = (byte)((((c >> 16) & 0xff) + ((c >> 8) & 0xff) + (c & 0xff)) / 3);
+		}
+
+		return out;
+	}
+
+	/// index of a colour in the Lab table
+	private static int LabIndex(int c)
+	{
+		int shift = 8 - LAB_BITS;
+		int mask = (1 << LAB_BITS) - 1;
+
+		return ((c >> (16 + shift)) & mask) << (2 * LAB_BITS) | ((c >> (8 + shift)) & mask) << LAB_BITS | ((c >> shift) & mask);
+	}
+
+	/// Lab values of the colours of the table, a colour stands for the center of its cell
+	private static synchronized float[] LabTable()
+	{
+		if(lab_table != null)
+			return lab_table;
+
+		int levels = 1 << LAB_BITS;
+		double step = 256.0 / levels;
+		float[] table = new float[3 * levels * levels * levels];
+
+		for(int r = 0, i = 0; r < levels; r++)
+			for(int g = 0; g < levels; g++)
+				for(int b = 0; b < levels; b++, i++)
+				{
+					float[] lab = Lab((r + 0.5) * step - 0.5, (g + 0.5) * step - 0.5, (b + 0.5) * step - 0.5);
+
+					table[3 * i] = lab[0];
+					table[3 * i + 1] = lab[1];
+					table[3 * i + 2] = lab[2];
+				}
+
+		lab_table = table;
+
+		return table;
+	}
+
+	/// CIE Lab of a sRGB colour, D65 white
+	static float[] Lab(double r, double g, double b)
+	{
+		double lr = Linear(r / 255), lg = Linear(g / 255), lb = Linear(b / 255);
+
+		double x = (0.4124 * lr + 0.3576 * lg + 0.1805 * lb) / 0.95047;
+		double y = 0.2126 * lr + 0.7152 * lg + 0.0722 * lb;
+		double z = (0.0193 * lr + 0.1192 * lg + 0.9505 * lb) / 1.08883;
+
+		double fx = F(x), fy = F(y), fz = F(z);
+
+		return new float[] { (float)(116 * fy - 16), (float)(500 * (fx - fy)), (float)(200 * (fy - fz)) };
+	}
+
+	/// sRGB gamma removed
+	private static double Linear(double v)
+	{
+		return (v <= 0.04045) ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+	}
+
+	private static double F(double t)
+	{
+		return (t > 216.0 / 24389) ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+	}
+}
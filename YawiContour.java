@@ -0,0 +1,312 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Outline of a ROI as generated by the edge tracer.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/// closed outline of a ROI, the points are the pixel corners visited by the tracer
+class YawiContour
+{
+	/// X coordinate of the points in the border of the Roi
+	final int[] xpoints;
+	/// Y coordinate of the points in the border of the Roi
+	final int[] ypoints;
+	/// number of points of the outline
+	final int npoints;
+
+	YawiContour(int[] xpoints, int[] ypoints, int npoints)
+	{
+		this.xpoints = xpoints;
+		this.ypoints = ypoints;
+		this.npoints = npoints;
+	}
+
+	/// a copy with its own arrays, PolygonRoi changes the arrays it gets
+	YawiContour Copy()
+	{
+		return new YawiContour((int[])xpoints.clone(), (int[])ypoints.clone(), npoints);
+	}
+
+	/// true if the point (x,y) is inside the outline, even-odd rule
+	boolean Contains(double x, double y)
+	{
+		boolean in = false;
+
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+			if((ypoints[i] > y) != (ypoints[j] > y) &&
+			   x < xpoints[j] + (y - ypoints[j]) * (xpoints[i] - xpoints[j]) / (double)(ypoints[i] - ypoints[j]))
+				in = !in;
+
+		return in;
+	}
+
+	/// bounding rectangle of the outline
+	Rectangle GetBounds()
+	{
+		if(npoints == 0)
+			return new Rectangle();
+
+		int min_x = xpoints[0], max_x = xpoints[0];
+		int min_y = ypoints[0], max_y = ypoints[0];
+
+		for(int i = 1; i < npoints; i++)
+		{
+			if(xpoints[i] < min_x) min_x = xpoints[i];
+			if(xpoints[i] > max_x) max_x = xpoints[i];
+			if(ypoints[i] < min_y) min_y = ypoints[i];
+			if(ypoints[i] > max_y) max_y = ypoints[i];
+		}
+
+		return new Rectangle(min_x, min_y, max_x - min_x, max_y - min_y);
+	}
+
+	/// area of the outline (shoelace formula), for a traced outline it is
+	/// the number of enclosed pixels
+	double Area()
+	{
+		long sum = 0;
+
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+			sum += (long)xpoints[j] * ypoints[i] - (long)xpoints[i] * ypoints[j];
+
+		return Math.abs(sum) / 2.0;
+	}
+
+	/// length of the outline
+	double Perimeter()
+	{
+		double len = 0;
+
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+		{
+			double dx = xpoints[i] - xpoints[j];
+			double dy = ypoints[i] - ypoints[j];
+
+			len += Math.sqrt(dx * dx + dy * dy);
+		}
+
+		return len;
+	}
+
+	/// crossings of the outline with the rows sampled at the pixel centers,
+	/// the crossings of row y are cross[row_start[y]] .. cross[row_start[y + 1] - 1], sorted
+	private double[] ScanRows(int[] row_start, int height)
+	{
+		// count the crossings of every row
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+		{
+			int y_a = Math.min(ypoints[i], ypoints[j]);
+			int y_b = Math.max(ypoints[i], ypoints[j]);
+
+			// rows y with y_a <= y + 0.5 < y_b
+			for(int y = Math.max(y_a, 0); y < y_b && y < height; y++)
+				row_start[y + 1]++;
+		}
+
+		for(int y = 0; y < height; y++)
+			row_start[y + 1] += row_start[y];
+
+		double[] cross = new double[row_start[height]];
+		int[] fill = new int[height];
+
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+		{
+			int x0 = xpoints[j], y0 = ypoints[j];
+			int x1 = xpoints[i], y1 = ypoints[i];
+
+			if(y0 == y1)
+				continue;
+
+			int y_a = Math.min(y0, y1);
+			int y_b = Math.max(y0, y1);
+
+			for(int y = Math.max(y_a, 0); y < y_b && y < height; y++)
+			{
+				double yc = y + 0.5;
+				cross[row_start[y] + fill[y]++] = x0 + (yc - y0) * (x1 - x0) / (double)(y1 - y0);
+			}
+		}
+
+		for(int y = 0; y < height; y++)
+			Arrays.sort(cross, row_start[y], row_start[y + 1]);
+
+		return cross;
+	}
+
+	/// set to true the pixels of mask (width x height) whose center is inside the outline
+	/// returns the number of pixels set
+	int FillMask(boolean[] mask, int width, int height)
+	{
+		if(npoints < 3)
+			return 0;
+
+		int[] row_start = new int[height + 1];
+		double[] cross = ScanRows(row_start, height);
+
+		int count = 0;
+
+		for(int y = 0; y < height; y++)
+		{
+			for(int k = row_start[y]; k + 1 < row_start[y + 1]; k += 2)
+			{
+				// pixels whose center is in [cross[k], cross[k + 1])
+				int x_a = Math.max((int)Math.ceil(cross[k] - 0.5), 0);
+				int x_b = Math.min((int)Math.ceil(cross[k + 1] - 0.5), width);
+
+				for(int x = x_a; x < x_b; x++)
+				{
+					int ind = y * width + x;
+
+					if(!mask[ind])
+					{
+						mask[ind] = true;
+						count++;
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/// mean value of the 8-bit pixels whose center is inside the outline
+	double MeanIntensity(byte[] pixels, int width, int height)
+	{
+		if(npoints < 3)
+			return 0;
+
+		int[] row_start = new int[height + 1];
+		double[] cross = ScanRows(row_start, height);
+
+		long sum = 0;
+		long count = 0;
+
+		for(int y = 0; y < height; y++)
+		{
+			for(int k = row_start[y]; k + 1 < row_start[y + 1]; k += 2)
+			{
+				int x_a = Math.max((int)Math.ceil(cross[k] - 0.5), 0);
+				int x_b = Math.min((int)Math.ceil(cross[k + 1] - 0.5), width);
+
+				for(int x = x_a; x < x_b; x++)
+					sum += pixels[y * width + x] & 0xff;
+
+				if(x_b > x_a)
+					count += x_b - x_a;
+			}
+		}
+
+		return count > 0 ? (double)sum / count : 0;
+	}
+
+	/// first smoothing algorithm (Edit->Smooth1 Roi): the loops are removed,
+	/// from a point the outline jumps to its last repetition
+	YawiContour Smooth1()
+	{
+		int[] xpoints_smooth = new int[npoints];
+		int[] ypoints_smooth = new int[npoints];
+
+		boolean found = false;
+		int s_ind;
+		int smooth_points = 0;
+
+		for(int i = 0; i < npoints; i++)
+		{
+			s_ind = i + 1;
+
+			while(s_ind < npoints && !found)
+			{
+				// found an equal point
+				if(xpoints[i] == xpoints[s_ind] && ypoints[i] == ypoints[s_ind])
+					found = true;
+
+				s_ind++;
+			}
+
+			if(found)
+			{
+				s_ind--;
+
+				found = false;
+				i = s_ind;
+			}
+
+			xpoints_smooth[smooth_points] = xpoints[i];
+			ypoints_smooth[smooth_points] = ypoints[i];
+
+			smooth_points++;
+		}
+
+		return new YawiContour(Arrays.copyOf(xpoints_smooth, smooth_points),
+							   Arrays.copyOf(ypoints_smooth, smooth_points), smooth_points);
+	}
+
+	/// second smoothing algorithm (Edit->Smooth2 Roi): from a point the outline
+	/// jumps to the first point 2 pixels away on the same row or column
+	YawiContour Smooth2()
+	{
+		int[] xpoints_smooth = new int[npoints];
+		int[] ypoints_smooth = new int[npoints];
+
+		boolean found = false;
+		int s_ind;
+		int smooth_points = 0;
+
+		int cur_ind = 0;
+
+		while(cur_ind < npoints)
+		{
+			//copy a point
+			xpoints_smooth[smooth_points] = xpoints[cur_ind];
+			ypoints_smooth[smooth_points] = ypoints[cur_ind];
+			smooth_points++;
+
+			s_ind = cur_ind + 1;
+
+			// look for a close point
+			while(s_ind < npoints && !found)
+			{
+				// found a close point
+				if((xpoints[cur_ind] == xpoints[s_ind] &&
+					Math.abs(ypoints[cur_ind] - ypoints[s_ind]) == 2) ||
+				   (ypoints[cur_ind] == ypoints[s_ind] &&
+					Math.abs(xpoints[cur_ind] - xpoints[s_ind]) == 2))
+					found = true;
+
+				s_ind++;
+			}
+
+			// close point found
+			if(found)
+			{
+				s_ind--;
+
+				found = false;
+				cur_ind = s_ind;
+			}
+			else
+				cur_ind++;
+
+			if(cur_ind < npoints)
+			{
+				xpoints_smooth[smooth_points] = xpoints[cur_ind];
+				ypoints_smooth[smooth_points] = ypoints[cur_ind];
+
+				smooth_points++;
+				cur_ind++;
+			}
+		}
+
+		return new YawiContour(Arrays.copyOf(xpoints_smooth, smooth_points),
+							   Arrays.copyOf(ypoints_smooth, smooth_points), smooth_points);
+	}
+}
@@ -0,0 +1,275 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Region criteria: the test telling if a pixel is a member of the
+// region, used by the tracer instead of the threshold range of the
+// segmenter. Every criterion is a final class bound to the pixels of
+// its type and has its own window count loop, so the test is inlined
+// in the loop and a call site that sees one criterion stays
+// monomorphic; without a criterion the segmenter keeps its own range
+// test and the window counters, and so it does with a range criterion
+// of its own plane.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// membership test of the pixels of a region
+abstract class YawiCriterion
+{
+	/// plane dimension
+	final int width;
+	final int height;
+
+	YawiCriterion(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	/// true if pixel i (y * width + x) is a member of the region
+	abstract boolean Member(int i);
+
+	/// number of member pixels in the rectangle [x_a,x_b]x[y_a,y_b] clipped to the image
+	abstract int Count(int x_a, int y_a, int x_b, int y_b);
+
+	/// name of the criterion
+	abstract String Name();
+
+	/// true if the criterion is so tight that AutoOutline reaches the edge
+	/// with the single pixel test, as for a threshold range narrower than 5
+	boolean Narrow() { return false; }
+
+	/// 8-bit pixels with value in [lower, upper], the test of the segmenter
+	static final class Range extends YawiCriterion
+	{
+		final byte[] pixels;
+		final int lower;
+		final int upper;
+
+		Range(byte[] pixels, int width, int height, int lower, int upper)
+		{
+			super(width, height);
+
+			this.pixels = pixels;
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		boolean Member(int i)
+		{
+			int value = pixels[i] & 0xff;
+
+			return value >= lower && value <= upper;
+		}
+
+		int Count(int x_a, int y_a, int x_b, int y_b)
+		{
+			if(x_a < 0) x_a = 0;
+			if(y_a < 0) y_a = 0;
+			if(x_b >= width) x_b = width - 1;
+			if(y_b >= height) y_b = height - 1;
+
+			int count = 0;
+
+			for(int y = y_a; y <= y_b; y++)
+			{
+				int row = y * width;
+
+				for(int i = row + x_a; i <= row + x_b; i++)
+				{
+					int value = pixels[i] & 0xff;
+
+					if(value >= lower && value <= upper)
+						count++;
+				}
+			}
+
+			return count;
+		}
+
+		String Name() { return "range"; }
+
+		boolean Narrow() { return upper - lower < 5; }
+	}
+
+	/// RGB pixels whose similarity to the reference colour of a YawiColorDistance
+	/// is in [lower, upper], as the range on its similarity plane but without building it
+	static final class ColorDistance extends YawiCriterion
+	{
+		private final int[] pixels;
+		private final YawiColorDistance distance;
+		final int lower;
+		final int upper;
+
+		ColorDistance(int[] pixels, int width, int height, YawiColorDistance distance, int lower, int upper)
+		{
+			super(width, height);
+
+			this.pixels = pixels;
+			this.distance = distance;
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		boolean Member(int i)
+		{
+			int s = distance.Similarity(pixels[i]);
+
+			return s >= lower && s <= upper;
+		}
+
+		int Count(int x_a, int y_a, int x_b, int y_b)
+		{
+			if(x_a < 0) x_a = 0;
+			if(y_a < 0) y_a = 0;
+			if(x_b >= width) x_b = width - 1;
+			if(y_b >= height) y_b = height - 1;
+
+			int count = 0;
+
+			for(int y = y_a; y <= y_b; y++)
+			{
+				int row = y * width;
+
+				for(int i = row + x_a; i <= row + x_b; i++)
+				{
+					int s = distance.Similarity(pixels[i]);
+
+					if(s >= lower && s <= upper)
+						count++;
+				}
+			}
+
+			return count;
+		}
+
+		String Name() { return "colour distance"; }
+
+		boolean Narrow() { return upper - lower < 5; }
+	}
+
+	/// 8-bit pixels with value in [lower, upper] and a gradient not above max_grad:
+	/// the region stops at a strong edge even when the range spans both of its sides;
+	/// the gradient is |dx| + |dy| of the central differences, one-sided at the border
+	static final class GradientLimited extends YawiCriterion
+	{
+		private final byte[] pixels;
+		final int lower;
+		final int upper;
+		final int max_grad;
+
+		GradientLimited(byte[] pixels, int width, int height, int lower, int upper, int max_grad)
+		{
+			super(width, height);
+
+			this.pixels = pixels;
+			this.lower = lower;
+			this.upper = upper;
+			this.max_grad = max_grad;
+		}
+
+		boolean Member(int i) { return Test(i % width, i / width, i); }
+
+		private boolean Test(int x, int y, int i)
+		{
+			int value = pixels[i] & 0xff;
+
+			if(value < lower || value > upper)
+				return false;
+
+			int left = (x > 0) ? i - 1 : i;
+			int right = (x + 1 < width) ? i + 1 : i;
+			int up = (y > 0) ? i - width : i;
+			int down = (y + 1 < height) ? i + width : i;
+
+			int grad = Math.abs((pixels[right] & 0xff) - (pixels[left] & 0xff)) +
+					   Math.abs((pixels[down] & 0xff) - (pixels[up] & 0xff));
+
+			return grad <= max_grad;
+		}
+
+		int Count(int x_a, int y_a, int x_b, int y_b)
+		{
+			if(x_a < 0) x_a = 0;
+			if(y_a < 0) y_a = 0;
+			if(x_b >= width) x_b = width - 1;
+			if(y_b >= height) y_b = height - 1;
+
+			int count = 0;
+
+			for(int y = y_a; y <= y_b; y++)
+				for(int x = x_a; x <= x_b; x++)
+					if(Test(x, y, y * width + x))
+						count++;
+
+			return count;
+		}
+
+		String Name() { return "gradient limited"; }
+
+		boolean Narrow() { return upper - lower < 5; }
+	}
+
+	/// 8-bit pixels whose local standard deviation, in the square of side
+	/// 2 * rad + 1 around them, is in [lower, upper]: regions of the same texture,
+	/// the deviation is computed in constant time with the moment tables
+	static final class Texture extends YawiCriterion
+	{
+		private final YawiMomentImage moments;
+		final int rad;
+		final double lower;
+		final double upper;
+
+		Texture(YawiMomentImage moments, int width, int height, int rad, double lower, double upper)
+		{
+			super(width, height);
+
+			this.moments = moments;
+			this.rad = rad;
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		/// local standard deviation at (x,y)
+		double Sigma(int x, int y)
+		{
+			long n = moments.Count(x - rad, y - rad, x + rad, y + rad);
+
+			return Math.sqrt((double)moments.ScaledVariance(x - rad, y - rad, x + rad, y + rad)) / n;
+		}
+
+		boolean Member(int i)
+		{
+			double sigma = Sigma(i % width, i / width);
+
+			return sigma >= lower && sigma <= upper;
+		}
+
+		int Count(int x_a, int y_a, int x_b, int y_b)
+		{
+			if(x_a < 0) x_a = 0;
+			if(y_a < 0) y_a = 0;
+			if(x_b >= width) x_b = width - 1;
+			if(y_b >= height) y_b = height - 1;
+
+			int count = 0;
+
+			for(int y = y_a; y <= y_b; y++)
+				for(int x = x_a; x <= x_b; x++)
+				{
+					double sigma = Sigma(x, y);
+
+					if(sigma >= lower && sigma <= upper)
+						count++;
+				}
+
+			return count;
+		}
+
+		String Name() { return "texture"; }
+	}
+}
@@ -0,0 +1,193 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Feret diameters of an outline, the measures used by RECIST to
+// follow a lesion: the longest diameter, the short axis perpendicular
+// to it and the minimum Feret diameter (the smallest caliper width).
+// They are computed on the convex hull of the outline with rotating
+// calipers, in O(n log n) for the hull and O(n) for the calipers,
+// instead of comparing every pair of points.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/// longest diameter, short axis and minimum Feret diameter of an outline
+class YawiFeret
+{
+	/// longest diameter (maximum Feret diameter)
+	final double max;
+	/// end points of the longest diameter
+	final double max_x0, max_y0, max_x1, max_y1;
+	/// width of the outline perpendicular to the longest diameter, the RECIST short axis
+	final double short_axis;
+	/// smallest caliper width (minimum Feret diameter)
+	final double min;
+	/// angle in degrees of the calipers of min, counterclockwise from the x axis
+	final double min_angle;
+
+	private YawiFeret(double max, double x0, double y0, double x1, double y1,
+					  double short_axis, double min, double min_angle)
+	{
+		this.max = max;
+		this.max_x0 = x0;
+		this.max_y0 = y0;
+		this.max_x1 = x1;
+		this.max_y1 = y1;
+		this.short_axis = short_axis;
+		this.min = min;
+		this.min_angle = min_angle;
+	}
+
+	/// the diameters of an outline in pixels, null if it has less than 2 points
+	static YawiFeret Of(YawiContour c)
+	{
+		return Of(c, 1, 1);
+	}
+
+	/// the diameters of an outline with pixels of size pw x ph
+	/// returns null if the outline has less than 2 points
+	static YawiFeret Of(YawiContour c, double pw, double ph)
+	{
+		if(c == null || c.npoints < 2)
+			return null;
+
+		double[][] p = new double[c.npoints][];
+
+		for(int i = 0; i < c.npoints; i++)
+			p[i] = new double[] { c.xpoints[i] * pw, c.ypoints[i] * ph };
+
+		double[][] hull = Hull(p);
+		int h = hull.length;
+
+		// a segment: the calipers can't turn around it
+		if(h < 3)
+		{
+			double[] a = hull[0], b = hull[h - 1];
+
+			return new YawiFeret(Dist(a, b), a[0], a[1], b[0], b[1], 0, 0,
+								 Math.toDegrees(Math.atan2(-(b[1] - a[1]), b[0] - a[0])) + 90);
+		}
+
+		double max = 0;
+		double[] max_a = hull[0], max_b = hull[0];
+		double min = Double.MAX_VALUE;
+		double min_angle = 0;
+
+		// j is the point farthest from the edge (i,i+1), it moves forward with i
+		int j = 1;
+
+		for(int i = 0; i < h; i++)
+		{
+			double[] a = hull[i];
+			double[] b = hull[(i + 1) % h];
+
+			while(Cross(a, b, hull[(j + 1) % h]) > Cross(a, b, hull[j]))
+				j = (j + 1) % h;
+
+			// the antipodal pairs of the edge
+			double d = Dist(a, hull[j]);
+
+			if(d > max)
+			{
+				max = d;
+				max_a = a;
+				max_b = hull[j];
+			}
+
+			d = Dist(b, hull[j]);
+
+			if(d > max)
+			{
+				max = d;
+				max_a = b;
+				max_b = hull[j];
+			}
+
+			// the calipers rest on the edge
+			double len = Dist(a, b);
+			double width = Cross(a, b, hull[j]) / len;
+
+			if(width < min)
+			{
+				min = width;
+				// the calipers measure across the edge, y grows down in the image
+				min_angle = Math.toDegrees(Math.atan2(-(b[1] - a[1]), b[0] - a[0])) + 90;
+			}
+		}
+
+		// extent of the hull across the longest diameter
+		double ux = -(max_b[1] - max_a[1]) / max;
+		double uy = (max_b[0] - max_a[0]) / max;
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+
+		for(int i = 0; i < h; i++)
+		{
+			double t = hull[i][0] * ux + hull[i][1] * uy;
+
+			lo = Math.min(lo, t);
+			hi = Math.max(hi, t);
+		}
+
+		if(min_angle >= 180)
+			min_angle -= 180;
+
+		return new YawiFeret(max, max_a[0], max_a[1], max_b[0], max_b[1], hi - lo, min, min_angle);
+	}
+
+	/// convex hull in counterclockwise order (y up), without collinear points,
+	/// Andrew's monotone chain
+	static double[][] Hull(double[][] p)
+	{
+		double[][] s = (double[][])p.clone();
+
+		Arrays.sort(s, new Comparator<double[]>()
+		{
+			public int compare(double[] a, double[] b)
+			{
+				return (a[0] != b[0]) ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]);
+			}
+		});
+
+		double[][] hull = new double[2 * s.length][];
+		int k = 0;
+
+		// lower chain
+		for(int i = 0; i < s.length; i++)
+		{
+			while(k >= 2 && Cross(hull[k - 2], hull[k - 1], s[i]) <= 0)
+				k--;
+
+			hull[k++] = s[i];
+		}
+
+		// upper chain
+		for(int i = s.length - 2, t = k + 1; i >= 0; i--)
+		{
+			while(k >= t && Cross(hull[k - 2], hull[k - 1], s[i]) <= 0)
+				k--;
+
+			hull[k++] = s[i];
+		}
+
+		// the first point is repeated at the end
+		return Arrays.copyOf(hull, Math.max(k - 1, 1));
+	}
+
+	/// twice the signed area of the triangle (o,a,b)
+	private static double Cross(double[] o, double[] a, double[] b)
+	{
+		return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+	}
+
+	private static double Dist(double[] a, double[] b)
+	{
+		return Math.hypot(b[0] - a[0], b[1] - a[1]);
+	}
+}
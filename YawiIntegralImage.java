@@ -0,0 +1,86 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Summed area table of the pixels inside a threshold range, used to
+// count the pixels of the Inside square in constant time.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// summed area table of the pixels whose value is in [lower, upper]
+class YawiIntegralImage
+{
+	/// table width, image width + 1
+	private final int t_width;
+	/// image dimension
+	private final int width;
+	private final int height;
+	/// table data, sum[(y + 1) * t_width + (x + 1)] is the count in [0,x]x[0,y]
+	private final int[] sum;
+
+	/// lower threshold limit used to build the table
+	final int lower_threshold;
+	/// upper threshold limit used to build the table
+	final int upper_threshold;
+
+	YawiIntegralImage(byte[] pixels, int width, int height, int lower, int upper)
+	{
+		this.width = width;
+		this.height = height;
+		lower_threshold = lower;
+		upper_threshold = upper;
+
+		t_width = width + 1;
+		sum = new int[t_width * (height + 1)];
+
+		// the first row and column of the table are left to 0
+		for(int y = 0; y < height; y++)
+		{
+			int row = 0;
+			int src = y * width;
+			int dst = (y + 1) * t_width + 1;
+
+			for(int x = 0; x < width; x++)
+			{
+				int value = pixels[src + x] & 0xff;
+
+				if(value >= lower && value <= upper)
+					row++;
+
+				sum[dst + x] = sum[dst + x - t_width] + row;
+			}
+		}
+	}
+
+	/// true if the table has been built for the given threshold range
+	boolean Matches(int lower, int upper)
+	{
+		return lower == lower_threshold && upper == upper_threshold;
+	}
+
+	/// number of pixels inside the threshold in the rectangle [x_a,x_b]x[y_a,y_b]
+	/// the rectangle is clipped to the image, an empty rectangle counts 0
+	int Count(int x_a, int y_a, int x_b, int y_b)
+	{
+		if(x_a < 0)
+			x_a = 0;
+		if(y_a < 0)
+			y_a = 0;
+		if(x_b >= width)
+			x_b = width - 1;
+		if(y_b >= height)
+			y_b = height - 1;
+
+		if(x_a > x_b || y_a > y_b)
+			return 0;
+
+		int top = y_a * t_width;
+		int bottom = (y_b + 1) * t_width;
+
+		return sum[bottom + x_b + 1] - sum[bottom + x_a] - sum[top + x_b + 1] + sum[top + x_a];
+	}
+}
@@ -0,0 +1,222 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Sub-pixel outline extraction: marching squares on the fraction of
+// pixels inside the threshold in the Inside square, with a linear
+// interpolation of the crossing points.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// follows the iso line fraction == _min_perc around a seed
+class YawiMarchingSquares
+{
+	/// cell edges
+	private static final int TOP = 0, RIGHT = 1, BOTTOM = 2, LEFT = 3;
+
+	/// default tolerance of the decimation in pixels
+	static final double EPSILON_DEF = 0.5;
+
+	private final int img_width;
+	private final int img_height;
+
+	/// summed area table of the pixels inside the threshold
+	private final YawiIntegralImage table;
+	/// radius of the square
+	private final int rad_ts;
+	/// iso level, the minimum percentage of pixels inside
+	private final float level;
+	/// pixels of the square
+	private final float area;
+
+	YawiMarchingSquares(YawiIntegralImage table, int width, int height, YawiSettings settings)
+	{
+		this.table = table;
+		img_width = width;
+		img_height = height;
+
+		rad_ts = settings._rad_ts;
+		level = settings._min_perc;
+		area = ((rad_ts * 2) + 1) * ((rad_ts * 2) + 1);
+	}
+
+	/// fraction of the pixels inside the threshold in the square centered in (x,y)
+	/// it is 0 outside the image, so every outline is closed
+	float Fraction(int x, int y)
+	{
+		if(x < 0 || y < 0 || x >= img_width || y >= img_height)
+			return 0;
+
+		return table.Count(x - rad_ts, y - rad_ts, x + rad_ts, y + rad_ts) / area;
+	}
+
+	/// outline of the region containing (x,y), decimated with the given tolerance
+	/// (0 keeps every crossing point); returns null if (x,y) is not inside
+	YawiPolygon Trace(int x, int y, double epsilon)
+	{
+		if(Fraction(x, y) < level)
+			return null;
+
+		// march right up to the edge
+		while(Fraction(x + 1, y) >= level)
+			x++;
+
+		// the sample (x,y) is inside and (x+1,y) is outside: the crossing is on
+		// the top edge of the cell whose top left sample is (x,y)
+		int start_x = x, start_y = y, start_e = TOP;
+
+		int cx = start_x, cy = start_y, entry = start_e;
+
+		int max_points = 1000;
+		float[] xp = new float[max_points];
+		float[] yp = new float[max_points];
+		int n = 0;
+
+		// every edge is crossed at most once by a closed outline
+		long limit = 2L * (img_width + 2) * (img_height + 2) + 4;
+
+		do
+		{
+			// samples at the corners of the cell
+			float tl = Fraction(cx, cy);
+			float tr = Fraction(cx + 1, cy);
+			float br = Fraction(cx + 1, cy + 1);
+			float bl = Fraction(cx, cy + 1);
+
+			int exit = Exit(entry, tl >= level, tr >= level, br >= level, bl >= level, (tl + tr + br + bl) / 4 >= level);
+
+			if(exit < 0)
+				return null;
+
+			// crossing point on the exit edge, the samples are at the pixel centers
+			float px, py;
+
+			switch(exit)
+			{
+				case TOP:
+					px = cx + Lerp(tl, tr) + 0.5f;
+					py = cy + 0.5f;
+					break;
+
+				case RIGHT:
+					px = cx + 1.5f;
+					py = cy + Lerp(tr, br) + 0.5f;
+					break;
+
+				case BOTTOM:
+					px = cx + Lerp(bl, br) + 0.5f;
+					py = cy + 1.5f;
+					break;
+
+				default:
+					px = cx + 0.5f;
+					py = cy + Lerp(tl, bl) + 0.5f;
+					break;
+			}
+
+			if(n == max_points)
+			{
+				float[] xtemp = new float[max_points * 2];
+				float[] ytemp = new float[max_points * 2];
+
+				System.arraycopy(xp, 0, xtemp, 0, max_points);
+				System.arraycopy(yp, 0, ytemp, 0, max_points);
+
+				xp = xtemp;
+				yp = ytemp;
+
+				max_points *= 2;
+			}
+
+			xp[n] = px;
+			yp[n] = py;
+			n++;
+
+			// move to the next cell
+			switch(exit)
+			{
+				case TOP:    cy--; entry = BOTTOM; break;
+				case RIGHT:  cx++; entry = LEFT; break;
+				case BOTTOM: cy++; entry = TOP; break;
+				default:     cx--; entry = RIGHT; break;
+			}
+
+			if(n > limit)
+				return null;
+
+		} while(cx != start_x || cy != start_y || entry != start_e);
+
+		YawiPolygon poly = new YawiPolygon(xp, yp, n);
+
+		return (epsilon > 0) ? poly.Decimate(epsilon) : poly;
+	}
+
+	/// position of the crossing between two samples, from the first one
+	private float Lerp(float a, float b)
+	{
+		float d = b - a;
+
+		if(d == 0)
+			return 0.5f;
+
+		float t = (level - a) / d;
+
+		return (t < 0) ? 0 : ((t > 1) ? 1 : t);
+	}
+
+	/// exit edge of a cell entered through the edge entry, -1 if the
+	/// outline doesn't cross the entry edge
+	private static int Exit(int entry, boolean tl, boolean tr, boolean br, boolean bl, boolean center)
+	{
+		boolean top = tl != tr;
+		boolean right = tr != br;
+		boolean bottom = br != bl;
+		boolean left = bl != tl;
+
+		boolean[] cross = {top, right, bottom, left};
+
+		if(!cross[entry])
+			return -1;
+
+		// saddle: the center sample decides which corners are connected
+		if(top && right && bottom && left)
+		{
+			// the corners cut off are the ones different from the center
+			boolean tl_cut = (tl != center);
+
+			if(tl_cut)
+			{
+				// TL and BR are cut: (left, top) and (right, bottom)
+				switch(entry)
+				{
+					case LEFT:   return TOP;
+					case TOP:    return LEFT;
+					case RIGHT:  return BOTTOM;
+					default:     return RIGHT;
+				}
+			}
+			else
+			{
+				// TR and BL are cut: (top, right) and (bottom, left)
+				switch(entry)
+				{
+					case TOP:    return RIGHT;
+					case RIGHT:  return TOP;
+					case BOTTOM: return LEFT;
+					default:     return BOTTOM;
+				}
+			}
+		}
+
+		// two crossed edges, exit through the other one
+		for(int e = 0; e < 4; e++)
+			if(e != entry && cross[e])
+				return e;
+
+		return -1;
+	}
+}
@@ -0,0 +1,256 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Segmentation metrics: probe counters and stage timings collected
+// by the segmenters, available through JMX and as text.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.ObjectName;
+
+/// plugin wide metrics, the segmenters count locally and add their counts
+/// here once per segmentation so the probes themselves stay cheap
+public class YawiMetrics implements YawiMetricsMBean
+{
+	/// stages
+	static final int THRESHOLD = 0, OUTLINE = 1, TRACE = 2, INFO = 3, STARTUP = 4;
+	/// number of stages
+	static final int STAGES = 5;
+	/// names of the stages
+	static final String[] STAGE_NAMES = {"SetThreshold", "AutoOutline", "TraceEdge", "PrintRoiInfo", "Startup"};
+
+	/// JMX name
+	static final String OBJECT_NAME = "Yawi2D:type=Metrics";
+
+	private static final YawiMetrics instance = new YawiMetrics();
+	private static volatile boolean registered = false;
+
+	/// histogram of durations with power of 2 buckets
+	static class Histogram
+	{
+		/// bucket i counts the durations in [2^i, 2^(i+1)) ns
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		void Add(long ns)
+		{
+			if(ns < 1)
+				ns = 1;
+
+			buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(ns));
+			count.incrementAndGet();
+			sum.addAndGet(ns);
+
+			long m;
+
+			while(ns > (m = max.get()) && !max.compareAndSet(m, ns)) { }
+		}
+
+		long Count() { return count.get(); }
+
+		long Mean()
+		{
+			long c = count.get();
+
+			return c > 0 ? sum.get() / c : 0;
+		}
+
+		long Max() { return max.get(); }
+
+		/// upper bound of the bucket containing the q quantile
+		long Quantile(double q)
+		{
+			long c = count.get();
+
+			if(c == 0)
+				return 0;
+
+			long target = (long)Math.ceil(q * c);
+			long seen = 0;
+
+			for(int i = 0; i < 64; i++)
+			{
+				seen += buckets.get(i);
+
+				if(seen >= target)
+					return i < 62 ? (1L << (i + 1)) : Long.MAX_VALUE;
+			}
+
+			return max.get();
+		}
+
+		void Reset()
+		{
+			for(int i = 0; i < 64; i++)
+				buckets.set(i, 0);
+
+			count.set(0);
+			sum.set(0);
+			max.set(0);
+		}
+	}
+
+	private final AtomicLong segmentations = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong inside_calls = new AtomicLong();
+	private final AtomicLong window_calls = new AtomicLong();
+	private final AtomicLong trace_steps = new AtomicLong();
+	private final AtomicLong growths = new AtomicLong();
+	private final AtomicLong leaks = new AtomicLong();
+
+	private final Histogram[] stages = new Histogram[STAGES];
+
+	private YawiMetrics()
+	{
+		for(int i = 0; i < STAGES; i++)
+			stages[i] = new Histogram();
+	}
+
+	/// the metrics, registered in the platform MBean server on first use
+	static YawiMetrics Get()
+	{
+		if(!registered)
+			Register();
+
+		return instance;
+	}
+
+	private static synchronized void Register()
+	{
+		if(registered)
+			return;
+
+		registered = true;
+
+		try
+		{
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			// the plugin can be reloaded by ImageJ, replace the old instance
+			if(ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance, name);
+		}
+		catch(Exception e)
+		{
+			// JMX is optional, the metrics are still available with Dump()
+		}
+	}
+
+	/// add the counts of a segmentation
+	void Record(boolean ok, long inside, long window, long steps, long grow)
+	{
+		segmentations.incrementAndGet();
+
+		if(!ok)
+			failures.incrementAndGet();
+
+		inside_calls.addAndGet(inside);
+		window_calls.addAndGet(window);
+		trace_steps.addAndGet(steps);
+		growths.addAndGet(grow);
+	}
+
+	/// count a trace aborted by the leak guard
+	void RecordLeak() { leaks.incrementAndGet(); }
+
+	/// add the duration of a stage
+	void RecordStage(int stage, long ns) { stages[stage].Add(ns); }
+
+	Histogram GetStage(int stage) { return stages[stage]; }
+
+	public long getSegmentations() { return segmentations.get(); }
+
+	public long getFailures() { return failures.get(); }
+
+	public long getInsideCalls() { return inside_calls.get(); }
+
+	public long getInsideWindowCalls() { return window_calls.get(); }
+
+	public long getTraceSteps() { return trace_steps.get(); }
+
+	public long getArrayGrowths() { return growths.get(); }
+
+	public long getLeaks() { return leaks.get(); }
+
+	public long getThresholdMeanNanos() { return stages[THRESHOLD].Mean(); }
+
+	public long getOutlineMeanNanos() { return stages[OUTLINE].Mean(); }
+
+	public long getTraceMeanNanos() { return stages[TRACE].Mean(); }
+
+	public long getInfoMeanNanos() { return stages[INFO].Mean(); }
+
+	public long getStartupMeanNanos() { return stages[STARTUP].Mean(); }
+
+	public String Dump()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("                  METRICS\n\n");
+		sb.append("segmentations: ").append(segmentations.get()).append('\n');
+		sb.append("failures: ").append(failures.get()).append('\n');
+		sb.append("Inside(x,y): ").append(inside_calls.get()).append('\n');
+		sb.append("Inside(x,y,dir): ").append(window_calls.get()).append('\n');
+		sb.append("trace steps: ").append(trace_steps.get()).append('\n');
+		sb.append("array growths: ").append(growths.get()).append('\n');
+		sb.append("leaks aborted: ").append(leaks.get()).append("\n\n");
+
+		sb.append("stage times (us): count mean p50 p99 max\n");
+
+		for(int i = 0; i < STAGES; i++)
+		{
+			Histogram h = stages[i];
+
+			sb.append(STAGE_NAMES[i]).append(": ").append(h.Count()).append(' ')
+			  .append(h.Mean() / 1000).append(' ')
+			  .append(h.Quantile(0.5) / 1000).append(' ')
+			  .append(h.Quantile(0.99) / 1000).append(' ')
+			  .append(h.Max() / 1000).append('\n');
+		}
+
+		return sb.toString();
+	}
+
+	public void DumpToFile(String path) throws IOException
+	{
+		Writer out = new FileWriter(path, true);
+
+		try
+		{
+			out.write(Dump());
+			out.write('\n');
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public void Reset()
+	{
+		segmentations.set(0);
+		failures.set(0);
+		inside_calls.set(0);
+		window_calls.set(0);
+		trace_steps.set(0);
+		growths.set(0);
+		leaks.set(0);
+
+		for(int i = 0; i < STAGES; i++)
+			stages[i].Reset();
+	}
+}
@@ -0,0 +1,45 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// JMX interface of the segmentation metrics.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// management interface of YawiMetrics, registered as Yawi2D:type=Metrics
+public interface YawiMetricsMBean
+{
+	/// number of segmentations
+	long getSegmentations();
+	/// number of segmentations without a selection
+	long getFailures();
+	/// number of calls to Inside(x, y)
+	long getInsideCalls();
+	/// number of calls to Inside(x, y, direction)
+	long getInsideWindowCalls();
+	/// number of steps of the tracer
+	long getTraceSteps();
+	/// number of times the outline arrays have been enlarged
+	long getArrayGrowths();
+	/// number of traces aborted by the leak guard
+	long getLeaks();
+
+	/// mean time of a stage in nanoseconds
+	long getThresholdMeanNanos();
+	long getOutlineMeanNanos();
+	long getTraceMeanNanos();
+	long getInfoMeanNanos();
+	/// mean time from the start of the plugin to the main window shown
+	long getStartupMeanNanos();
+
+	/// the metrics as text
+	String Dump();
+	/// write the metrics to a file
+	void DumpToFile(String path) throws java.io.IOException;
+	/// reset all the counters
+	void Reset();
+}
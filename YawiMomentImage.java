@@ -0,0 +1,124 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Summed area tables of the pixel values and of their squares, used
+// to compute the mean and the variance of a rectangle in constant
+// time whatever its size. The tables can cover a window of the plane
+// only, when a few rectangles around a point are needed.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// summed area tables of value and value^2 of a 8-bit plane
+class YawiMomentImage
+{
+	/// table width, window width + 1
+	private final int t_width;
+	/// window covered by the tables, in image coordinates
+	private final int x0;
+	private final int y0;
+	private final int width;
+	private final int height;
+	/// sum[(y + 1) * t_width + (x + 1)] is the sum of the values in [x0,x0+x]x[y0,y0+y]
+	private final long[] sum;
+	/// same as sum for the squared values
+	private final long[] sum_sq;
+
+	YawiMomentImage(byte[] pixels, int width, int height)
+	{
+		this(pixels, width, height, 0, 0, width - 1, height - 1);
+	}
+
+	/// tables over the window [x_a,x_b]x[y_a,y_b] clipped to the image, the queries
+	/// keep the image coordinates and are clipped to the window
+	YawiMomentImage(byte[] pixels, int img_width, int img_height, int x_a, int y_a, int x_b, int y_b)
+	{
+		x0 = Math.max(x_a, 0);
+		y0 = Math.max(y_a, 0);
+		width = Math.max(Math.min(x_b, img_width - 1) - x0 + 1, 0);
+		height = Math.max(Math.min(y_b, img_height - 1) - y0 + 1, 0);
+
+		t_width = width + 1;
+		sum = new long[t_width * (height + 1)];
+		sum_sq = new long[t_width * (height + 1)];
+
+		// the first row and column of the tables are left to 0
+		for(int y = 0; y < height; y++)
+		{
+			long row = 0;
+			long row_sq = 0;
+			int src = (y0 + y) * img_width + x0;
+			int dst = (y + 1) * t_width + 1;
+
+			for(int x = 0; x < width; x++)
+			{
+				int value = pixels[src + x] & 0xff;
+
+				row += value;
+				row_sq += value * value;
+
+				sum[dst + x] = sum[dst + x - t_width] + row;
+				sum_sq[dst + x] = sum_sq[dst + x - t_width] + row_sq;
+			}
+		}
+	}
+
+	/// number of pixels of the rectangle [x_a,x_b]x[y_a,y_b] clipped to the window
+	int Count(int x_a, int y_a, int x_b, int y_b)
+	{
+		x_a = Math.max(x_a, x0);
+		y_a = Math.max(y_a, y0);
+		x_b = Math.min(x_b, x0 + width - 1);
+		y_b = Math.min(y_b, y0 + height - 1);
+
+		if(x_a > x_b || y_a > y_b)
+			return 0;
+
+		return (x_b - x_a + 1) * (y_b - y_a + 1);
+	}
+
+	/// sum of the values in the rectangle [x_a,x_b]x[y_a,y_b] clipped to the window
+	long Sum(int x_a, int y_a, int x_b, int y_b) { return Rect(sum, x_a, y_a, x_b, y_b); }
+
+	/// sum of the squared values in the rectangle [x_a,x_b]x[y_a,y_b] clipped to the window
+	long SumSq(int x_a, int y_a, int x_b, int y_b) { return Rect(sum_sq, x_a, y_a, x_b, y_b); }
+
+	/// variance of the values in the rectangle [x_a,x_b]x[y_a,y_b] clipped to the window
+	/// times the square of its number of pixels, exact in integers
+	long ScaledVariance(int x_a, int y_a, int x_b, int y_b)
+	{
+		long n = Count(x_a, y_a, x_b, y_b);
+		long s = Sum(x_a, y_a, x_b, y_b);
+
+		return n * SumSq(x_a, y_a, x_b, y_b) - s * s;
+	}
+
+	private long Rect(long[] table, int x_a, int y_a, int x_b, int y_b)
+	{
+		x_a -= x0;
+		y_a -= y0;
+		x_b -= x0;
+		y_b -= y0;
+
+		if(x_a < 0)
+			x_a = 0;
+		if(y_a < 0)
+			y_a = 0;
+		if(x_b >= width)
+			x_b = width - 1;
+		if(y_b >= height)
+			y_b = height - 1;
+
+		if(x_a > x_b || y_a > y_b)
+			return 0;
+
+		int top = y_a * t_width;
+		int bottom = (y_b + 1) * t_width;
+
+		return table[bottom + x_b + 1] - table[bottom + x_a] - table[top + x_b + 1] + table[top + x_a];
+	}
+}
@@ -0,0 +1,206 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Outline with sub-pixel coordinates.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// closed outline with floating point coordinates
+class YawiPolygon
+{
+	/// X coordinate of the points in the border of the Roi
+	final float[] xpoints;
+	/// Y coordinate of the points in the border of the Roi
+	final float[] ypoints;
+	/// number of points of the outline
+	final int npoints;
+
+	YawiPolygon(float[] xpoints, float[] ypoints, int npoints)
+	{
+		this.xpoints = xpoints;
+		this.ypoints = ypoints;
+		this.npoints = npoints;
+	}
+
+	/// area of the outline (shoelace formula)
+	double Area()
+	{
+		double sum = 0;
+
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+			sum += (double)xpoints[j] * ypoints[i] - (double)xpoints[i] * ypoints[j];
+
+		return Math.abs(sum) / 2.0;
+	}
+
+	/// length of the outline
+	double Perimeter()
+	{
+		double len = 0;
+
+		for(int i = 0, j = npoints - 1; i < npoints; j = i++)
+		{
+			double dx = xpoints[i] - xpoints[j];
+			double dy = ypoints[i] - ypoints[j];
+
+			len += Math.sqrt(dx * dx + dy * dy);
+		}
+
+		return len;
+	}
+
+	/// outline with the coordinates rounded to the nearest pixel corner,
+	/// consecutive equal points are dropped
+	YawiContour Round()
+	{
+		int[] x = new int[npoints];
+		int[] y = new int[npoints];
+		int n = 0;
+
+		for(int i = 0; i < npoints; i++)
+		{
+			int xr = Math.round(xpoints[i]);
+			int yr = Math.round(ypoints[i]);
+
+			if(n > 0 && x[n - 1] == xr && y[n - 1] == yr)
+				continue;
+
+			x[n] = xr;
+			y[n] = yr;
+			n++;
+		}
+
+		// the outline is closed, the last point can be equal to the first one
+		if(n > 1 && x[n - 1] == x[0] && y[n - 1] == y[0])
+			n--;
+
+		return new YawiContour(x, y, n);
+	}
+
+	/// Douglas-Peucker decimation: removes the points closer than epsilon
+	/// to the segment joining the points kept around them
+	YawiPolygon Decimate(double epsilon)
+	{
+		if(npoints < 4)
+			return this;
+
+		boolean[] keep = new boolean[npoints];
+
+		// the outline is split in two chains at the point farthest from the first one
+		int far = 0;
+		double far_d = -1;
+
+		for(int i = 1; i < npoints; i++)
+		{
+			double dx = xpoints[i] - xpoints[0];
+			double dy = ypoints[i] - ypoints[0];
+			double d = dx * dx + dy * dy;
+
+			if(d > far_d)
+			{
+				far_d = d;
+				far = i;
+			}
+		}
+
+		keep[0] = true;
+		keep[far] = true;
+
+		Simplify(0, far, epsilon * epsilon, keep);
+		Simplify(far, npoints, epsilon * epsilon, keep);
+
+		int n = 0;
+
+		for(int i = 0; i < npoints; i++)
+			if(keep[i])
+				n++;
+
+		float[] x = new float[n];
+		float[] y = new float[n];
+
+		for(int i = 0, k = 0; i < npoints; i++)
+		{
+			if(keep[i])
+			{
+				x[k] = xpoints[i];
+				y[k] = ypoints[i];
+				k++;
+			}
+		}
+
+		return new YawiPolygon(x, y, n);
+	}
+
+	/// simplify the chain from a to b (b == npoints means the first point),
+	/// an explicit stack avoids deep recursion on long outlines
+	private void Simplify(int a, int b, double eps2, boolean[] keep)
+	{
+		int[] stack = new int[64];
+		int top = 0;
+
+		stack[top++] = a;
+		stack[top++] = b;
+
+		while(top > 0)
+		{
+			int end = stack[--top];
+			int start = stack[--top];
+
+			if(end - start < 2)
+				continue;
+
+			float ax = xpoints[start], ay = ypoints[start];
+			float bx = xpoints[end % npoints], by = ypoints[end % npoints];
+
+			double dx = bx - ax;
+			double dy = by - ay;
+			double len2 = dx * dx + dy * dy;
+
+			int max_i = -1;
+			double max_d = eps2;
+
+			for(int i = start + 1; i < end; i++)
+			{
+				double px = xpoints[i] - ax;
+				double py = ypoints[i] - ay;
+				double d;
+
+				if(len2 == 0)
+					d = px * px + py * py;
+				else
+				{
+					double cross = px * dy - py * dx;
+					d = cross * cross / len2;
+				}
+
+				if(d > max_d)
+				{
+					max_d = d;
+					max_i = i;
+				}
+			}
+
+			if(max_i < 0)
+				continue;
+
+			keep[max_i] = true;
+
+			if(top + 4 > stack.length)
+			{
+				int[] temp = new int[stack.length * 2];
+				System.arraycopy(stack, 0, temp, 0, top);
+				stack = temp;
+			}
+
+			stack[top++] = start;
+			stack[top++] = max_i;
+			stack[top++] = max_i;
+			stack[top++] = end;
+		}
+	}
+}
@@ -0,0 +1,1322 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Regression corpus: synthetic phantoms segmented with every engine
+// variant. The variants that must give the same outline are compared
+// with each other, every outline is compared with the golden file and
+// every case has a time and an allocation budget. Run with:
+//		java -cp ij.jar:. YawiRegression [check|record] [golden file]
+// the exit status is 1 if a check fails.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/// checks the segmentation of a fixed set of synthetic slices against golden outputs
+class YawiRegression
+{
+	/// default golden file
+	static final String GOLDEN_DEF = "data" + File.separator + "regression.golden";
+
+	/// a case can take up to TIME_FACTOR times its recorded time plus TIME_SLACK
+	static final int TIME_FACTOR = 4;
+	static final long TIME_SLACK_US = 20000;
+	/// a case can allocate up to ALLOC_FACTOR times its recorded bytes plus ALLOC_SLACK
+	static final int ALLOC_FACTOR = 2;
+	static final long ALLOC_SLACK_KB = 1024;
+
+	/// a synthetic slice and the point clicked on it
+	static class Phantom
+	{
+		final String name;
+		final byte[] pixels;
+		final int width;
+		final int height;
+		final int seed_x;
+		final int seed_y;
+
+		Phantom(String name, byte[] pixels, int width, int height, int seed_x, int seed_y)
+		{
+			this.name = name;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.seed_x = seed_x;
+			this.seed_y = seed_y;
+		}
+	}
+
+	/// a region of a phantom: inside(x,y) decides the foreground
+	interface Shape
+	{
+		boolean Inside(double x, double y);
+	}
+
+	/// a phantom with foreground fg and background bg, uniform noise of the
+	/// given amplitude and a fraction of impulses (0 or 255)
+	static Phantom Make(String name, int width, int height, int seed_x, int seed_y,
+						Shape shape, int fg, int bg, int noise, double impulses, long seed)
+	{
+		Random rnd = new Random(seed);
+		byte[] pixels = new byte[width * height];
+
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)
+			{
+				int value = shape.Inside(x, y) ? fg : bg;
+
+				if(noise > 0)
+					value += rnd.nextInt(2 * noise + 1) - noise;
+
+				if(impulses > 0 && rnd.nextDouble() < impulses)
+					value = rnd.nextBoolean() ? 255 : 0;
+
+				pixels[y * width + x] = (byte)Math.max(0, Math.min(255, value));
+			}
+
+		return new Phantom(name, pixels, width, height, seed_x, seed_y);
+	}
+
+	/// the corpus, always the same slices
+	static Phantom[] Corpus()
+	{
+		List<Phantom> list = new ArrayList<Phantom>();
+
+		list.add(Make("disc", 256, 256, 128, 128, new Shape()
+		{
+			public boolean Inside(double x, double y) { return Math.hypot(x - 128, y - 128) < 60; }
+		}, 170, 70, 8, 0, 1));
+
+		list.add(Make("ring", 256, 256, 188, 128, new Shape()
+		{
+			public boolean Inside(double x, double y)
+			{
+				double d = Math.hypot(x - 128, y - 128);
+				return d >= 40 && d < 80;
+			}
+		}, 160, 60, 4, 0, 2));
+
+		list.add(Make("noisy_blob", 320, 320, 160, 160, new Shape()
+		{
+			public boolean Inside(double x, double y)
+			{
+				double a = Math.atan2(y - 160, x - 160);
+				return Math.hypot(x - 160, y - 160) < 80 * (1 + 0.2 * Math.sin(5 * a));
+			}
+		}, 180, 80, 25, 0.02, 3));
+
+		list.add(Make("star", 300, 300, 150, 150, new Shape()
+		{
+			public boolean Inside(double x, double y)
+			{
+				double a = Math.atan2(y - 150, x - 150);
+				return Math.hypot(x - 150, y - 150) < 60 + 45 * Math.cos(5 * a);
+			}
+		}, 200, 50, 4, 0, 4));
+
+		list.add(Make("c_shape", 300, 300, 75, 150, new Shape()
+		{
+			public boolean Inside(double x, double y)
+			{
+				double d = Math.hypot(x - 150, y - 150);
+				return d >= 50 && d < 100 && Math.abs(Math.atan2(y - 150, x - 150)) > 0.5;
+			}
+		}, 190, 90, 10, 0, 5));
+
+		list.add(Make("ramp_background", 400, 200, 200, 100, new Shape()
+		{
+			public boolean Inside(double x, double y) { return Math.hypot(x - 200, y - 100) < 50; }
+		}, 210, 0, 6, 0, 6));
+
+		// the background of ramp_background goes from 0 to 120
+		Phantom ramp = list.get(list.size() - 1);
+
+		for(int y = 0; y < ramp.height; y++)
+			for(int x = 0; x < ramp.width; x++)
+				if(Math.hypot(x - 200, y - 100) >= 50)
+					ramp.pixels[y * ramp.width + x] = (byte)(x * 120 / ramp.width);
+
+		// the outline is longer than YawiSegmenter.MAX_STEPS
+		list.add(Make("huge_disc", 3000, 3000, 1500, 1500, new Shape()
+		{
+			public boolean Inside(double x, double y) { return Math.hypot(x - 1500, y - 1500) < 1400; }
+		}, 170, 70, 8, 0, 7));
+
+		return list.toArray(new Phantom[list.size()]);
+	}
+
+	/// outputs of a case
+	static class Outcome
+	{
+		/// golden lines: variant, points, hash, area
+		final Map<String, String> lines = new LinkedHashMap<String, String>();
+		/// failed consistency checks
+		final List<String> errors = new ArrayList<String>();
+		long time_us;
+		long alloc_kb;
+	}
+
+	/// segment a phantom with every variant
+	static Outcome Run(Phantom ph)
+	{
+		Outcome out = new Outcome();
+
+		YawiSettings settings = new YawiSettings();
+
+		// plain tracer with the default counter
+		YawiContour plain = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings).Segment(ph.seed_x, ph.seed_y);
+		Add(out, "plain", plain);
+
+		// summed area table
+		YawiSegmenter seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings);
+		seg.SetThreshold(ph.seed_x, ph.seed_y);
+		seg.SetIntegralImage(new YawiIntegralImage(ph.pixels, ph.width, ph.height,
+												   seg.GetLowerThreshold(), seg.GetUpperThreshold()));
+		Same(out, "integral", seg.Outline(ph.seed_x, ph.seed_y), "plain", plain);
+
+		// region criteria: the range one and a gradient limit that can't be reached
+		// are the threshold range of the segmenter; a range of the plane itself is
+		// the threshold range, the one of a copy is traced through the criterion
+		seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings);
+		seg.SetThreshold(ph.seed_x, ph.seed_y);
+		seg.SetCriterion(new YawiCriterion.Range(ph.pixels, ph.width, ph.height,
+												 seg.GetLowerThreshold(), seg.GetUpperThreshold()));
+		Same(out, "criterion", seg.Outline(ph.seed_x, ph.seed_y), "plain", plain);
+
+		seg.SetCriterion(new YawiCriterion.Range((byte[])ph.pixels.clone(), ph.width, ph.height,
+												 seg.GetLowerThreshold(), seg.GetUpperThreshold()));
+		Same(out, "criterion copy", seg.Outline(ph.seed_x, ph.seed_y), "plain", plain);
+
+		seg.SetCriterion(new YawiCriterion.GradientLimited(ph.pixels, ph.width, ph.height,
+														   seg.GetLowerThreshold(), seg.GetUpperThreshold(), 2 * 255));
+		Same(out, "gradient", seg.Outline(ph.seed_x, ph.seed_y), "plain", plain);
+
+		// window counters
+		seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings);
+		seg.SetCounter(new YawiWindowCounter.Scalar());
+		Same(out, "scalar", seg.Segment(ph.seed_x, ph.seed_y), "plain", plain);
+
+		YawiWindowCounter vector = YawiWindowCounter.LoadVector();
+
+		if(vector != null)
+		{
+			seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings);
+			seg.SetCounter(vector);
+			Same(out, "vector", seg.Segment(ph.seed_x, ph.seed_y), "plain", plain);
+		}
+
+		// no step limit, the reference of the other variants
+		seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings);
+		seg.SetMaxSteps(Integer.MAX_VALUE / 2);
+		YawiContour full = seg.Segment(ph.seed_x, ph.seed_y);
+		Add(out, "unbounded", full);
+
+		if(plain != null)
+			Same(out, "unbounded", full, "plain", plain);
+
+		if(full != null)
+		{
+			Same(out, "refine", seg.Refine(full, ph.seed_x, ph.seed_y), "unbounded", full);
+
+			// a refine of an outline moved away from the region falls back to a search
+			// from scratch, it is still one segmentation in the metrics
+			YawiContour away = full.Copy();
+
+			for(int i = 0; i < away.npoints; i++)
+				away.xpoints[i] += 3 * YawiSegmenter.REFINE_RAD;
+
+			long before = YawiMetrics.Get().getSegmentations();
+			YawiSegmenter refiner = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings);
+
+			Same(out, "refine away", refiner.Refine(away, ph.seed_x, ph.seed_y), "plain", plain);
+
+			if(YawiMetrics.Get().getSegmentations() != before + 1)
+				out.errors.add("a refine counted as " + (YawiMetrics.Get().getSegmentations() - before) + " segmentations");
+
+			// the traced outline encloses exactly the pixels of its scanline fill
+			boolean[] mask = new boolean[ph.width * ph.height];
+			int filled = full.FillMask(mask, ph.width, ph.height);
+
+			if(filled != (int)full.Area())
+				out.errors.add("area " + full.Area() + " != filled pixels " + filled);
+
+			// a seed close to the right edge of the region still gives an outline around it
+			int edge_x = ph.seed_x;
+
+			while(edge_x + 1 < ph.width && mask[ph.seed_y * ph.width + edge_x + 1])
+				edge_x++;
+
+			YawiContour near = seg.Segment(edge_x - 2, ph.seed_y);
+
+			if(near == null || !near.Contains(edge_x - 1.5, ph.seed_y + 0.5))
+				out.errors.add("no outline around the seed " + (edge_x - 2) + "," + ph.seed_y + " close to the edge: " +
+							   YawiSegmenter.FAIL_NAMES[seg.GetFailure()]);
+
+			Add(out, "smooth1", full.Smooth1());
+			Add(out, "smooth2", full.Smooth2());
+
+			// the chain code gives back the outline and its area
+			YawiChainCode chain = YawiChainCode.Of(full);
+
+			if(chain == null)
+				out.errors.add("no chain code of the traced outline");
+			else
+			{
+				Same(out, "chain", chain.ToContour(), "unbounded", full);
+
+				if(chain.GetMoments().area != full.Area())
+					out.errors.add("chain area " + chain.GetMoments().area + " != " + full.Area());
+			}
+
+			// the history gives back the outlines it was given
+			YawiContour moved = full.Copy();
+
+			for(int i = 0; i < moved.npoints; i++)
+				moved.xpoints[i]++;
+
+			YawiRoiHistory history = new YawiRoiHistory();
+			history.Push(1, full);
+			history.Push(1, moved);
+
+			Same(out, "undo", history.Undo(1), "unbounded", full);
+			Same(out, "redo", history.Redo(1), "moved", moved);
+		}
+
+		// the leak guard doesn't change a good outline, stops one with bounds larger
+		// than its fraction of the slice and stops a seed in the background
+		YawiSettings guarded = new YawiSettings(settings);
+		guarded._leak_frac = 0.5f;
+
+		seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, guarded);
+		YawiContour kept = seg.Segment(ph.seed_x, ph.seed_y);
+		java.awt.Rectangle bounds = (plain != null) ? plain.GetBounds() : null;
+
+		if(bounds != null && (long)bounds.width * bounds.height > guarded._leak_frac * ph.width * ph.height)
+		{
+			if(kept != null || !seg.Leaked())
+				out.errors.add("outline larger than the leak guard not stopped: " + YawiSegmenter.FAIL_NAMES[seg.GetFailure()]);
+		}
+		else
+			Same(out, "guarded", kept, "plain", plain);
+
+		seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, guarded);
+
+		if(seg.Segment(2, 2) != null || !seg.Leaked())
+			out.errors.add("background seed not stopped by the leak guard: " + YawiSegmenter.FAIL_NAMES[seg.GetFailure()]);
+
+		// a click without an edge after a leaking one doesn't keep the reason of the leak:
+		// no pixel is in the empty range, the search never starts a trace
+		seg.SetThresholds(1, 0);
+
+		if(seg.Outline(ph.seed_x, ph.seed_y) != null || seg.GetFailure() != YawiSegmenter.FAIL_NO_EDGE)
+			out.errors.add("click without an edge after a leak failed with: " + YawiSegmenter.FAIL_NAMES[seg.GetFailure()]);
+
+		// the seed snapping moves a seed on the edge inside the region
+		if(plain != null)
+		{
+			YawiSettings snap = new YawiSettings(settings);
+			snap._snap_rad = 3;
+
+			int edge_x = ph.seed_x;
+
+			while(plain.Contains(edge_x + 1.5, ph.seed_y + 0.5))
+				edge_x++;
+
+			seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, snap);
+			YawiContour snapped = seg.Segment(edge_x, ph.seed_y);
+
+			if(seg.GetSeedX() >= edge_x)
+				out.errors.add("seed " + edge_x + "," + ph.seed_y + " on the edge not snapped inside");
+
+			if(snapped == null || Math.abs(snapped.Area() - plain.Area()) > 0.1 * plain.Area())
+				out.errors.add("snapped seed outline " + Describe(snapped) + " far from plain " + Describe(plain));
+
+			// the window tables of a lone click snap like the shared tables of the plane
+			YawiMomentImage moments = new YawiMomentImage(ph.pixels, ph.width, ph.height);
+			int snapped_x = seg.GetSeedX();
+			int snapped_y = seg.GetSeedY();
+
+			seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, snap);
+			seg.SetMomentImage(moments);
+			YawiContour shared = seg.Segment(edge_x, ph.seed_y);
+
+			if(seg.GetSeedX() != snapped_x || seg.GetSeedY() != snapped_y)
+				out.errors.add("seed snapped to " + snapped_x + "," + snapped_y + " with the window tables, to " +
+							   seg.GetSeedX() + "," + seg.GetSeedY() + " with the shared ones");
+
+			Same(out, "shared tables", shared, "snapped", snapped);
+		}
+
+		// threshold estimators
+		YawiSettings percentile = new YawiSettings(settings);
+		percentile._thr_mode = YawiSettings.THR_PERCENTILE;
+		percentile._side = 9;
+		Add(out, "percentile", new YawiSegmenter(ph.pixels, ph.width, ph.height, percentile).Segment(ph.seed_x, ph.seed_y));
+
+		YawiSettings sigma = new YawiSettings(settings);
+		sigma._thr_mode = YawiSettings.THR_SIGMA;
+		sigma._side = 15;
+		YawiContour sigma_c = new YawiSegmenter(ph.pixels, ph.width, ph.height, sigma).Segment(ph.seed_x, ph.seed_y);
+		Add(out, "sigma", sigma_c);
+
+		seg = new YawiSegmenter(ph.pixels, ph.width, ph.height, sigma);
+		seg.SetMomentImage(new YawiMomentImage(ph.pixels, ph.width, ph.height));
+		Same(out, "sigma shared tables", seg.Segment(ph.seed_x, ph.seed_y), "sigma", sigma_c);
+
+		return out;
+	}
+
+	/// segment every phantom from its own session, all at the same time, and
+	/// compare with the plain tracer: the sessions must not interfere
+	/// returns the differences found
+	static List<String> Sessions(final Phantom[] corpus) throws InterruptedException
+	{
+		final YawiSettings settings = new YawiSettings();
+		final YawiContour[] got = new YawiContour[corpus.length];
+		Thread[] threads = new Thread[corpus.length];
+
+		for(int i = 0; i < corpus.length; i++)
+		{
+			final int k = i;
+
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					Phantom ph = corpus[k];
+					YawiSession session = new YawiSession(ph.name, new Object[] { ph.pixels },
+														  ph.width, ph.height, settings);
+
+					// a few clicks, the last one is the seed
+					for(int r = 0; r < 3; r++)
+						session.Segment(ph.seed_x, ph.seed_y);
+
+					got[k] = session.GetContour(1);
+				}
+			}, "session " + corpus[i].name);
+
+			threads[i].start();
+		}
+
+		for(int i = 0; i < threads.length; i++)
+			threads[i].join();
+
+		List<String> errors = new ArrayList<String>();
+
+		for(int i = 0; i < corpus.length; i++)
+		{
+			Phantom ph = corpus[i];
+			YawiContour plain = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings).Segment(ph.seed_x, ph.seed_y);
+
+			if(!Describe(got[i]).equals(Describe(plain)))
+				errors.add(ph.name + " session differs from plain: " + Describe(got[i]) + " / " + Describe(plain));
+		}
+
+		// the outline of a slice is not smoothed into the history of another one
+		Phantom ph = corpus[0];
+		YawiSession session = new YawiSession(ph.name, new Object[] { ph.pixels, ph.pixels.clone() },
+											  ph.width, ph.height, settings);
+
+		session.Segment(ph.seed_x, ph.seed_y);
+		session.SetSlice(2);
+
+		if(session.Smooth(1) != null || session.GetContour(2) != null || session.CanUndo())
+			errors.add("the outline of slice 1 has been smoothed on slice 2");
+
+		// a click without a selection keeps the seed of the current outline
+		YawiSettings guarded = new YawiSettings(settings);
+		guarded._leak_frac = 0.5f;
+
+		session = new YawiSession(ph.name, new Object[] { ph.pixels }, ph.width, ph.height, guarded);
+		YawiContour c = session.Segment(ph.seed_x, ph.seed_y);
+
+		if(c != null && (session.Segment(2, 2) != null || session.GetSeedX() != ph.seed_x ||
+						 session.GetSeedY() != ph.seed_y || !Describe(session.Refine()).equals(Describe(c))))
+			errors.add("the failed click at 2,2 moved the seed of the outline to " +
+					   session.GetSeedX() + "," + session.GetSeedY());
+
+		// an undone outline is traced again by SubPixel with its own seed and range:
+		// two discs of different gray levels, the second click is undone
+		byte[] discs = new byte[160 * 120];
+
+		for(int y = 0; y < 120; y++)
+			for(int x = 0; x < 160; x++)
+				discs[y * 160 + x] = (byte)(Math.hypot(x - 40, y - 60) < 20 ? 200 : Math.hypot(x - 115, y - 60) < 25 ? 120 : 50);
+
+		session = new YawiSession("discs", new Object[] { discs }, 160, 120, settings);
+		YawiContour first = session.Segment(40, 60);
+
+		session.Segment(115, 60);
+		session.Undo();
+
+		YawiPolygon sub = session.SubPixel();
+
+		if(first == null || sub == null || Math.abs(sub.Area() - first.Area()) > 0.1 * first.Area() ||
+		   session.GetLowerThreshold() > 200 || session.GetUpperThreshold() < 200)
+			errors.add("sub-pixel outline of the undone disc " + ((sub != null) ? sub.Area() : 0) + " instead of " +
+					   Describe(first));
+
+		return errors;
+	}
+
+	/// run a case twice and measure the second run
+	static Outcome Measure(Phantom ph)
+	{
+		Run(ph);
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean alloc_bean = (bean instanceof com.sun.management.ThreadMXBean) ?
+													 (com.sun.management.ThreadMXBean)bean : null;
+
+		long id = Thread.currentThread().getId();
+		long a0 = (alloc_bean != null) ? alloc_bean.getThreadAllocatedBytes(id) : 0;
+		long t0 = System.nanoTime();
+
+		Outcome out = Run(ph);
+
+		out.time_us = (System.nanoTime() - t0) / 1000;
+		out.alloc_kb = (alloc_bean != null) ? (alloc_bean.getThreadAllocatedBytes(id) - a0) / 1024 : 0;
+
+		return out;
+	}
+
+	/// golden line of an outline
+	private static void Add(Outcome out, String variant, YawiContour c)
+	{
+		out.lines.put(variant, Describe(c));
+	}
+
+	/// record a variant that must give the same outline of another one
+	private static void Same(Outcome out, String variant, YawiContour c, String ref_name, YawiContour ref)
+	{
+		if(!Describe(c).equals(Describe(ref)))
+			out.errors.add(variant + " differs from " + ref_name + ": " + Describe(c) + " / " + Describe(ref));
+	}
+
+	/// points, hash of the points and area of an outline
+	static String Describe(YawiContour c)
+	{
+		if(c == null)
+			return "null";
+
+		// FNV-1a of the coordinates
+		long hash = 0xcbf29ce484222325L;
+
+		for(int i = 0; i < c.npoints; i++)
+		{
+			hash = (hash ^ c.xpoints[i]) * 0x100000001b3L;
+			hash = (hash ^ c.ypoints[i]) * 0x100000001b3L;
+		}
+
+		return c.npoints + " " + Long.toHexString(hash) + " " + (long)c.Area();
+	}
+
+	/// read a golden file: "case variant description" and "case budget time_us alloc_kb" lines
+	static Map<String, String> ReadGolden(String file) throws IOException
+	{
+		Map<String, String> golden = new LinkedHashMap<String, String>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try
+		{
+			String line;
+
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+
+				if(line.length() == 0 || line.startsWith("#"))
+					continue;
+
+				String[] tok = line.split("\\s+", 3);
+
+				if(tok.length == 3)
+					golden.put(tok[0] + " " + tok[1], tok[2]);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return golden;
+	}
+
+	/// a noisy disc on a flat background of the same mean, that no intensity range
+	/// tells apart, traced with the texture criterion: the outline is the disc and
+	/// the local deviation of the moment tables is the one of the pixels
+	/// returns the errors
+	static List<String> Texture()
+	{
+		List<String> errors = new ArrayList<String>();
+
+		final int width = 120, height = 80, cx = 60, cy = 40, r = 20;
+		byte[] pixels = new byte[width * height];
+		java.util.Random rnd = new java.util.Random(50);
+
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)
+				pixels[y * width + x] = (byte)((Math.hypot(x - cx, y - cy) < r) ? (rnd.nextBoolean() ? 100 : 160) : 130);
+
+		YawiCriterion.Texture texture = new YawiCriterion.Texture(new YawiMomentImage(pixels, width, height),
+																   width, height, 2, 15, 100);
+
+		// the deviation of a square inside the disc, computed from its pixels
+		double sum = 0, sum_sq = 0;
+
+		for(int y = cy - 2; y <= cy + 2; y++)
+			for(int x = cx - 2; x <= cx + 2; x++)
+			{
+				int v = pixels[y * width + x] & 0xff;
+
+				sum += v;
+				sum_sq += v * v;
+			}
+
+		double sigma = Math.sqrt(Math.max(sum_sq / 25 - (sum / 25) * (sum / 25), 0));
+
+		if(Math.abs(texture.Sigma(cx, cy) - sigma) > 1e-6)
+			errors.add("local deviation " + texture.Sigma(cx, cy) + " instead of " + sigma);
+
+		YawiSegmenter seg = new YawiSegmenter(pixels, width, height, new YawiSettings());
+		seg.SetCriterion(texture);
+
+		YawiContour c = seg.Outline(cx, cy);
+		double area = Math.PI * r * r;
+
+		if(c == null || !c.Contains(cx + 0.5, cy + 0.5) || Math.abs(c.Area() - area) > 0.2 * area)
+			errors.add("texture outline " + Describe(c) + ", the disc has " + Math.round(area) + " pixels: " +
+					   YawiSegmenter.FAIL_NAMES[seg.GetFailure()]);
+
+		return errors;
+	}
+
+	/// a box touching the left border of every slice, larger than the fraction of
+	/// the leak guard, segmented in 3D with the guard on: every slice has its outline
+	/// returns the errors
+	static List<String> Volume()
+	{
+		List<String> errors = new ArrayList<String>();
+
+		final int width = 80, height = 60, depth = 3;
+		Object[] planes = new Object[depth];
+
+		for(int z = 0; z < depth; z++)
+		{
+			byte[] pixels = new byte[width * height];
+
+			for(int y = 0; y < height; y++)
+				for(int x = 0; x < width; x++)
+					pixels[y * width + x] = (byte)((x < 40 && y >= 10 && y < 50) ? 200 : 50);
+
+			planes[z] = pixels;
+		}
+
+		YawiSettings settings = new YawiSettings();
+		settings._leak_frac = 0.25f;
+
+		try
+		{
+			YawiVolumeSegmenter.Result res = new YawiVolumeSegmenter(planes, width, height, settings,
+																	 YawiVolumeSegmenter.CONN_6, 2).Segment(20, 30, 1);
+
+			if(res == null)
+				errors.add("no volume from the seed in the box");
+			else
+				for(int z = 0; z < depth; z++)
+				{
+					if(res.contours[z].length != 1)
+						errors.add("slice " + (z + 1) + ": " + res.contours[z].length + " outlines of " +
+								   res.slice_voxels[z] + " voxels instead of 1");
+					else if(Math.abs(res.contours[z][0].Area() - res.slice_voxels[z]) > 0.05 * res.slice_voxels[z])
+						errors.add("slice " + (z + 1) + ": outline " + Describe(res.contours[z][0]) + " for " +
+								   res.slice_voxels[z] + " voxels");
+				}
+		}
+		catch(Exception ex)
+		{
+			errors.add("volume segmentation failed: " + ex);
+		}
+
+		return errors;
+	}
+
+	/// colours of the RGB phantoms, the gray levels 0 and 255 of a phantom are
+	/// mapped to two colours with the same 8-bit gray value (113)
+	static final int[] RGB_LOW = { 80, 140, 120 };
+	static final int[] RGB_HIGH = { 160, 100, 80 };
+
+	/// the phantoms as RGB images whose regions differ only by their colour are
+	/// segmented by a session with each colour distance, the outlines must be
+	/// close to the plain ones of the gray phantoms
+	/// returns the errors
+	static List<String> Colors(Phantom[] corpus)
+	{
+		List<String> errors = new ArrayList<String>();
+
+		for(int i = 0; i < corpus.length; i++)
+		{
+			Phantom ph = corpus[i];
+			YawiSettings settings = new YawiSettings();
+			YawiContour plain = new YawiSegmenter(ph.pixels, ph.width, ph.height, settings).Segment(ph.seed_x, ph.seed_y);
+
+			if(plain == null)
+				continue;
+
+			int[] rgb = new int[ph.pixels.length];
+
+			for(int k = 0; k < rgb.length; k++)
+			{
+				int v = ph.pixels[k] & 0xff;
+				int c = 0;
+
+				for(int ch = 0; ch < 3; ch++)
+					c = (c << 8) | ((RGB_LOW[ch] * (255 - v) + RGB_HIGH[ch] * v + 127) / 255);
+
+				rgb[k] = c;
+			}
+
+			for(int mode = 0; mode < YawiColorDistance.MODE_NAMES.length; mode++)
+			{
+				settings._color_mode = mode;
+
+				YawiSession session = new YawiSession(ph.name, new Object[] { rgb }, ph.width, ph.height, settings);
+				YawiContour c = session.Segment(ph.seed_x, ph.seed_y);
+
+				if(c == null || Math.abs(c.Area() - plain.Area()) > 0.05 * plain.Area())
+					errors.add(ph.name + " " + YawiColorDistance.MODE_NAMES[mode] + " outline " + Describe(c) +
+							   " far from plain " + Describe(plain));
+
+				// the session traces the colours as the segmenter traces the similarity plane,
+				// with and without the seed snapping
+				YawiColorDistance d = new YawiColorDistance(YawiColorDistance.Reference(rgb, ph.width, ph.height,
+																						ph.seed_x, ph.seed_y, settings._side), mode);
+				byte[] plane = d.Plane(rgb);
+
+				for(int snap = 0; snap <= 3; snap += 3)
+				{
+					YawiSettings s = new YawiSettings(settings);
+					s._snap_rad = snap;
+
+					session = new YawiSession(ph.name, new Object[] { rgb }, ph.width, ph.height, s);
+					c = session.Segment(ph.seed_x, ph.seed_y);
+
+					YawiSegmenter seg = new YawiSegmenter(plane, ph.width, ph.height, s);
+					YawiContour k = seg.Segment(ph.seed_x, ph.seed_y);
+
+					if(!Describe(k).equals(Describe(c)) || seg.GetLowerThreshold() != session.GetLowerThreshold() ||
+					   seg.GetUpperThreshold() != session.GetUpperThreshold())
+						errors.add(ph.name + " " + YawiColorDistance.MODE_NAMES[mode] + " snap " + snap + " session " +
+								   Describe(c) + " differs from the similarity plane " + Describe(k));
+				}
+
+				// the similarity around one seed is not left to the next one
+				session.Segment(2, 2);
+				c = session.Segment(ph.seed_x, ph.seed_y);
+
+				if(c == null || Math.abs(c.Area() - plain.Area()) > 0.05 * plain.Area())
+					errors.add(ph.name + " " + YawiColorDistance.MODE_NAMES[mode] + " outline after a background click " +
+							   Describe(c) + " far from plain " + Describe(plain));
+			}
+		}
+
+		return errors;
+	}
+
+	/// write a phantom as a PNG file
+	static void SavePng(Phantom ph, File file)
+	{
+		new ij.io.FileSaver(new ij.ImagePlus(ph.name, new ij.process.ByteProcessor(ph.width, ph.height, ph.pixels, null)))
+			.saveAsPng(file.getPath());
+	}
+
+	/// a batch stopped by a crash, its journal ends with a cut line, is run again:
+	/// the units in the journal are skipped, the others are run once, a unit
+	/// without an outline is journaled and one that can't be read is not
+	/// returns the errors
+	static List<String> Batch() throws IOException, InterruptedException
+	{
+		List<String> errors = new ArrayList<String>();
+
+		File study = File.createTempFile("yawi_study", "");
+		study.delete();
+		study.mkdir();
+
+		File journal = new File(study.getParentFile(), study.getName() + ".journal");
+		File rois = new File(study.getParentFile(), study.getName() + ".csv");
+
+		for(int k = 0; k < 3; k++)
+			SavePng(Make("slice", 120, 120, 60, 60, new Shape()
+			{
+				public boolean Inside(double x, double y) { return Math.hypot(x - 60, y - 60) < 15; }
+			}, 200, 50, 4, 0, 20 + k), new File(study, "slice" + k + ".png"));
+
+		String path = study.getPath();
+
+		List<YawiBatch.Unit> units = new ArrayList<YawiBatch.Unit>();
+
+		for(int k = 1; k <= 3; k++)
+			units.add(new YawiBatch.Unit(path, k, 60, 60));
+
+		units.add(new YawiBatch.Unit(path, 2, 500, 500));
+		units.add(new YawiBatch.Unit(path, 9, 60, 60));
+
+		// the first unit completed, the second cut by the crash
+		Writer out = new OutputStreamWriter(new FileOutputStream(journal), "UTF-8");
+		out.write(units.get(0).Key() + "\t" + YawiBatch.OK + "\n" + path + "\t2\t60");
+		out.close();
+
+		int[][] expected = {
+			// resumed, done, failures, errors, ROIs
+			{1, 3, 1, 1, 2},
+			{4, 0, 1, 1, 0}
+		};
+
+		for(int run = 0; run < expected.length; run++)
+		{
+			YawiRoiWriter writer = YawiRoiWriter.Append(rois.getPath());
+			YawiBatch batch = new YawiBatch(units, journal, writer, new YawiSettings());
+
+			try
+			{
+				batch.Run(2, 0);
+			}
+			finally
+			{
+				writer.Close();
+			}
+
+			int[] got = {batch.GetResumed(), batch.GetDone(), batch.GetFailures(), batch.GetErrors(), writer.Count()};
+
+			if(!Arrays.equals(got, expected[run]))
+				errors.add("run " + (run + 1) + ": resumed, done, failures, errors, ROIs " +
+						   Arrays.toString(got) + " instead of " + Arrays.toString(expected[run]));
+		}
+
+		// the header and a row for every unit with an outline
+		BufferedReader in = new BufferedReader(new FileReader(rois));
+		int lines = 0;
+
+		try
+		{
+			while(in.readLine() != null)
+				lines++;
+		}
+		finally
+		{
+			in.close();
+		}
+
+		if(lines != 1 + 2)
+			errors.add((lines - 1) + " rows in the ROIs file instead of 2");
+
+		File[] files = study.listFiles();
+
+		for(int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+
+		study.delete();
+		journal.delete();
+		rois.delete();
+
+		return errors;
+	}
+
+	/// concurrent clients of YawiServer sending seeds for the same slice: every
+	/// answer is the one of the headless segmenter, the slice is read once
+	/// returns the errors
+	static List<String> Server() throws IOException, InterruptedException
+	{
+		List<String> errors = new ArrayList<String>();
+
+		final File study = File.createTempFile("yawi_served", ".png");
+
+		Phantom ph = Make("served", 160, 120, 40, 60, new Shape()
+		{
+			public boolean Inside(double x, double y) { return Math.hypot(x - 40, y - 60) < 20 || Math.hypot(x - 115, y - 60) < 25; }
+		}, 200, 50, 4, 0, 30);
+
+		SavePng(ph, study);
+
+		final int[][] seeds = {{40, 60}, {115, 60}, {5, 5}, {500, 5}};
+
+		// the answer of every seed, from the segmenter
+		final String[] expected = new String[seeds.length];
+
+		for(int i = 0; i < seeds.length; i++)
+		{
+			String name = seeds[i][0] + "," + seeds[i][1];
+			YawiContour c = (seeds[i][0] < ph.width) ?
+				new YawiSegmenter(ph.pixels, ph.width, ph.height, new YawiSettings()).Segment(seeds[i][0], seeds[i][1]) : null;
+
+			if(c != null)
+			{
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				YawiRoiWriter writer = new YawiRoiWriter.JsonWriter(out);
+
+				writer.Write(name, 1, c, ph.pixels, ph.width, ph.height);
+				writer.Close();
+
+				expected[i] = out.toString("UTF-8").trim();
+			}
+			else
+				expected[i] = "\"name\":\"" + name + "\"";
+		}
+
+		YawiServer server = new YawiServer(new YawiSettings(), 4, 64 << 20);
+		final int port = server.Start(0);
+		final String url = "http://127.0.0.1:" + port + "/segment?image=" + java.net.URLEncoder.encode(study.getPath(), "UTF-8");
+
+		try
+		{
+			final int n_clients = 8;
+			final List<String> answers = java.util.Collections.synchronizedList(new ArrayList<String>());
+			Thread[] clients = new Thread[n_clients];
+
+			for(int t = 0; t < n_clients; t++)
+			{
+				clients[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						StringBuilder body = new StringBuilder();
+
+						for(int[] s : seeds)
+							body.append(s[0]).append(' ').append(s[1]).append('\n');
+
+						answers.add(Post(url + "&slice=1", body.toString()));
+					}
+				});
+
+				clients[t].start();
+			}
+
+			for(Thread t : clients)
+				t.join();
+
+			for(String answer : answers)
+			{
+				String[] lines = (answer != null) ? answer.split("\n") : new String[0];
+
+				if(lines.length != seeds.length)
+				{
+					errors.add("answer with " + lines.length + " lines instead of " + seeds.length + ": " + answer);
+					continue;
+				}
+
+				for(int i = 0; i < seeds.length; i++)
+					if(!lines[i].equals(expected[i]) && !(lines[i].contains("failure") && lines[i].contains(expected[i])))
+						errors.add("seed " + seeds[i][0] + "," + seeds[i][1] + ": " + lines[i]);
+			}
+
+			if(Post(url + "&slice=2", "40 60\n") != null)
+				errors.add("a missing slice has an answer");
+
+			String status = server.Status();
+
+			if(!status.contains("\"requests\":" + (n_clients + 1)) || !status.contains("\"reads\":1,"))
+				errors.add("status " + status);
+
+			// a slice file of a study directory written again is read again, even
+			// if the modification time of the directory doesn't change
+			File dir = File.createTempFile("yawi_served", "");
+			dir.delete();
+			dir.mkdir();
+
+			File slice_file = new File(dir, "slice01.png");
+			String dir_url = "http://127.0.0.1:" + port + "/segment?image=" +
+				java.net.URLEncoder.encode(dir.getPath(), "UTF-8") + "&slice=1";
+
+			try
+			{
+				for(int k = 0; k < 2; k++)
+				{
+					final int r = 15 + 5 * k;
+					Phantom moved = Make("served", 160, 120, 60, 60, new Shape()
+					{
+						public boolean Inside(double x, double y) { return Math.hypot(x - 60, y - 60) < r; }
+					}, 200, 50, 4, 0, 40 + k);
+
+					long dir_time = dir.lastModified();
+
+					SavePng(moved, slice_file);
+					slice_file.setLastModified(System.currentTimeMillis() + 2000 * k);
+
+					if(k > 0)
+						dir.setLastModified(dir_time);
+
+					YawiContour c = new YawiSegmenter(moved.pixels, moved.width, moved.height, new YawiSettings()).Segment(60, 60);
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					YawiRoiWriter writer = new YawiRoiWriter.JsonWriter(out);
+
+					writer.Write("60,60", 1, c, moved.pixels, moved.width, moved.height);
+					writer.Close();
+
+					String answer = Post(dir_url, "60 60\n");
+
+					if(answer == null || !answer.equals(out.toString("UTF-8")))
+						errors.add("slice file written " + (k + 1) + " times: " + answer);
+				}
+			}
+			finally
+			{
+				slice_file.delete();
+				dir.delete();
+			}
+		}
+		finally
+		{
+			server.Stop();
+			study.delete();
+		}
+
+		return errors;
+	}
+
+	/// POST a body, returns the answer or null if it is not 200
+	static String Post(String url, String body)
+	{
+		try
+		{
+			java.net.HttpURLConnection conn = (java.net.HttpURLConnection)new java.net.URL(url).openConnection();
+
+			conn.setRequestMethod("POST");
+			conn.setDoOutput(true);
+
+			OutputStream out = conn.getOutputStream();
+			out.write(body.getBytes("UTF-8"));
+			out.close();
+
+			if(conn.getResponseCode() != 200)
+				return null;
+
+			ByteArrayOutputStream answer = new ByteArrayOutputStream();
+			InputStream in = conn.getInputStream();
+			byte[] buf = new byte[4096];
+
+			for(int n = in.read(buf); n > 0; n = in.read(buf))
+				answer.write(buf, 0, n);
+
+			in.close();
+
+			return answer.toString("UTF-8");
+		}
+		catch(IOException ex)
+		{
+			return null;
+		}
+	}
+
+	/// slices of a moving disc written in a directory while YawiWatch watches it:
+	/// the seed has to follow the disc and every slice has its outline
+	/// returns the errors
+	static List<String> Watch() throws IOException, InterruptedException
+	{
+		List<String> errors = new ArrayList<String>();
+
+		final File dir = File.createTempFile("yawi_watch", "");
+		dir.delete();
+		dir.mkdir();
+
+		File rois = new File(dir.getParentFile(), dir.getName() + ".csv");
+		final int n_slices = 5;
+
+		// the scanner: the disc moves 6 pixels right every slice, after two slices
+		// the first seed is out of it and only the seed propagation follows it
+		Thread scanner = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				for(int k = 0; k < n_slices; k++)
+				{
+					final int cx = 60 + 6 * k;
+
+					Phantom ph = Make("slice", 200, 120, cx, 60, new Shape()
+					{
+						public boolean Inside(double x, double y) { return Math.hypot(x - cx, y - 60) < 10; }
+					}, 200, 50, 4, 0, 10 + k);
+
+					SavePng(ph, new File(dir, String.format("slice%02d.png", k)));
+
+					try { Thread.sleep(150); } catch(InterruptedException ex) { return; }
+				}
+			}
+		}, "scanner");
+
+		YawiRoiWriter writer = YawiRoiWriter.Open(rois.getPath());
+
+		try
+		{
+			scanner.start();
+
+			YawiWatch watch = new YawiWatch(dir, 60, 60, new YawiSettings(), writer, 100);
+			watch.Run(1000);
+
+			scanner.join();
+
+			if(watch.GetSlices() != n_slices || watch.GetFailures() != 0)
+				errors.add(watch.GetSlices() + " slices segmented, " + watch.GetFailures() + " failed, " + n_slices + " written");
+		}
+		finally
+		{
+			writer.Close();
+		}
+
+		if(writer.Count() != n_slices)
+			errors.add(writer.Count() + " ROIs written instead of " + n_slices);
+
+		// every row is the disc, not the background around it
+		BufferedReader in = new BufferedReader(new FileReader(rois));
+
+		try
+		{
+			in.readLine();
+
+			for(String line = in.readLine(); line != null; line = in.readLine())
+			{
+				String[] fields = line.split(",");
+				double area = Double.parseDouble(fields[6]);
+
+				if(Math.abs(area - Math.PI * 100) > 0.2 * Math.PI * 100)
+					errors.add(fields[0] + ": area " + area + ", the disc has " + Math.round(Math.PI * 100));
+
+				// the traced perimeter of ImageJ, the staircase of the outline is 4/pi longer
+				double perimeter = Double.parseDouble(fields[7]);
+
+				if(Math.abs(perimeter - 2 * Math.PI * 10) > 0.1 * 2 * Math.PI * 10)
+					errors.add(fields[0] + ": perimeter " + perimeter + ", the disc has " + Math.round(2 * Math.PI * 10));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		// the slices already in the directory settle together, not one after the other
+		File[] files = dir.listFiles();
+
+		for(int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+
+		final long settle = 400;
+
+		for(int k = 0; k < n_slices; k++)
+		{
+			Phantom ph = Make("slice", 200, 120, 60, 60, new Shape()
+			{
+				public boolean Inside(double x, double y) { return Math.hypot(x - 60, y - 60) < 10; }
+			}, 200, 50, 4, 0, 20 + k);
+
+			SavePng(ph, new File(dir, String.format("slice%02d.png", k)));
+		}
+
+		writer = YawiRoiWriter.Open(rois.getPath());
+
+		try
+		{
+			YawiWatch watch = new YawiWatch(dir, 60, 60, new YawiSettings(), writer, settle);
+			long t0 = System.currentTimeMillis();
+
+			watch.Run(100);
+
+			long elapsed = System.currentTimeMillis() - t0;
+
+			if(watch.GetSlices() != n_slices)
+				errors.add(watch.GetSlices() + " slices of the backlog segmented instead of " + n_slices);
+
+			if(elapsed > 2 * settle + 100 + 500)
+				errors.add("backlog of " + n_slices + " slices read in " + elapsed + " ms, the files settle in " + settle + " ms");
+		}
+		finally
+		{
+			writer.Close();
+		}
+
+		files = dir.listFiles();
+
+		for(int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+
+		dir.delete();
+		rois.delete();
+
+		return errors;
+	}
+
+	/// command line usage: YawiRegression [check|record] [golden file]
+	public static void main(String[] args) throws IOException
+	{
+		boolean record = args.length > 0 && args[0].equals("record");
+		String file = args.length > 1 ? args[1] : GOLDEN_DEF;
+
+		Map<String, String> golden = record ? null : ReadGolden(file);
+		PrintWriter writer = null;
+
+		if(record)
+		{
+			writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+			writer.println("# Yawi2D regression corpus, generated with: YawiRegression record");
+			writer.println("# <case> <variant> <points> <hash> <area> | <case> budget <time us> <allocated KB>");
+		}
+
+		int failures = 0;
+
+		try
+		{
+			Phantom[] corpus = Corpus();
+
+			for(int i = 0; i < corpus.length; i++)
+			{
+				Phantom ph = corpus[i];
+				Outcome out = Measure(ph);
+
+				List<String> errors = new ArrayList<String>(out.errors);
+
+				if(record)
+				{
+					for(Map.Entry<String, String> e : out.lines.entrySet())
+						writer.println(ph.name + " " + e.getKey() + " " + e.getValue());
+
+					writer.println(ph.name + " budget " + out.time_us + " " + out.alloc_kb);
+				}
+				else
+				{
+					for(Map.Entry<String, String> e : out.lines.entrySet())
+					{
+						String expected = golden.get(ph.name + " " + e.getKey());
+
+						if(expected == null)
+							errors.add(e.getKey() + " missing from the golden file");
+						else if(!expected.equals(e.getValue()))
+							errors.add(e.getKey() + " is " + e.getValue() + " instead of " + expected);
+					}
+
+					String budget = golden.get(ph.name + " budget");
+
+					if(budget != null)
+					{
+						String[] tok = budget.split("\\s+");
+						long time_us = Long.parseLong(tok[0]);
+						long alloc_kb = Long.parseLong(tok[1]);
+
+						if(out.time_us > time_us * TIME_FACTOR + TIME_SLACK_US)
+							errors.add("time " + out.time_us + " us over the budget of " + time_us + " us");
+
+						if(alloc_kb > 0 && out.alloc_kb > alloc_kb * ALLOC_FACTOR + ALLOC_SLACK_KB)
+							errors.add("allocated " + out.alloc_kb + " KB over the budget of " + alloc_kb + " KB");
+					}
+				}
+
+				System.out.println(ph.name + ": " + (errors.isEmpty() ? "ok" : "FAILED") +
+								   " (" + (out.time_us / 1000) + " ms, " + out.alloc_kb + " KB)");
+
+				for(String error : errors)
+					System.out.println("    " + error);
+
+				if(!errors.isEmpty())
+					failures++;
+			}
+
+			List<String> errors = Sessions(corpus);
+
+			System.out.println("concurrent sessions: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+
+			errors = Texture();
+
+			System.out.println("texture criterion: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+
+			errors = Volume();
+
+			System.out.println("volume with the leak guard: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+
+			errors = Colors(corpus);
+
+			System.out.println("RGB colour distance: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+
+			errors = Watch();
+
+			System.out.println("watch folder: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+
+			errors = Batch();
+
+			System.out.println("resumed batch: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+
+			errors = Server();
+
+			System.out.println("local server: " + (errors.isEmpty() ? "ok" : "FAILED"));
+
+			for(String error : errors)
+				System.out.println("    " + error);
+
+			if(!errors.isEmpty())
+				failures++;
+		}
+		catch(InterruptedException ex)
+		{
+			throw new IOException("interrupted");
+		}
+		finally
+		{
+			if(writer != null)
+				writer.close();
+		}
+
+		if(record)
+			System.out.println("golden file written: " + file);
+
+		if(failures > 0)
+		{
+			System.out.println(failures + " cases failed");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Directories and images of the GUI. Nothing is looked up when the
+// classes are loaded: every resource is loaded the first time it is
+// needed and then kept, so the segmentation core can be used with
+// java.awt.headless=true and a new image doesn't read any file.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.*;
+import ij.io.*;
+import ij.process.*;
+
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Toolkit;
+
+import javax.swing.ImageIcon;
+
+/// lazily loaded resources of the GUI
+class YawiResources
+{
+	/// screen size used when there's no screen
+	static final Dimension HEADLESS_SCREEN = new Dimension(1024, 768);
+
+	private static String data_dir = null;
+	private static Image icon = null;
+	private static ImageProcessor hist = null;
+	private static Dimension screen = null;
+
+	/// data directory of the plugin: <ImageJ plugins>/Yawi_2D/data/
+	static synchronized String DataDir()
+	{
+		if(data_dir == null)
+		{
+			String base_dir = IJ.getDirectory("plugins");
+
+			if(base_dir == null)
+				base_dir = "";
+
+			data_dir = base_dir + "Yawi_2D/data/";
+		}
+
+		return data_dir;
+	}
+
+	/// icon of the windows, null if not available
+	static synchronized Image Icon()
+	{
+		if(icon == null && !GraphicsEnvironment.isHeadless())
+		{
+			// requires ImageIcon from SWING because of some bug in IJ Opener/ImagePlus classes
+			ImageIcon ii = new ImageIcon(DataDir() + "icon.png");
+
+			if(ii.getIconWidth() > 0)
+				icon = ii.getImage();
+		}
+
+		return icon;
+	}
+
+	/// a new image with the histogram background, the file is read only once
+	static synchronized ImagePlus HistBackground()
+	{
+		if(hist == null)
+		{
+			ImagePlus imp = new Opener().openImage(DataDir() + "hist.png");
+
+			if(imp == null)
+				return null;
+
+			hist = imp.getProcessor();
+		}
+
+		return new ImagePlus("hist", hist.duplicate());
+	}
+
+	/// size of the screen, HEADLESS_SCREEN if there's no screen
+	static synchronized Dimension ScreenSize()
+	{
+		if(screen == null)
+			screen = GraphicsEnvironment.isHeadless() ? HEADLESS_SCREEN : Toolkit.getDefaultToolkit().getScreenSize();
+
+		return new Dimension(screen);
+	}
+}
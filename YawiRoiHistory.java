@@ -0,0 +1,327 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Undo/redo history of the outlines of every slice. An outline is
+// stored delta encoded: the first point and then the steps between
+// the points as zigzag varints, a traced edge is horizontal or
+// vertical so a point takes 2 bytes instead of the 8 of the int
+// arrays. The encoded outlines are immutable and shared: going back
+// to an outline already in the history of the slice reuses its bytes.
+// When the history is over its memory budget the oldest versions of
+// all the slices are dropped, the current ones are always kept. A
+// version keeps how its outline was traced, so going back to it gives
+// back its seed and threshold range too.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// bounded per-slice history of outlines
+class YawiRoiHistory
+{
+	/// default memory budget in bytes
+	static final long BUDGET_DEF = 4L << 20;
+
+	/// bytes of a version besides its encoded points, its trace included
+	private static final int VERSION_OVERHEAD = 64;
+
+	/// how an outline was traced: the seed and the threshold range
+	static class Trace
+	{
+		final int seed_x;
+		final int seed_y;
+		final int lower;
+		final int upper;
+
+		Trace(int seed_x, int seed_y, int lower, int upper)
+		{
+			this.seed_x = seed_x;
+			this.seed_y = seed_y;
+			this.lower = lower;
+			this.upper = upper;
+		}
+	}
+
+	/// an encoded outline
+	private static class Version
+	{
+		/// delta encoded points, shared between versions
+		final byte[] data;
+		final int npoints;
+		/// time of the push, used to drop the oldest versions first
+		final long stamp;
+		/// how the outline was traced, null if unknown
+		Trace trace;
+
+		Version(byte[] data, int npoints, long stamp, Trace trace)
+		{
+			this.data = data;
+			this.npoints = npoints;
+			this.stamp = stamp;
+			this.trace = trace;
+		}
+	}
+
+	/// history of a slice: versions[0..current] can be undone, the ones
+	/// after current can be redone
+	private static class Slice
+	{
+		final List<Version> versions = new ArrayList<Version>();
+		int current = -1;
+	}
+
+	private final Map<Integer, Slice> slices = new HashMap<Integer, Slice>();
+	private final long budget;
+
+	/// bytes used by the versions, see Size
+	private long used = 0;
+	private long clock = 0;
+
+	YawiRoiHistory() { this(BUDGET_DEF); }
+
+	YawiRoiHistory(long budget)
+	{
+		this.budget = budget;
+	}
+
+	/// bytes used by the history
+	synchronized long GetUsed() { return used; }
+
+	/// number of versions of a slice
+	synchronized int GetVersions(int slice)
+	{
+		Slice s = slices.get(slice);
+
+		return (s == null) ? 0 : s.versions.size();
+	}
+
+	/// add an outline as the current one of a slice, the versions that could be redone are dropped
+	synchronized void Push(int slice, YawiContour c) { Push(slice, c, null); }
+
+	/// add an outline as the current one of a slice with how it was traced
+	synchronized void Push(int slice, YawiContour c, Trace trace)
+	{
+		Slice s = slices.get(slice);
+
+		if(s == null)
+		{
+			s = new Slice();
+			slices.put(slice, s);
+		}
+
+		byte[] data = Encode(c);
+
+		// the same outline again, traced the last way
+		if(s.current >= 0 && Arrays.equals(s.versions.get(s.current).data, data))
+		{
+			s.versions.get(s.current).trace = trace;
+			return;
+		}
+
+		while(s.versions.size() > s.current + 1)
+			used -= Size(s.versions.remove(s.versions.size() - 1));
+
+		// an outline already in the history shares its bytes
+		for(int i = 0; i < s.versions.size(); i++)
+			if(Arrays.equals(s.versions.get(i).data, data))
+			{
+				data = s.versions.get(i).data;
+				break;
+			}
+
+		Version v = new Version(data, c.npoints, clock++, trace);
+		s.versions.add(v);
+		s.current = s.versions.size() - 1;
+		used += Size(v);
+
+		Trim();
+	}
+
+	/// how the current outline of a slice was traced, null if unknown
+	synchronized Trace GetTrace(int slice)
+	{
+		Slice s = slices.get(slice);
+
+		return (s == null || s.current < 0) ? null : s.versions.get(s.current).trace;
+	}
+
+	/// true if the current outline of a slice has an older version
+	synchronized boolean CanUndo(int slice)
+	{
+		Slice s = slices.get(slice);
+
+		return s != null && s.current > 0;
+	}
+
+	/// true if an undone outline of a slice can be restored
+	synchronized boolean CanRedo(int slice)
+	{
+		Slice s = slices.get(slice);
+
+		return s != null && s.current + 1 < s.versions.size();
+	}
+
+	/// go back to the previous outline of a slice
+	/// returns the outline or null if there's nothing to undo
+	synchronized YawiContour Undo(int slice)
+	{
+		if(!CanUndo(slice))
+			return null;
+
+		Slice s = slices.get(slice);
+		s.current--;
+
+		return Decode(s.versions.get(s.current));
+	}
+
+	/// go forward to the next outline of a slice
+	/// returns the outline or null if there's nothing to redo
+	synchronized YawiContour Redo(int slice)
+	{
+		if(!CanRedo(slice))
+			return null;
+
+		Slice s = slices.get(slice);
+		s.current++;
+
+		return Decode(s.versions.get(s.current));
+	}
+
+	/// drop the oldest versions that are not current until the history is in its budget
+	private void Trim()
+	{
+		while(used > budget)
+		{
+			Slice oldest_s = null;
+			int oldest_i = -1;
+			long oldest = Long.MAX_VALUE;
+
+			for(Slice s : slices.values())
+				for(int i = 0; i < s.versions.size(); i++)
+					if(i != s.current && s.versions.get(i).stamp < oldest)
+					{
+						oldest = s.versions.get(i).stamp;
+						oldest_s = s;
+						oldest_i = i;
+					}
+
+			// only the current outlines are left
+			if(oldest_s == null)
+				return;
+
+			used -= Size(oldest_s.versions.remove(oldest_i));
+
+			if(oldest_i < oldest_s.current)
+				oldest_s.current--;
+		}
+	}
+
+	/// bytes of a version, a shared array is counted by every version that
+	/// uses it: the budget is an upper bound of the memory really used
+	private static long Size(Version v)
+	{
+		return v.data.length + VERSION_OVERHEAD;
+	}
+
+	/// first point and steps between the points as zigzag varints
+	static byte[] Encode(YawiContour c)
+	{
+		ByteSink out = new ByteSink(2 * c.npoints + 10);
+
+		int x = 0;
+		int y = 0;
+
+		for(int i = 0; i < c.npoints; i++)
+		{
+			out.PutVarint(c.xpoints[i] - x);
+			out.PutVarint(c.ypoints[i] - y);
+
+			x = c.xpoints[i];
+			y = c.ypoints[i];
+		}
+
+		return out.ToArray();
+	}
+
+	/// the outline of a version
+	private static YawiContour Decode(Version v)
+	{
+		int[] xpoints = new int[v.npoints];
+		int[] ypoints = new int[v.npoints];
+
+		int[] r = new int[1];
+		int pos = 0;
+		int x = 0;
+		int y = 0;
+
+		for(int i = 0; i < v.npoints; i++)
+		{
+			pos = GetVarint(v.data, pos, r);
+			x += r[0];
+			pos = GetVarint(v.data, pos, r);
+			y += r[0];
+
+			xpoints[i] = x;
+			ypoints[i] = y;
+		}
+
+		return new YawiContour(xpoints, ypoints, v.npoints);
+	}
+
+	/// read a zigzag varint at pos into r[0]
+	/// returns the position after it
+	private static int GetVarint(byte[] data, int pos, int[] r)
+	{
+		int value = 0;
+		int shift = 0;
+		int b;
+
+		do
+		{
+			b = data[pos++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		while((b & 0x80) != 0);
+
+		r[0] = (value >>> 1) ^ -(value & 1);
+
+		return pos;
+	}
+
+	/// growing byte array
+	private static class ByteSink
+	{
+		private byte[] buf;
+		private int len = 0;
+
+		ByteSink(int capacity) { buf = new byte[capacity]; }
+
+		void PutVarint(int v)
+		{
+			int z = (v << 1) ^ (v >> 31);
+
+			if(len + 5 > buf.length)
+				buf = Arrays.copyOf(buf, buf.length * 2 + 5);
+
+			while((z & ~0x7f) != 0)
+			{
+				buf[len++] = (byte)((z & 0x7f) | 0x80);
+				z >>>= 7;
+			}
+
+			buf[len++] = (byte)z;
+		}
+
+		byte[] ToArray() { return Arrays.copyOf(buf, len); }
+	}
+}
@@ -0,0 +1,321 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Streaming export of the ROIs: every outline is written with its
+// statistics as soon as it is generated, so a whole stack can be
+// exported without keeping the outlines in memory.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.gui.*;
+import ij.io.*;
+
+import java.awt.Rectangle;
+import java.io.*;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/// writes ROIs one by one to a CSV, JSON Lines or ImageJ RoiSet (zip) file
+abstract class YawiRoiWriter
+{
+	/// output formats
+	static final int CSV = 0, JSON = 1, ROISET = 2;
+
+	/// number of ROIs written
+	protected int count = 0;
+
+	/// statistics of an outline
+	static class Stats
+	{
+		final Rectangle bounds;
+		final double area;
+		final double perimeter;
+		final double mean;
+		/// RECIST longest diameter and short axis, minimum Feret diameter
+		final double long_axis;
+		final double short_axis;
+		final double feret_min;
+
+		Stats(YawiContour contour, byte[] pixels, int width, int height)
+		{
+			bounds = contour.GetBounds();
+			area = contour.Area();
+			// the traced perimeter of ImageJ, as in the ROI DATA panel
+			YawiChainCode chain = YawiChainCode.Of(contour);
+
+			perimeter = (chain != null) ? chain.Perimeter() : contour.Perimeter();
+			mean = (pixels != null) ? contour.MeanIntensity(pixels, width, height) : 0;
+
+			YawiFeret feret = YawiFeret.Of(contour);
+
+			long_axis = (feret != null) ? feret.max : 0;
+			short_axis = (feret != null) ? feret.short_axis : 0;
+			feret_min = (feret != null) ? feret.min : 0;
+		}
+	}
+
+	/// open a writer, the format is chosen by the extension of the file
+	/// (.csv, .json/.jsonl, .zip)
+	static YawiRoiWriter Open(String path) throws IOException
+	{
+		return Open(path, FormatOf(path));
+	}
+
+	static YawiRoiWriter Open(String path, int format) throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(path));
+
+		switch(format)
+		{
+			case CSV:
+				return new CsvWriter(out);
+
+			case JSON:
+				return new JsonWriter(out);
+
+			default:
+				return new RoiSetWriter(out);
+		}
+	}
+
+	/// open a writer adding the ROIs at the end of the file, the header of a CSV
+	/// is written only for a new file; a RoiSet can't be appended
+	static YawiRoiWriter Append(String path) throws IOException
+	{
+		int format = FormatOf(path);
+
+		if(format == ROISET)
+			throw new IOException("a RoiSet can't be appended: " + path);
+
+		boolean empty = new File(path).length() == 0;
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(path, true));
+
+		if(format == CSV)
+			return new CsvWriter(out, empty);
+
+		return new JsonWriter(out);
+	}
+
+	/// output format for a file name
+	static int FormatOf(String path)
+	{
+		String name = path.toLowerCase();
+
+		if(name.endsWith(".zip"))
+			return ROISET;
+		else if(name.endsWith(".json") || name.endsWith(".jsonl"))
+			return JSON;
+		else
+			return CSV;
+	}
+
+	/// write the outline of a slice (1-based index) with its statistics computed
+	/// on the 8-bit pixels of the slice, pixels can be null when not available
+	void Write(String name, int slice, YawiContour contour, byte[] pixels, int width, int height) throws IOException
+	{
+		if(name == null)
+			name = "";
+
+		Write(name, slice, contour, new Stats(contour, pixels, width, height));
+		count++;
+	}
+
+	/// number of ROIs written
+	int Count() { return count; }
+
+	protected abstract void Write(String name, int slice, YawiContour contour, Stats stats) throws IOException;
+
+	/// flush and close the file
+	abstract void Close() throws IOException;
+
+	/// a number with 3 decimals at most
+	static String Format(double v)
+	{
+		if(v == Math.rint(v))
+			return String.valueOf((long)v);
+
+		return String.valueOf(Math.round(v * 1000) / 1000.0);
+	}
+
+	/// one line for every ROI, the points are "x y" pairs separated by ';'
+	static class CsvWriter extends YawiRoiWriter
+	{
+		private final Writer out;
+
+		CsvWriter(OutputStream out) throws IOException
+		{
+			this(out, true);
+		}
+
+		CsvWriter(OutputStream out, boolean header) throws IOException
+		{
+			this.out = new OutputStreamWriter(out, "UTF-8");
+
+			if(header)
+			{
+				this.out.write("name,slice,x,y,width,height,area,perimeter,mean,long_axis,short_axis,feret_min,npoints,points\n");
+				this.out.flush();
+			}
+		}
+
+		protected void Write(String name, int slice, YawiContour contour, Stats stats) throws IOException
+		{
+			StringBuilder sb = new StringBuilder(64 + contour.npoints * 8);
+
+			sb.append('"').append(name.replace("\"", "\"\"")).append('"').append(',')
+			  .append(slice).append(',')
+			  .append(stats.bounds.x).append(',').append(stats.bounds.y).append(',')
+			  .append(stats.bounds.width).append(',').append(stats.bounds.height).append(',')
+			  .append(Format(stats.area)).append(',')
+			  .append(Format(stats.perimeter)).append(',')
+			  .append(Format(stats.mean)).append(',')
+			  .append(Format(stats.long_axis)).append(',')
+			  .append(Format(stats.short_axis)).append(',')
+			  .append(Format(stats.feret_min)).append(',')
+			  .append(contour.npoints).append(',');
+
+			for(int i = 0; i < contour.npoints; i++)
+			{
+				if(i > 0)
+					sb.append(';');
+
+				sb.append(contour.xpoints[i]).append(' ').append(contour.ypoints[i]);
+			}
+
+			sb.append('\n');
+
+			out.write(sb.toString());
+			out.flush();
+		}
+
+		void Close() throws IOException { out.close(); }
+	}
+
+	/// one JSON object for every line
+	static class JsonWriter extends YawiRoiWriter
+	{
+		private final Writer out;
+
+		JsonWriter(OutputStream out) throws IOException
+		{
+			this.out = new OutputStreamWriter(out, "UTF-8");
+		}
+
+		protected void Write(String name, int slice, YawiContour contour, Stats stats) throws IOException
+		{
+			StringBuilder sb = new StringBuilder(128 + contour.npoints * 12);
+
+			sb.append("{\"name\":\"").append(Escape(name)).append("\"")
+			  .append(",\"slice\":").append(slice)
+			  .append(",\"bounds\":[").append(stats.bounds.x).append(',').append(stats.bounds.y)
+			  .append(',').append(stats.bounds.width).append(',').append(stats.bounds.height).append(']')
+			  .append(",\"area\":").append(Format(stats.area))
+			  .append(",\"perimeter\":").append(Format(stats.perimeter))
+			  .append(",\"mean\":").append(Format(stats.mean))
+			  .append(",\"long_axis\":").append(Format(stats.long_axis))
+			  .append(",\"short_axis\":").append(Format(stats.short_axis))
+			  .append(",\"feret_min\":").append(Format(stats.feret_min))
+			  .append(",\"x\":[");
+
+			for(int i = 0; i < contour.npoints; i++)
+			{
+				if(i > 0)
+					sb.append(',');
+
+				sb.append(contour.xpoints[i]);
+			}
+
+			sb.append("],\"y\":[");
+
+			for(int i = 0; i < contour.npoints; i++)
+			{
+				if(i > 0)
+					sb.append(',');
+
+				sb.append(contour.ypoints[i]);
+			}
+
+			sb.append("]}\n");
+
+			out.write(sb.toString());
+			out.flush();
+		}
+
+		void Close() throws IOException { out.close(); }
+
+		/// escape a string for JSON
+		static String Escape(String s)
+		{
+			StringBuilder sb = new StringBuilder(s.length());
+
+			for(int i = 0; i < s.length(); i++)
+			{
+				char c = s.charAt(i);
+
+				if(c == '"' || c == '\\')
+					sb.append('\\').append(c);
+				else if(c < 0x20)
+					sb.append(String.format("\\u%04x", (int)c));
+				else
+					sb.append(c);
+			}
+
+			return sb.toString();
+		}
+	}
+
+	/// an ImageJ RoiSet, a zip with a .roi entry for every ROI, it can be
+	/// opened by the ROI Manager
+	static class RoiSetWriter extends YawiRoiWriter
+	{
+		private final ZipOutputStream zip;
+		private final DataOutputStream out;
+
+		/// names of the entries, they have to be unique in the zip
+		private final HashSet<String> names = new HashSet<String>();
+
+		RoiSetWriter(OutputStream out)
+		{
+			zip = new ZipOutputStream(out);
+			this.out = new DataOutputStream(zip);
+		}
+
+		protected void Write(String name, int slice, YawiContour contour, Stats stats) throws IOException
+		{
+			// PolygonRoi makes the arrays relative to the bounds, it gets a copy
+			Roi roi = new PolygonRoi((int[])contour.xpoints.clone(), (int[])contour.ypoints.clone(),
+									 contour.npoints, Roi.TRACED_ROI);
+			roi.setPosition(slice);
+
+			// ROI Manager names: slice-y-x
+			String label = String.format("%04d-%04d-%04d", slice, stats.bounds.y, stats.bounds.x);
+
+			if(name != null && name.length() > 0)
+				label = label + "-" + name;
+
+			if(!names.add(label))
+			{
+				label = label + "-" + (count + 1);
+				names.add(label);
+			}
+
+			roi.setName(label);
+
+			zip.putNextEntry(new ZipEntry(label + ".roi"));
+
+			RoiEncoder re = new RoiEncoder(out);
+			re.write(roi);
+
+			out.flush();
+			zip.closeEntry();
+		}
+
+		void Close() throws IOException { out.close(); }
+	}
+}
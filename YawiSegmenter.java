@@ -0,0 +1,1126 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Segmentation core of the wand: threshold selection, outline search
+// and edge tracing on a 8-bit plane. It doesn't depend on the GUI so
+// it can be used headless and one instance per thread.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/// the wand, segments a region starting from a point inside it
+class YawiSegmenter
+{
+	/// directions
+	static final int UP = 0, DOWN = 1, UP_OR_DOWN = 2, LEFT = 3, RIGHT = 4, LEFT_OR_RIGHT = 5, NA = 6;
+
+	/// max number of steps of the tracer
+	static final int MAX_STEPS = 10000;
+
+	/// radius of the band searched by Refine
+	static final int REFINE_RAD = 4;
+
+	/// reasons of a failed segmentation
+	static final int FAIL_NONE = 0, FAIL_NA = 1, FAIL_OVERFLOW = 2, FAIL_BORDER = 3, FAIL_BOUNDS = 4, FAIL_PERIMETER = 5,
+					 FAIL_NO_EDGE = 6;
+	static final String[] FAIL_NAMES = {"none", "inconsistent edge", "too many steps",
+										"leak: the outline reaches the image border",
+										"leak: the outline is too large for the slice",
+										"leak: the outline is too long for its bounds",
+										"no edge around the seed"};
+
+	/// steps allowed by the leak guard for every step of the perimeter of the largest bounds
+	static final int LEAK_TORTUOSITY = 8;
+
+	/// radius of the points around the seed tried by the edge search
+	static final int SEED_RAD = 3;
+	/// directions marched together by the edge search
+	private static final int[] SEARCH_DIRS = { RIGHT, LEFT, DOWN, UP };
+	private static final int[] SEARCH_DX = { 1, -1, 0, 0 };
+	private static final int[] SEARCH_DY = { 0, 0, 1, -1 };
+
+	/// image data/ pixels
+	private byte[] img_pixels;
+	/// image width
+	private int img_width;
+	/// image height
+	private int img_height;
+
+	/// segmentation settings
+	private YawiSettings settings;
+
+	/// lower threshold limit
+	private int lower_threshold;
+	/// upper threshold limit
+	private int upper_threshold;
+
+	/// optional summed area table used by Inside(x, y, direction)
+	private YawiIntegralImage integral = null;
+
+	/// membership test used instead of the threshold range, null for the range
+	private YawiCriterion criterion = null;
+	/// summed area tables of value and value^2 shared by the caller, null to
+	/// compute the statistics of SetThreshold from the window around the seed
+	private YawiMomentImage moments = null;
+
+	/// histogram of the threshold square
+	private final int[] hist = new int[256];
+
+	/// counter of the Inside square when there's no summed area table
+	private YawiWindowCounter counter = YawiWindowCounter.Get();
+
+	/// max number of steps of the tracer
+	private int max_steps = MAX_STEPS;
+
+	/// band the tracer is restricted to by Refine, null for none
+	private YawiBand band = null;
+	/// the band while TraceEdge is running, AutoOutline is never restricted
+	private YawiBand trace_band = null;
+	/// band used by Refine, kept for the next calls on planes of the same size
+	private YawiBand refine_band = null;
+
+	/// edge point
+	private Point edge_p = new Point();
+	/// seed of the last SetThreshold, moved by the seed snapping
+	private Point seed_p = new Point();
+	/// initial direction of edge
+	private int start_dir;
+
+	/// max number of points of a ROI. it is increased if necessary
+	private int max_points = 1000;
+
+	/// X coordinate of the points in the border of the Roi
+	private int[] xpoints = new int[max_points];
+	/// Y coordinate of the points in the border of the Roi
+	private int[] ypoints = new int[max_points];
+	/// number of points in the generated outline => dimension of xpoints and ypoints
+	private int npoints = 0;
+
+	// probe counters of the current segmentation, added to YawiMetrics at the end
+	private long inside_calls = 0;
+	private long window_calls = 0;
+	private long trace_steps = 0;
+	private long growths = 0;
+	/// pixels inside the threshold rejected because out of the band
+	private long band_hits = 0;
+	/// why the last trace failed, FAIL_NONE if it didn't
+	private int failure = FAIL_NONE;
+
+	YawiSegmenter(YawiSettings settings)
+	{
+		this.settings = settings;
+	}
+
+	YawiSegmenter(byte[] pixels, int width, int height, YawiSettings settings)
+	{
+		this(settings);
+
+		SetImage(pixels, width, height);
+	}
+
+	/// set the plane to segment
+	void SetImage(byte[] pixels, int width, int height)
+	{
+		if(pixels != img_pixels)
+		{
+			integral = null;
+			moments = null;
+		}
+
+		img_pixels = pixels;
+		img_width = width;
+		img_height = height;
+	}
+
+	void SetSettings(YawiSettings settings) { this.settings = settings; }
+
+	YawiSettings GetSettings() { return settings; }
+
+	int GetLowerThreshold() { return lower_threshold; }
+
+	int GetUpperThreshold() { return upper_threshold; }
+
+	/// seed used by the last SetThreshold, the clicked one unless it has been snapped
+	int GetSeedX() { return seed_p.x; }
+
+	int GetSeedY() { return seed_p.y; }
+
+	/// set the threshold range directly instead of computing it with SetThreshold
+	void SetThresholds(int lower, int upper)
+	{
+		lower_threshold = lower;
+		upper_threshold = upper;
+	}
+
+	/// count the Inside square with the given counter instead of YawiWindowCounter.Get()
+	void SetCounter(YawiWindowCounter counter) { this.counter = counter; }
+
+	/// set the max number of steps of the tracer, MAX_STEPS by default
+	void SetMaxSteps(int steps) { max_steps = steps; }
+
+	/// use a summed area table in Inside(x, y, direction), the table is used
+	/// only when it has been built for the current threshold range
+	void SetIntegralImage(YawiIntegralImage integral) { this.integral = integral; }
+
+	/// why the last trace failed, one of FAIL_*
+	int GetFailure() { return failure; }
+
+	/// true if the last trace has been aborted by the leak guard
+	boolean Leaked() { return failure >= FAIL_BORDER && failure <= FAIL_PERIMETER; }
+
+	/// trace the regions of a criterion instead of the ones of the threshold range,
+	/// null to go back to the range; the criterion has to be of the current plane.
+	/// A range of the current plane becomes the threshold range, the hardcoded test
+	/// and the window counters are faster than the calls to the criterion
+	void SetCriterion(YawiCriterion criterion)
+	{
+		if(criterion instanceof YawiCriterion.Range && ((YawiCriterion.Range)criterion).pixels == img_pixels)
+		{
+			YawiCriterion.Range range = (YawiCriterion.Range)criterion;
+
+			SetThresholds(range.lower, range.upper);
+			criterion = null;
+		}
+
+		this.criterion = criterion;
+	}
+
+	/// use the given moment tables of the current plane in SetThreshold
+	void SetMomentImage(YawiMomentImage moments) { this.moments = moments; }
+
+	/// segment the region containing (x,y)
+	/// returns the outline or null if there's no selection
+	YawiContour Segment(int x, int y)
+	{
+		long t0 = System.nanoTime();
+
+		SetThreshold(x, y);
+
+		YawiMetrics.Get().RecordStage(YawiMetrics.THRESHOLD, System.nanoTime() - t0);
+
+		return Outline(seed_p.x, seed_p.y);
+	}
+
+	/// search and trace the outline starting from (x,y) with the current threshold range
+	/// returns the outline or null if there's no selection
+	YawiContour Outline(int x, int y)
+	{
+		inside_calls = window_calls = trace_steps = growths = 0;
+
+		YawiContour c = Search(x, y);
+
+		Record(c != null);
+
+		return c;
+	}
+
+	/// search and trace the outline starting from (x,y), the counters of the metrics
+	/// are the ones of the caller, so a public method records a single segmentation
+	/// returns the outline or null if there's no selection
+	private YawiContour Search(int x, int y)
+	{
+		YawiMetrics metrics = YawiMetrics.Get();
+
+		// the reason of the last trace is not the one of this search
+		failure = FAIL_NONE;
+		band_hits = 0;
+
+		long t0 = System.nanoTime();
+
+		boolean found = AutoOutline(x, y);
+
+		long t1 = System.nanoTime();
+
+		boolean ok = false;
+
+		if(found)
+		{
+			trace_band = band;
+			ok = TraceEdge();
+			trace_band = null;
+
+			// an island or a hole met moving right: the other directions are searched,
+			// a trace stopped by the steps limit or the leak guard is not tried again
+			if(ok && !GetContour().Contains(x + 0.5, y + 0.5))
+			{
+				ok = false;
+				failure = FAIL_NO_EDGE;
+			}
+		}
+
+		if(!ok && (failure == FAIL_NA || failure == FAIL_NO_EDGE || !found))
+			ok = SearchOutline(x, y);
+
+		long t2 = System.nanoTime();
+
+		metrics.RecordStage(YawiMetrics.OUTLINE, t1 - t0);
+		metrics.RecordStage(YawiMetrics.TRACE, t2 - t1);
+
+		if(!ok)
+			return null;
+
+		return GetContour();
+	}
+
+	/// record the segmentation of a public method with the counters of its searches
+	private void Record(boolean ok)
+	{
+		YawiMetrics metrics = YawiMetrics.Get();
+
+		metrics.Record(ok, inside_calls, window_calls, trace_steps, growths);
+
+		if(Leaked())
+			metrics.RecordLeak();
+	}
+
+	/// segment again the region of an outline traced from (x,y), with the current
+	/// settings, searching the new outline only within REFINE_RAD pixels from the old one;
+	/// if the new outline is not in the band the region is segmented from scratch,
+	/// both searches are recorded as one segmentation
+	/// returns the outline or null if there's no selection
+	YawiContour Refine(YawiContour contour, int x, int y)
+	{
+		long t0 = System.nanoTime();
+
+		SetThreshold(x, y);
+
+		YawiMetrics.Get().RecordStage(YawiMetrics.THRESHOLD, System.nanoTime() - t0);
+
+		x = seed_p.x;
+		y = seed_p.y;
+
+		int edge_x = RowCrossing(contour, x, y);
+
+		if(edge_x < 0)
+			return Outline(x, y);
+
+		if(refine_band == null || refine_band.width != img_width || refine_band.height != img_height)
+			refine_band = new YawiBand(img_width, img_height);
+
+		refine_band.Add(contour, 1, REFINE_RAD);
+
+		YawiBand prev = band;
+		band = refine_band;
+
+		// the march starts next to the old edge instead of the seed, far enough
+		// for the square moving right not to reach the band
+		int start_x = edge_x - 1 - REFINE_RAD - 2 * settings._rad_ts;
+
+		inside_calls = window_calls = trace_steps = growths = 0;
+
+		YawiContour refined = Search(Math.max(x, start_x), y);
+
+		boolean cut = (refined == null || band_hits > 0);
+
+		band = prev;
+		refine_band.Clear();
+
+		if(cut)
+			refined = Search(x, y);
+
+		Record(refined != null);
+
+		return refined;
+	}
+
+	/// x of the first vertical pixel border on the right of (x,y) crossed by the outline
+	/// on the row y, -1 if the outline doesn't cross the row on the right of (x,y)
+	private static int RowCrossing(YawiContour contour, int x, int y)
+	{
+		double row = y + 0.5;
+		double best = Double.MAX_VALUE;
+
+		int n = contour.npoints;
+
+		for(int i = 0; i < n; i++)
+		{
+			int x0 = contour.xpoints[i];
+			int y0 = contour.ypoints[i];
+			int x1 = contour.xpoints[(i + 1) % n];
+			int y1 = contour.ypoints[(i + 1) % n];
+
+			if((y0 <= row) == (y1 <= row))
+				continue;
+
+			double cross = x0 + (row - y0) * (x1 - x0) / (y1 - y0);
+
+			if(cross > x + 0.5 && cross < best)
+				best = cross;
+		}
+
+		return (best == Double.MAX_VALUE) ? -1 : (int)Math.round(best);
+	}
+
+	/// trace the outline starting from the upper left corner of the pixel (x,y),
+	/// the pixel has to be inside and its left and upper neighbours outside
+	/// returns the outline or null if the tracer fails
+	YawiContour TraceFrom(int x, int y)
+	{
+		edge_p.setLocation(x, y);
+		// the tracer comes back to the corner moving up the left side
+		start_dir = UP;
+
+		failure = FAIL_NONE;
+		band_hits = 0;
+
+		trace_band = band;
+		boolean ok = TraceEdge();
+		trace_band = null;
+
+		if(!ok)
+			return null;
+
+		return GetContour();
+	}
+
+	/// a copy of the traced outline
+	private YawiContour GetContour()
+	{
+		int[] x_out = new int[npoints];
+		int[] y_out = new int[npoints];
+
+		System.arraycopy(xpoints, 0, x_out, 0, npoints);
+		System.arraycopy(ypoints, 0, y_out, 0, npoints);
+
+		return new YawiContour(x_out, y_out, npoints);
+	}
+
+	/// set the threshold of the ROI with the estimator of the settings
+	void SetThreshold(int x, int y)
+	{
+		seed_p.setLocation(x, y);
+
+		if(settings._snap_rad > 0)
+		{
+			SnapSeed(x, y);
+
+			x = seed_p.x;
+			y = seed_p.y;
+		}
+
+		switch(settings._thr_mode)
+		{
+			case YawiSettings.THR_PERCENTILE:
+				PercentileThreshold(x, y);
+				break;
+
+			case YawiSettings.THR_SIGMA:
+				SigmaThreshold(x, y);
+				break;
+
+			default:
+				MinMaxThreshold(x, y);
+				break;
+		}
+	}
+
+	/// move seed_p to the center of the most homogeneous _side square within _snap_rad
+	/// pixels of (x,y), the variance of a square is computed in constant time with the
+	/// moment tables: the shared ones when set, otherwise tables over the window the
+	/// candidates cover, never over the whole plane. Only the squares whose mean is
+	/// within the standard deviation of the square of the seed from the value of the
+	/// seed are candidates, so a seed on the border of a region is not moved to the
+	/// flat background next to it; the nearest square wins the ties
+	private void SnapSeed(int x, int y)
+	{
+		if(x < 0 || y < 0 || x >= img_width || y >= img_height)
+			return;
+
+		int dist = settings._side / 2;
+		int rad = settings._snap_rad;
+
+		YawiMomentImage moments = this.moments;
+
+		if(moments == null)
+			moments = new YawiMomentImage(img_pixels, img_width, img_height,
+										  x - rad - dist, y - rad - dist, x + rad + dist, y + rad + dist);
+
+		long n = moments.Count(x - dist, y - dist, x + dist, y + dist);
+		double best = (double)moments.ScaledVariance(x - dist, y - dist, x + dist, y + dist) / (n * n);
+		double tol = Math.max(Math.sqrt(best), 1);
+		int value = GetColor(x, y);
+
+		for(int r = 1; r <= rad; r++)
+			for(int cy = y - r; cy <= y + r; cy++)
+				for(int cx = x - r; cx <= x + r; cx++)
+				{
+					// the ring of radius r
+					if(Math.max(Math.abs(cx - x), Math.abs(cy - y)) != r)
+						continue;
+
+					if(cx < 0 || cy < 0 || cx >= img_width || cy >= img_height)
+						continue;
+
+					n = moments.Count(cx - dist, cy - dist, cx + dist, cy + dist);
+
+					double mean = (double)moments.Sum(cx - dist, cy - dist, cx + dist, cy + dist) / n;
+
+					if(Math.abs(mean - value) > tol)
+						continue;
+
+					double var = (double)moments.ScaledVariance(cx - dist, cy - dist, cx + dist, cy + dist) / (n * n);
+
+					if(var < best)
+					{
+						best = var;
+						seed_p.setLocation(cx, cy);
+					}
+				}
+	}
+
+	/// min and max of the square, the pixels outside the image count as 0
+	private void MinMaxThreshold(int x, int y)
+	{
+		int dist = settings._side / 2;
+		int color;
+
+		int i,k;
+
+		lower_threshold = 255;
+		upper_threshold = 0;
+
+		for(i = (y - dist); i <= (y + dist);i++)
+		{
+			for(k = (x - dist); k <= (x + dist);k++)
+			{
+				color = GetColor(k, i);
+
+				// a pixel can be both the new max and the new min (the first one is)
+				if(color > upper_threshold)
+					upper_threshold = color;
+				if(color < lower_threshold)
+					lower_threshold = color;
+			}
+		}
+	}
+
+	/// the range between the _thr_tail and 1 - _thr_tail percentiles of the square,
+	/// a few noisy pixels don't open the range
+	private void PercentileThreshold(int x, int y)
+	{
+		int dist = settings._side / 2;
+
+		int x_a = Math.max(x - dist, 0);
+		int y_a = Math.max(y - dist, 0);
+		int x_b = Math.min(x + dist, img_width - 1);
+		int y_b = Math.min(y + dist, img_height - 1);
+
+		Arrays.fill(hist, 0);
+
+		int n = 0;
+
+		for(int i = y_a; i <= y_b; i++)
+		{
+			int row = i * img_width;
+
+			for(int k = x_a; k <= x_b; k++)
+				hist[img_pixels[row + k] & 0xff]++;
+
+			n += Math.max(x_b - x_a + 1, 0);
+		}
+
+		if(n == 0)
+		{
+			lower_threshold = 255;
+			upper_threshold = 0;
+			return;
+		}
+
+		int cut = (int)(n * settings._thr_tail);
+
+		lower_threshold = ValueOfRank(cut);
+		upper_threshold = ValueOfRank(n - 1 - cut);
+
+		IncludeSeed(x, y);
+	}
+
+	/// mean +/- _thr_k sigma of the square computed in one pass,
+	/// with the shared moment tables in constant time when they are set
+	private void SigmaThreshold(int x, int y)
+	{
+		int dist = settings._side / 2;
+
+		int x_a = Math.max(x - dist, 0);
+		int y_a = Math.max(y - dist, 0);
+		int x_b = Math.min(x + dist, img_width - 1);
+		int y_b = Math.min(y + dist, img_height - 1);
+
+		long n = 0;
+		long sum = 0;
+		long sum_sq = 0;
+
+		if(moments != null)
+		{
+			n = moments.Count(x_a, y_a, x_b, y_b);
+			sum = moments.Sum(x_a, y_a, x_b, y_b);
+			sum_sq = moments.SumSq(x_a, y_a, x_b, y_b);
+		}
+		else
+		{
+			for(int i = y_a; i <= y_b; i++)
+			{
+				int row = i * img_width;
+
+				for(int k = x_a; k <= x_b; k++)
+				{
+					int value = img_pixels[row + k] & 0xff;
+
+					sum += value;
+					sum_sq += value * value;
+					n++;
+				}
+			}
+		}
+
+		if(n == 0)
+		{
+			lower_threshold = 255;
+			upper_threshold = 0;
+			return;
+		}
+
+		double mean = (double)sum / n;
+		double sigma = Math.sqrt(Math.max((double)sum_sq / n - mean * mean, 0));
+		double delta = settings._thr_k * sigma;
+
+		lower_threshold = Math.max((int)Math.floor(mean - delta), 0);
+		upper_threshold = Math.min((int)Math.ceil(mean + delta), 255);
+
+		IncludeSeed(x, y);
+	}
+
+	/// value of the pixel of rank r (from 0) in the histogram of the square
+	private int ValueOfRank(int r)
+	{
+		int count = 0;
+
+		for(int v = 0; v < hist.length; v++)
+		{
+			count += hist[v];
+
+			if(count > r)
+				return v;
+		}
+
+		return 255;
+	}
+
+	/// extend the range to the value of the clicked pixel, it is inside by definition
+	private void IncludeSeed(int x, int y)
+	{
+		if(x < 0 || y < 0 || x >= img_width || y >= img_height)
+			return;
+
+		int color = GetColor(x, y);
+
+		if(color < lower_threshold)
+			lower_threshold = color;
+		if(color > upper_threshold)
+			upper_threshold = color;
+	}
+
+	/// return the color of a pixel located at (x,y)
+	int GetColor(int x, int y)
+	{
+		if(x >= 0 && y >= 0 && x < img_width && y < img_height)
+			return img_pixels[(img_width * y) + x] & 0xff;
+		else
+			return 0;
+	}
+
+	/// find ROI border starting from (start_x,start_y) point inside the area
+	/// returns false if the square moving right is outside at the start, the
+	/// edge is searched by SearchOutline then
+	private boolean AutoOutline(int start_x, int start_y)
+	{
+		edge_p.setLocation(start_x, start_y);
+
+		if(Inside(edge_p.x, edge_p.y, RIGHT))
+		{
+			// if DELTAthreshold is very small we use the ImageJ inside
+			if((criterion != null) ? criterion.Narrow() : (upper_threshold - lower_threshold) < 5)
+				do { edge_p.x++; } while(Inside(edge_p.x, edge_p.y) && edge_p.x < img_width);
+			else
+			{
+				do { edge_p.x++; } while(Inside(edge_p.x, edge_p.y, RIGHT) && edge_p.x < img_width);
+				// we are still into the threshold area
+				if(Inside(edge_p.x, edge_p.y))
+					do { edge_p.x++; } while(Inside(edge_p.x, edge_p.y) && edge_p.x < img_width);
+				// we are out the threshold area more than 1 pixel
+				else if(!Inside(edge_p.x - 1, edge_p.y))
+					do { edge_p.x--; } while(!Inside(edge_p.x, edge_p.y, LEFT) && edge_p.x > 0);
+			}
+
+			// start direction is set for traceEdge
+			start_dir = StartDirection();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/// initial direction of the tracer at edge_p, the left pixel of edge_p
+	/// is inside and edge_p is outside
+	private int StartDirection()
+	{
+		if(!Inside(edge_p.x - 1, edge_p.y - 1))
+			return RIGHT;
+		else if(Inside(edge_p.x, edge_p.y - 1))
+		 	return LEFT;
+		else
+		 	return DOWN;
+	}
+
+	/// edge search used when the square moving right from the seed is outside,
+	/// for example when the seed is close to the right side of the region, or
+	/// when moving right meets a hole or an island instead of the edge: the
+	/// four directions are marched together, one square each per round, from the
+	/// seed and then from the points around it. Every edge met is traced and the
+	/// first outline containing the seed is kept, so the nearest consistent edge
+	/// wins. The marches are interleaved in this thread: a probe costs less than
+	/// handing it to another one.
+	/// returns true if an outline has been traced
+	private boolean SearchOutline(int x, int y)
+	{
+		int[] px = new int[4];
+		int[] py = new int[4];
+		boolean[] active = new boolean[4];
+
+		for(int r = 0; r <= SEED_RAD; r++)
+			for(int dy = -r; dy <= r; dy++)
+				for(int dx = -r; dx <= r; dx++)
+				{
+					// the ring of radius r
+					if(Math.max(Math.abs(dx), Math.abs(dy)) != r)
+						continue;
+
+					int sx = x + dx;
+					int sy = y + dy;
+
+					if(!Inside(sx, sy))
+						continue;
+
+					int n_active = 0;
+
+					for(int d = 0; d < 4; d++)
+					{
+						px[d] = sx;
+						py[d] = sy;
+						active[d] = Inside(sx, sy, SEARCH_DIRS[d]);
+
+						if(active[d])
+							n_active++;
+					}
+
+					while(n_active > 0)
+						for(int d = 0; d < 4; d++)
+						{
+							if(!active[d])
+								continue;
+
+							px[d] += SEARCH_DX[d];
+							py[d] += SEARCH_DY[d];
+
+							if(px[d] >= 0 && py[d] >= 0 && px[d] < img_width && py[d] < img_height &&
+							   Inside(px[d], py[d], SEARCH_DIRS[d]))
+								continue;
+
+							active[d] = false;
+							n_active--;
+
+							if(TraceNear(px[d], py[d], sx, sy, d, x, y))
+								return true;
+
+							// the region is leaking or too long, the other edges are of the same region
+							if(failure == FAIL_OVERFLOW || Leaked())
+								return false;
+						}
+				}
+
+		if(failure == FAIL_NONE)
+			failure = FAIL_NO_EDGE;
+
+		return false;
+	}
+
+	/// trace the edge met by a march in direction d from (sx,sy) that stopped at (ex,ey)
+	/// returns true if the outline has been traced and contains the seed (x,y)
+	private boolean TraceNear(int ex, int ey, int sx, int sy, int d, int x, int y)
+	{
+		// back to a pixel of the region, at worst the start of the march
+		while((ex != sx || ey != sy) && !Inside(ex, ey))
+		{
+			ex -= SEARCH_DX[d];
+			ey -= SEARCH_DY[d];
+		}
+
+		// the edge on the right of that pixel, as AutoOutline finds it
+		do { ex++; } while(Inside(ex, ey) && ex < img_width);
+
+		edge_p.setLocation(ex, ey);
+		start_dir = StartDirection();
+
+		trace_band = band;
+		boolean ok = TraceEdge();
+		trace_band = null;
+
+		// a hole of the region or another region
+		if(ok && !GetContour().Contains(x + 0.5, y + 0.5))
+		{
+			ok = false;
+			failure = FAIL_NO_EDGE;
+		}
+
+		return ok;
+	}
+
+	/// ImageJ inside, checks just 1 pixel
+	/// check if the pixel color is inside the threshold or not
+	boolean Inside(int x, int y)
+	{
+		inside_calls++;
+
+		boolean inside;
+
+		if(criterion != null)
+			inside = x >= 0 && y >= 0 && x < img_width && y < img_height && criterion.Member((img_width * y) + x);
+		else
+		{
+			int value = -1;
+
+			if(x >= 0 && y >= 0 && x < img_width && y < img_height)
+				value = img_pixels[(img_width * y) + x] & 0xff;
+
+			inside = (value >= lower_threshold && value <= upper_threshold);
+		}
+
+		if(inside && trace_band != null && !trace_band.mask[(img_width * y) + x])
+		{
+			band_hits++;
+			return false;
+		}
+
+		return inside;
+	}
+
+	/// Yawi2D inside, checks a square area
+	/// check if most of the pixels are inside the threshold or not
+	boolean Inside(int x, int y, int direction)
+	{
+		window_calls++;
+
+		int rad_ts = settings._rad_ts;
+
+		int x_a, x_b;
+		int y_a, y_b;
+
+		x_a = x_b = y_a = y_b = 0;
+
+		// moving UP
+		if(direction == UP)
+		{
+			if(x - rad_ts > 0)
+				x_a = x - rad_ts;
+			else
+				x_a = 0;
+
+			if(x + rad_ts < img_width)
+				x_b = x + rad_ts;
+			else
+				x_b = img_width - 1;
+
+			if(y-(rad_ts * 2) > 0)
+				y_a = y - (rad_ts * 2);
+			else
+				y_a = 0;
+
+			y_b = y;
+		}
+
+		// moving DOWN
+		if(direction == DOWN)
+		{
+			if(x - rad_ts > 0)
+				x_a = x - rad_ts;
+			else
+				x_a = 0;
+
+			if(x + rad_ts < img_width)
+		 		x_b = x + rad_ts;
+			else
+				x_b = img_width - 1;
+
+			y_a = y;
+
+			if(y + (rad_ts * 2) < img_height)
+				y_b = y+(rad_ts * 2);
+			else
+				y_b = img_height - 1;
+		}
+
+		// moving LEFT
+		if(direction == LEFT)
+		{
+			if(x - (2 * rad_ts) > 0)
+				x_a = x - (2 * rad_ts);
+			else
+				x_a = 0;
+
+			x_b = x;
+
+			if(y - rad_ts > 0)
+				y_a = y - rad_ts;
+			else
+				y_a = 0;
+
+			if(y + rad_ts < img_height)
+				y_b = y + rad_ts;
+			else
+				y_b = img_height - 1;
+		}
+
+		// moving RIGHT
+		if(direction == RIGHT)
+		{
+			x_a = x;
+
+			if(x+(2 * rad_ts) < img_width)
+				x_b = x + (2 * rad_ts);
+			else
+				x_b = img_width - 1;
+
+			if(y - rad_ts > 0)
+				y_a = y - rad_ts;
+			else
+				y_a = 0;
+
+			if(y + rad_ts < img_height)
+				y_b = y + rad_ts;
+			else
+				y_b = img_height - 1;
+		}
+
+		int area = ((rad_ts * 2) + 1)*((rad_ts * 2) + 1);
+		int inside_count = 0;
+
+		if(criterion != null)
+			inside_count = criterion.Count(x_a, y_a, x_b, y_b);
+		// constant time count when a table for the current range is available
+		else if(integral != null && integral.Matches(lower_threshold, upper_threshold))
+			inside_count = integral.Count(x_a, y_a, x_b, y_b);
+		else
+			inside_count = counter.Count(img_pixels, img_width, img_height, x_a, y_a, x_b, y_b,
+										 lower_threshold, upper_threshold);
+
+		return (((float)inside_count) / area >= settings._min_perc);
+	}
+
+	/// traces an object defined by lower and upper threshold values.
+	/// The boundary points are stored in the xpoints and ypoints fields
+	private boolean TraceEdge()
+	{
+		int secure = 0;
+
+		failure = FAIL_NONE;
+
+		// leak guard: a region leaking out of the object reaches the border, grows
+		// bounds larger than a fraction of the slice or a very long outline
+		boolean guard = settings._leak_frac > 0;
+		long max_box = (long)(settings._leak_frac * img_width * img_height);
+		int budget = max_steps;
+
+		if(guard)
+		{
+			double side = Math.sqrt(settings._leak_frac);
+			budget = (int)Math.min(max_steps, LEAK_TORTUOSITY * 2 * side * (img_width + img_height));
+		}
+
+		int min_x = edge_p.x, max_x = edge_p.x;
+		int min_y = edge_p.y, max_y = edge_p.y;
+
+		int[] table =
+		{
+							// 1234 1=upper left pixel,  2=upper right, 3=lower left, 4=lower right
+			NA, 			// 0000 should never happen
+			RIGHT,			// 000X
+			DOWN,			// 00X0
+			RIGHT,			// 00XX
+			UP,				// 0X00
+			UP,				// 0X0X
+			UP_OR_DOWN,		// 0XX0 Go up or down depending on current direction
+			UP,				// 0XXX
+			LEFT,			// X000
+			LEFT_OR_RIGHT,  // X00X Go left or right depending on current direction
+			DOWN,			// X0X0
+			RIGHT,			// X0XX
+			LEFT,			// XX00
+			LEFT,			// XX0X
+			DOWN,			// XXX0
+			NA,				// XXXX Should never happen
+		};
+
+		int index;
+		int new_direction;
+		int x = edge_p.x;
+		int y = edge_p.y;
+		int direction = start_dir;
+
+		// upper left
+		boolean UL = Inside(x - 1, y - 1);
+		// upper right
+		boolean UR = Inside(x, y - 1);
+		// lower left
+		boolean LL = Inside(x - 1, y);
+		// lower right
+		boolean LR = Inside(x, y);
+
+		int count = 0;
+
+		do
+		{
+			index = 0;
+
+			if(LR) index |= 1;
+			if(LL) index |= 2;
+			if(UR) index |= 4;
+			if(UL) index |= 8;
+
+			new_direction = table[index];
+
+			// uncertainty, up or down
+			if(new_direction == UP_OR_DOWN)
+			{
+				if(direction == RIGHT)
+					new_direction = UP;
+				else
+					new_direction = DOWN;
+			}
+
+			// uncertainty, left or right
+			if(new_direction == LEFT_OR_RIGHT)
+			{
+				if(direction == UP)
+			   		new_direction = LEFT;
+			 	else
+				 	new_direction = RIGHT;
+			}
+
+			// error
+		   	if(new_direction == NA)
+			{
+				failure = FAIL_NA;
+				return false;
+			}
+
+			// a new direction means a new selection's point
+			if(new_direction != direction)
+		 	{
+				xpoints[count] = x;
+			 	ypoints[count] = y;
+			 	count++;
+
+				// xpoints and ypoints need more memory
+			 	if(count == xpoints.length)
+			 	{
+					growths++;
+
+					int[] xtemp = new int[max_points * 2];
+				 	int[] ytemp = new int[max_points * 2];
+
+				 	System.arraycopy(xpoints, 0, xtemp, 0, max_points);
+				 	System.arraycopy(ypoints, 0, ytemp, 0, max_points);
+
+				 	xpoints = xtemp;
+				 	ypoints = ytemp;
+
+				 	max_points *= 2;
+				}
+			}
+
+			// moving along the selected direction
+		  	switch(new_direction)
+			{
+				case UP:
+		 	    	y = y - 1;
+				 	LL = UL;
+				 	LR = UR;
+				 	UL = Inside(x - 1, y - 1);
+				 	UR = Inside(x, y - 1);
+				 	break;
+
+			 	case DOWN:
+				 	y = y + 1;
+				 	UL = LL;
+				 	UR = LR;
+				 	LL = Inside(x - 1, y);
+				 	LR = Inside(x, y);
+				 	break;
+
+ 		 		case LEFT:
+					x = x - 1;
+				 	UR = UL;
+				 	LR = LL;
+				 	UL = Inside(x - 1, y - 1);
+				 	LL = Inside(x - 1, y);
+				 	break;
+
+			 	case RIGHT:
+				 	x = x + 1;
+				 	UL = UR;
+				 	LL = LR;
+				 	UR = Inside(x, y - 1);
+				 	LR = Inside(x, y);
+				 	break;
+			}
+
+		  	direction = new_direction;
+			trace_steps++;
+
+			if(guard)
+			{
+				if(x <= 0 || y <= 0 || x >= img_width || y >= img_height)
+				{
+					failure = FAIL_BORDER;
+					return false;
+				}
+
+				// the bounds are checked only when they grow
+				if(x < min_x || x > max_x || y < min_y || y > max_y)
+				{
+					min_x = Math.min(min_x, x);
+					max_x = Math.max(max_x, x);
+					min_y = Math.min(min_y, y);
+					max_y = Math.max(max_y, y);
+
+					if((long)(max_x - min_x) * (max_y - min_y) > max_box)
+					{
+						failure = FAIL_BOUNDS;
+						return false;
+					}
+				}
+			}
+
+		 	if(secure < budget)
+				secure++;
+		 	else	// traceEdge OVERFLOW!!!
+			{
+				failure = (budget < max_steps) ? FAIL_PERIMETER : FAIL_OVERFLOW;
+				return false;
+			}
+
+		} while ((x != edge_p.x || y != edge_p.y || direction != start_dir));
+
+		// number of ROI points
+	 	npoints = count;
+
+		return true;
+	}
+}
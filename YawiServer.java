@@ -0,0 +1,693 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Local segmentation service: an HTTP server on the loopback address
+// so the tools of a pipeline segment their seeds without starting a
+// JVM for every image. The decoded slices stay in memory with their
+// tables (moments and summed area tables of the threshold ranges in
+// use) until a memory budget is reached. The requests for the same
+// slice are batched: while a batch runs the requests arriving queue
+// up, and the next leader takes all of them at once, so the slice is
+// read once and the seeds of every request are traced in parallel by
+// the workers. Run with:
+//		java -cp ij.jar:. YawiServer [port] [threads] [cache MB]
+//
+//	POST /segment?image=<study>&slice=<n>	body: a "x y" seed per line
+//		a JSON line for every seed, the ROI as in YawiRoiWriter or its failure
+//	GET /status
+//		cache and batching counters
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.process.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// HTTP service segmenting seed batches on warm slices
+class YawiServer
+{
+	static final int PORT_DEF = 8765;
+	static final int CACHE_MB_DEF = 512;
+
+	/// summed area tables kept for a slice, one for every threshold range
+	private static final int MAX_TABLES = 8;
+
+	/// a seed batch of a client, its result lines are filled by the workers
+	private static class Request
+	{
+		final int[] xs;
+		final int[] ys;
+		final String[] lines;
+		/// the slice can't be read
+		boolean missing = false;
+		/// why the batch of the request failed, null if it didn't
+		String error = null;
+		boolean done = false;
+
+		Request(int[] xs, int[] ys)
+		{
+			this.xs = xs;
+			this.ys = ys;
+			this.lines = new String[xs.length];
+		}
+	}
+
+	/// a slice kept in memory with its tables and the requests waiting for it
+	private static class Slice
+	{
+		final String study;
+		final int slice;
+
+		/// the plane, null until read; the file it was read from, the slice file
+		/// of a study directory, and its modification time
+		byte[] pixels = null;
+		int width;
+		int height;
+		File file;
+		long stamp;
+
+		/// built once and shared by the seeds
+		private YawiMomentImage moments = null;
+		/// summed area tables by threshold range, and the seeds that used every range
+		final ConcurrentHashMap<Integer, YawiIntegralImage> tables = new ConcurrentHashMap<Integer, YawiIntegralImage>();
+		final ConcurrentHashMap<Integer, AtomicInteger> uses = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+		/// requests not taken by a batch yet, true while a batch runs
+		final List<Request> queue = new ArrayList<Request>();
+		boolean running = false;
+
+		Slice(String study, int slice)
+		{
+			this.study = study;
+			this.slice = slice;
+		}
+
+		synchronized YawiMomentImage GetMoments()
+		{
+			if(moments == null)
+				moments = new YawiMomentImage(pixels, width, height);
+
+			return moments;
+		}
+
+		/// the table of a range, built when a second seed needs it: for a single
+		/// seed the tracer is faster than a table of the whole slice
+		YawiIntegralImage GetTable(int lower, int upper)
+		{
+			Integer key = Integer.valueOf((lower << 8) | upper);
+			YawiIntegralImage table = tables.get(key);
+
+			if(table != null)
+				return table;
+
+			AtomicInteger n = uses.get(key);
+
+			if(n == null)
+			{
+				uses.putIfAbsent(key, new AtomicInteger());
+				n = uses.get(key);
+			}
+
+			if(n.incrementAndGet() < 2 || tables.size() >= MAX_TABLES)
+				return null;
+
+			table = new YawiIntegralImage(pixels, width, height, lower, upper);
+
+			YawiIntegralImage prev = tables.putIfAbsent(key, table);
+
+			return (prev != null) ? prev : table;
+		}
+
+		/// memory used by the plane and its tables
+		synchronized long Bytes()
+		{
+			if(pixels == null)
+				return 0;
+
+			long n = (long)width * height;
+
+			return n + (moments != null ? 16 * n : 0) + 4 * n * tables.size();
+		}
+
+		/// forget the plane and its tables, the study has changed
+		synchronized void Clear()
+		{
+			pixels = null;
+			moments = null;
+			tables.clear();
+			uses.clear();
+		}
+	}
+
+	private final YawiSettings settings;
+	private final long cache_bytes;
+	private final YawiSliceCache disk_cache = YawiSliceCache.Default();
+
+	/// the slices, least recently used first
+	private final LinkedHashMap<String, Slice> slices = new LinkedHashMap<String, Slice>(16, 0.75f, true);
+
+	/// the workers tracing the seeds and the ones answering the clients
+	private final ExecutorService workers;
+	private final int n_workers;
+	private ExecutorService handlers = null;
+	private HttpServer server = null;
+
+	// counters
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong seeds = new AtomicLong();
+	private final AtomicLong reads = new AtomicLong();
+
+	YawiServer(YawiSettings settings, int n_workers, long cache_bytes)
+	{
+		this.settings = settings;
+		this.n_workers = n_workers;
+		this.cache_bytes = cache_bytes;
+
+		workers = Executors.newFixedThreadPool(n_workers, new YawiSnapshot.DaemonFactory("Yawi server worker"));
+	}
+
+	/// listen on the loopback address, port 0 for any free port
+	/// returns the port
+	int Start(int port) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+		server.createContext("/segment", new HttpHandler()
+		{
+			public void handle(HttpExchange ex) throws IOException { HandleSegment(ex); }
+		});
+
+		server.createContext("/status", new HttpHandler()
+		{
+			public void handle(HttpExchange ex) throws IOException
+			{
+				Reply(ex, 200, "application/json", Status() + "\n");
+			}
+		});
+
+		// a client waits for its batch on its own thread
+		handlers = Executors.newCachedThreadPool(new YawiSnapshot.DaemonFactory("Yawi server"));
+
+		server.setExecutor(handlers);
+		server.start();
+
+		return server.getAddress().getPort();
+	}
+
+	void Stop()
+	{
+		if(server != null)
+			server.stop(0);
+
+		if(handlers != null)
+			handlers.shutdown();
+
+		workers.shutdown();
+	}
+
+	long GetRequests() { return requests.get(); }
+
+	long GetBatches() { return batches.get(); }
+
+	/// counters as a JSON object
+	String Status()
+	{
+		int n_slices;
+		long bytes = 0;
+
+		synchronized(slices)
+		{
+			n_slices = slices.size();
+
+			for(Slice s : slices.values())
+				bytes += s.Bytes();
+		}
+
+		return "{\"requests\":" + requests.get() + ",\"batches\":" + batches.get() + ",\"seeds\":" + seeds.get() +
+			",\"reads\":" + reads.get() + ",\"slices\":" + n_slices + ",\"cache_bytes\":" + bytes + "}";
+	}
+
+	/// POST /segment?image=<study>&slice=<n>
+	private void HandleSegment(HttpExchange ex) throws IOException
+	{
+		try
+		{
+			if(!ex.getRequestMethod().equals("POST"))
+			{
+				Reply(ex, 405, "text/plain", "use POST\n");
+				return;
+			}
+
+			Map<String, String> query = ParseQuery(ex.getRequestURI().getRawQuery());
+			String study = query.get("image");
+			int slice;
+
+			try
+			{
+				slice = Integer.parseInt(query.containsKey("slice") ? query.get("slice") : "1");
+			}
+			catch(NumberFormatException e)
+			{
+				slice = 0;
+			}
+
+			if(study == null || slice < 1)
+			{
+				Reply(ex, 400, "text/plain", "image and slice are required\n");
+				return;
+			}
+
+			Request req = ReadSeeds(ex.getRequestBody());
+
+			if(req == null)
+			{
+				Reply(ex, 400, "text/plain", "a \"x y\" seed per line is required\n");
+				return;
+			}
+
+			requests.incrementAndGet();
+
+			Submit(GetSlice(study, slice), req);
+
+			if(req.missing)
+			{
+				Reply(ex, 404, "text/plain", "can't read " + study + " slice " + slice + "\n");
+				return;
+			}
+
+			if(req.error != null)
+			{
+				Reply(ex, 500, "text/plain", req.error + "\n");
+				return;
+			}
+
+			StringBuilder sb = new StringBuilder();
+
+			for(String line : req.lines)
+				sb.append(line);
+
+			Reply(ex, 200, "application/x-ndjson", sb.toString());
+		}
+		catch(InterruptedException e)
+		{
+			Reply(ex, 503, "text/plain", "stopped\n");
+		}
+		catch(RuntimeException e)
+		{
+			Reply(ex, 500, "text/plain", e + "\n");
+		}
+	}
+
+	/// the slice of a study, added to the cache if not there
+	private Slice GetSlice(String study, int slice)
+	{
+		String key = study + '\t' + slice;
+
+		synchronized(slices)
+		{
+			Slice s = slices.get(key);
+
+			if(s == null)
+				slices.put(key, s = new Slice(study, slice));
+
+			return s;
+		}
+	}
+
+	/// queue a request and wait for it: a request not served when the batch
+	/// before it ends takes the lead of a batch with all the queued requests;
+	/// if the batch fails every request of it gets the error
+	private void Submit(Slice s, Request req) throws InterruptedException
+	{
+		List<Request> batch;
+
+		synchronized(s)
+		{
+			s.queue.add(req);
+
+			while(!req.done && s.running)
+				s.wait();
+
+			if(req.done)
+				return;
+
+			batch = new ArrayList<Request>(s.queue);
+			s.queue.clear();
+			s.running = true;
+		}
+
+		// an error not caught below, such as running out of memory
+		String error = "the batch of the slice failed";
+
+		try
+		{
+			RunBatch(s, batch);
+
+			error = null;
+		}
+		catch(InterruptedException e)
+		{
+			error = "stopped";
+			throw e;
+		}
+		catch(RuntimeException e)
+		{
+			error = e.toString();
+		}
+		finally
+		{
+			synchronized(s)
+			{
+				for(Request r : batch)
+				{
+					r.error = error;
+					r.done = true;
+				}
+
+				s.running = false;
+				s.notifyAll();
+			}
+
+			Trim();
+		}
+	}
+
+	/// read the slice if needed and trace the seeds of the batch with the workers
+	private void RunBatch(final Slice s, List<Request> batch) throws InterruptedException
+	{
+		batches.incrementAndGet();
+
+		if(!Load(s))
+		{
+			for(Request r : batch)
+				r.missing = true;
+
+			return;
+		}
+
+		// the seeds of every request, split in a job for every worker
+		final List<Request> reqs = new ArrayList<Request>();
+		final List<Integer> inds = new ArrayList<Integer>();
+
+		for(Request r : batch)
+			for(int i = 0; i < r.xs.length; i++)
+			{
+				reqs.add(r);
+				inds.add(Integer.valueOf(i));
+			}
+
+		seeds.addAndGet(reqs.size());
+
+		int n_jobs = Math.min(n_workers, reqs.size());
+		List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+
+		for(int j = 0; j < n_jobs; j++)
+		{
+			final int first = j;
+			final int step = n_jobs;
+
+			jobs.add(new Callable<Object>()
+			{
+				public Object call() throws IOException
+				{
+					for(int k = first; k < reqs.size(); k += step)
+					{
+						Request r = reqs.get(k);
+						int i = inds.get(k).intValue();
+
+						r.lines[i] = SegmentSeed(s, r.xs[i], r.ys[i]);
+					}
+
+					return null;
+				}
+			});
+		}
+
+		List<Future<Object>> res = workers.invokeAll(jobs);
+
+		for(Future<Object> f : res)
+		{
+			try
+			{
+				f.get();
+			}
+			catch(ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/// read the plane of a slice, again if its file has changed; the slices of a
+	/// study directory are listed again, a slice file can be added or removed
+	/// returns false if it can't be read
+	private boolean Load(Slice s)
+	{
+		File study = new File(s.study);
+		String[] sorted = study.isDirectory() ? YawiBatch.ListSlices(study) : null;
+		File file = YawiBatch.SliceFile(s.study, s.slice, sorted);
+
+		if(file == null)
+		{
+			s.Clear();
+			return false;
+		}
+
+		long stamp = file.lastModified();
+
+		synchronized(s)
+		{
+			if(s.pixels != null && s.stamp == stamp && file.equals(s.file))
+				return true;
+		}
+
+		s.Clear();
+
+		ImageProcessor ip;
+
+		try
+		{
+			ip = YawiBatch.LoadSlice(s.study, s.slice, sorted, disk_cache);
+		}
+		catch(IOException e)
+		{
+			ip = null;
+		}
+
+		if(ip == null)
+			return false;
+
+		reads.incrementAndGet();
+
+		synchronized(s)
+		{
+			s.pixels = (byte[])ip.getPixels();
+			s.width = ip.getWidth();
+			s.height = ip.getHeight();
+			s.file = file;
+			s.stamp = stamp;
+		}
+
+		return true;
+	}
+
+	/// trace a seed on a slice, returns its JSON line
+	private String SegmentSeed(Slice s, int x, int y) throws IOException
+	{
+		String name = x + "," + y;
+
+		if(x < 0 || y < 0 || x >= s.width || y >= s.height)
+			return Failure(name, s.slice, "seed out of the slice");
+
+		YawiSegmenter seg = new YawiSegmenter(s.pixels, s.width, s.height, settings);
+
+		if(settings._thr_mode == YawiSettings.THR_SIGMA || settings._snap_rad > 0)
+			seg.SetMomentImage(s.GetMoments());
+
+		// Segment with the table of the range
+		long t0 = System.nanoTime();
+
+		seg.SetThreshold(x, y);
+
+		YawiMetrics.Get().RecordStage(YawiMetrics.THRESHOLD, System.nanoTime() - t0);
+
+		seg.SetIntegralImage(s.GetTable(seg.GetLowerThreshold(), seg.GetUpperThreshold()));
+
+		YawiContour c = seg.Outline(seg.GetSeedX(), seg.GetSeedY());
+
+		if(c == null)
+			return Failure(name, s.slice, YawiSegmenter.FAIL_NAMES[seg.GetFailure()]);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256 + c.npoints * 12);
+		YawiRoiWriter writer = new YawiRoiWriter.JsonWriter(out);
+
+		writer.Write(name, s.slice, c, s.pixels, s.width, s.height);
+		writer.Close();
+
+		return out.toString("UTF-8");
+	}
+
+	private static String Failure(String name, int slice, String reason)
+	{
+		return "{\"name\":\"" + name + "\",\"slice\":" + slice + ",\"failure\":\"" + reason + "\"}\n";
+	}
+
+	/// drop the least recently used slices over the memory budget, the ones
+	/// with a batch running or waiting are kept
+	private void Trim()
+	{
+		synchronized(slices)
+		{
+			long bytes = 0;
+
+			for(Slice s : slices.values())
+				bytes += s.Bytes();
+
+			for(Iterator<Slice> it = slices.values().iterator(); it.hasNext() && bytes > cache_bytes; )
+			{
+				Slice s = it.next();
+
+				synchronized(s)
+				{
+					if(s.running || !s.queue.isEmpty())
+						continue;
+				}
+
+				bytes -= s.Bytes();
+				it.remove();
+			}
+		}
+	}
+
+	/// the seeds of a request body, "x y" or "x,y" for every line
+	/// returns null if there are none or a line is not valid
+	private static Request ReadSeeds(InputStream body) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(body, "UTF-8"));
+		List<int[]> pts = new ArrayList<int[]>();
+
+		try
+		{
+			for(String line = in.readLine(); line != null; line = in.readLine())
+			{
+				line = line.trim();
+
+				if(line.length() == 0)
+					continue;
+
+				String[] tok = line.split("[\\s,]+");
+
+				if(tok.length != 2)
+					return null;
+
+				try
+				{
+					pts.add(new int[] { Integer.parseInt(tok[0]), Integer.parseInt(tok[1]) });
+				}
+				catch(NumberFormatException e)
+				{
+					return null;
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		if(pts.isEmpty())
+			return null;
+
+		int[] xs = new int[pts.size()];
+		int[] ys = new int[pts.size()];
+
+		for(int i = 0; i < xs.length; i++)
+		{
+			xs[i] = pts.get(i)[0];
+			ys[i] = pts.get(i)[1];
+		}
+
+		return new Request(xs, ys);
+	}
+
+	private static Map<String, String> ParseQuery(String query) throws UnsupportedEncodingException
+	{
+		Map<String, String> map = new HashMap<String, String>();
+
+		if(query == null)
+			return map;
+
+		for(String pair : query.split("&"))
+		{
+			int eq = pair.indexOf('=');
+
+			if(eq > 0)
+				map.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+
+		return map;
+	}
+
+	private static void Reply(HttpExchange ex, int code, String type, String text) throws IOException
+	{
+		byte[] data = text.getBytes("UTF-8");
+
+		ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		ex.sendResponseHeaders(code, data.length);
+
+		OutputStream out = ex.getResponseBody();
+
+		try
+		{
+			out.write(data);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/// command line usage: YawiServer [port] [threads] [cache MB]
+	public static void main(String[] args) throws Exception
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT_DEF;
+		int n_threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long cache_mb = args.length > 2 ? Long.parseLong(args[2]) : CACHE_MB_DEF;
+
+		YawiServer server = new YawiServer(new YawiSettings(), n_threads, cache_mb << 20);
+
+		port = server.Start(port);
+
+		System.out.println("Yawi server on http://127.0.0.1:" + port + "/segment, " + n_threads + " workers");
+
+		// the handlers are daemons: the server runs until the process is stopped
+		Thread.currentThread().join();
+	}
+}
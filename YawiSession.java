@@ -0,0 +1,427 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// The segmentation state of an opened image or stack: its planes,
+// settings, wand, the current outline and the history of the
+// outlines of every slice. The GUI keeps one
+// session for the image it shows, other sessions can be used by other
+// threads at the same time: a session shares nothing with the others
+// and its methods are synchronized, so a background job and the GUI
+// can work on the same session without seeing half an update.
+// The planes of a RGB image are kept as they are: the wand works on
+// their similarity to the colour of the seed (YawiColorDistance). A
+// click computes the similarity around the seed only, for the threshold,
+// and traces the colours with a YawiCriterion.ColorDistance; the whole
+// similarity plane is built for Refine, SubPixel and the volume.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// per-image segmentation state
+class YawiSession
+{
+	/// name of the image or of the stack
+	final String name;
+	/// settings of this session, a copy of the ones it was created with
+	final YawiSettings settings;
+
+	/// planes of the image, one per slice, byte[] or int[] for a RGB image
+	private final Object[] planes;
+	private final int width;
+	private final int height;
+	/// true for a RGB image
+	private final boolean color;
+	/// 8-bit gray planes of a RGB image, built when needed
+	private final byte[][] gray;
+
+	/// colour distance from the colour of the seed, RGB images only
+	private YawiColorDistance distance = null;
+	/// similarity plane of distance_slice, kept for Refine and SubPixel
+	private byte[] distance_plane = null;
+	private int distance_slice = 0;
+	/// similarity of the pixels around the seed, the threshold of a RGB click is
+	/// set on it; the other pixels are left from the previous clicks
+	private byte[] seed_plane = null;
+
+	/// the wand, it follows settings
+	private final YawiSegmenter segmenter;
+
+	/// current slice, from 1
+	private int slice = 1;
+
+	/// current outline, null if none
+	private YawiContour contour = null;
+	/// slice of the current outline
+	private int contour_slice = 1;
+	/// why the last segmentation failed, one of YawiSegmenter.FAIL_*
+	private int failure = YawiSegmenter.FAIL_NONE;
+	/// threshold range the current outline was traced with
+	private int contour_lower = 0;
+	private int contour_upper = 255;
+	/// seed of the current outline, the point clicked by the user
+	private int seed_x = 0;
+	private int seed_y = 0;
+	/// slice of the seed, from 1
+	private int seed_slice = 1;
+
+	/// result of the last 3D segmentation, null if none
+	private YawiVolumeSegmenter.Result volume = null;
+	/// incremented by every new outline, a 3D result of an older one is dropped
+	private int generation = 0;
+
+	/// undo/redo history of the outlines
+	private final YawiRoiHistory history = new YawiRoiHistory();
+
+	/// a session on the 8-bit or RGB planes of an image or stack, planes[i] is slice i + 1
+	YawiSession(String name, Object[] planes, int width, int height, YawiSettings settings)
+	{
+		this.name = name;
+		this.planes = (Object[])planes.clone();
+		this.width = width;
+		this.height = height;
+		this.settings = new YawiSettings(settings);
+
+		color = planes.length > 0 && planes[0] instanceof int[];
+		gray = color ? new byte[planes.length][] : null;
+
+		segmenter = new YawiSegmenter(this.settings);
+	}
+
+	int GetWidth() { return width; }
+
+	int GetHeight() { return height; }
+
+	int GetSlices() { return planes.length; }
+
+	boolean IsColor() { return color; }
+
+	/// 8-bit pixels of a slice, from 1, the gray version of a RGB slice
+	synchronized byte[] GetPixels(int slice)
+	{
+		if(!color)
+			return (byte[])planes[slice - 1];
+
+		if(gray[slice - 1] == null)
+			gray[slice - 1] = YawiColorDistance.Gray((int[])planes[slice - 1]);
+
+		return gray[slice - 1];
+	}
+
+	/// RGB pixels of a slice, from 1, null if the image is not RGB
+	int[] GetRgb(int slice) { return color ? (int[])planes[slice - 1] : null; }
+
+	/// the planes segmented by the wand, slice i + 1 is planes[i]: the
+	/// similarity to the colour of the current seed for a RGB image
+	synchronized Object[] GetPlanes()
+	{
+		if(!color)
+			return (Object[])planes.clone();
+
+		YawiColorDistance d = GetDistance();
+		Object[] out = new Object[planes.length];
+
+		for(int i = 0; i < planes.length; i++)
+			out[i] = (i + 1 == distance_slice) ? distance_plane : d.Plane((int[])planes[i]);
+
+		return out;
+	}
+
+	/// the plane of a slice segmented by the wand
+	private byte[] SegmentedPixels(int slice)
+	{
+		if(!color)
+			return (byte[])planes[slice - 1];
+
+		YawiColorDistance d = GetDistance();
+
+		if(distance_plane == null || distance_slice != slice)
+		{
+			distance_plane = d.Plane((int[])planes[slice - 1]);
+			distance_slice = slice;
+		}
+
+		return distance_plane;
+	}
+
+	/// the colour distance of the current seed, built again if the settings have changed
+	private YawiColorDistance GetDistance()
+	{
+		if(distance == null || distance.mode != settings._color_mode)
+		{
+			distance = new YawiColorDistance(YawiColorDistance.Reference((int[])planes[seed_slice - 1], width, height,
+																		 seed_x, seed_y, settings._side),
+											 settings._color_mode);
+			distance_plane = null;
+		}
+
+		return distance;
+	}
+
+	synchronized int GetSlice() { return slice; }
+
+	synchronized void SetSlice(int slice) { this.slice = slice; }
+
+	synchronized int GetSeedX() { return seed_x; }
+
+	synchronized int GetSeedY() { return seed_y; }
+
+	synchronized int GetContourSlice() { return contour_slice; }
+
+	synchronized boolean HasContour() { return contour != null; }
+
+	/// a copy of the current outline if it's on slice, null otherwise
+	synchronized YawiContour GetContour(int slice)
+	{
+		if(contour == null || slice != contour_slice)
+			return null;
+
+		return contour.Copy();
+	}
+
+	/// set the current outline of the current slice and add it to its history
+	synchronized void SetContour(YawiContour c)
+	{
+		contour = c;
+		contour_slice = slice;
+		generation++;
+
+		history.Push(slice, c, new YawiRoiHistory.Trace(seed_x, seed_y, contour_lower, contour_upper));
+	}
+
+	synchronized boolean CanUndo() { return history.CanUndo(slice); }
+
+	synchronized boolean CanRedo() { return history.CanRedo(slice); }
+
+	/// go back to the previous outline of the current slice
+	/// returns a copy of the outline or null if there's nothing to undo
+	synchronized YawiContour Undo()
+	{
+		return Restore(history.Undo(slice));
+	}
+
+	/// go forward to the next outline of the current slice
+	/// returns a copy of the outline or null if there's nothing to redo
+	synchronized YawiContour Redo()
+	{
+		return Restore(history.Redo(slice));
+	}
+
+	/// make an outline of the history the current one
+	private YawiContour Restore(YawiContour c)
+	{
+		if(c == null)
+			return null;
+
+		contour = c;
+		contour_slice = slice;
+		generation++;
+		// the 3D result was grown from another outline
+		volume = null;
+
+		// SubPixel and Refine go on from the seed and range of the outline
+		YawiRoiHistory.Trace trace = history.GetTrace(slice);
+
+		if(trace != null)
+		{
+			if(trace.seed_x != seed_x || trace.seed_y != seed_y || seed_slice != slice)
+			{
+				seed_x = trace.seed_x;
+				seed_y = trace.seed_y;
+				seed_slice = slice;
+				distance = null;
+			}
+
+			contour_lower = trace.lower;
+			contour_upper = trace.upper;
+		}
+
+		return c.Copy();
+	}
+
+	/// bytes used by the history of the outlines
+	synchronized long GetHistoryBytes() { return history.GetUsed(); }
+
+	/// the number of outlines set so far, passed to SetVolume
+	synchronized int GetGeneration() { return generation; }
+
+	synchronized YawiVolumeSegmenter.Result GetVolume() { return volume; }
+
+	/// store a 3D result started when GetGeneration() was gen, it's dropped
+	/// if the session has a newer outline
+	/// returns false if the result has been dropped
+	synchronized boolean SetVolume(YawiVolumeSegmenter.Result result, int gen)
+	{
+		if(gen != generation)
+			return false;
+
+		volume = result;
+
+		return true;
+	}
+
+	/// set the outline of a slice of the 3D result as the current one
+	synchronized void ShowVolumeSlice(int slice, YawiContour c)
+	{
+		this.slice = slice;
+		contour = c;
+		contour_slice = slice;
+	}
+
+	/// why the last Segment or Refine failed, one of YawiSegmenter.FAIL_*
+	synchronized int GetFailure() { return failure; }
+
+	/// threshold range of the current outline
+	synchronized int GetLowerThreshold() { return contour_lower; }
+
+	synchronized int GetUpperThreshold() { return contour_upper; }
+
+	/// segment the region containing (x,y) of the current slice, the outline
+	/// becomes the current one; if there's no selection the seed of the current
+	/// outline is kept, Refine, SubPixel and the volume go on from it
+	/// returns the outline or null if there's no selection
+	synchronized YawiContour Segment(int x, int y)
+	{
+		int prev_x = seed_x;
+		int prev_y = seed_y;
+		int prev_slice = seed_slice;
+
+		seed_x = x;
+		seed_y = y;
+		seed_slice = slice;
+
+		// the reference colour is the one of the new seed
+		distance = null;
+
+		YawiContour c;
+
+		if(color)
+			c = SegmentColor(x, y);
+		else
+		{
+			segmenter.SetImage((byte[])planes[slice - 1], width, height);
+
+			c = segmenter.Segment(x, y);
+		}
+
+		failure = segmenter.GetFailure();
+
+		if(c == null)
+		{
+			seed_x = prev_x;
+			seed_y = prev_y;
+			seed_slice = prev_slice;
+			// built again from the kept seed when needed
+			distance = null;
+
+			return null;
+		}
+
+		// a new outline replaces the 3D one
+		volume = null;
+
+		contour_lower = segmenter.GetLowerThreshold();
+		contour_upper = segmenter.GetUpperThreshold();
+		SetContour(c);
+
+		return c;
+	}
+
+	/// segment the region of a RGB slice containing (x,y) without building its
+	/// similarity plane: the threshold is set on the similarity of the squares
+	/// the seed can snap to, the tracer tests the colours of the pixels it visits
+	/// returns the outline or null if there's no selection
+	private YawiContour SegmentColor(int x, int y)
+	{
+		int[] rgb = (int[])planes[slice - 1];
+		YawiColorDistance d = GetDistance();
+		int rad = settings._snap_rad + settings._side / 2;
+
+		if(seed_plane == null)
+			seed_plane = new byte[width * height];
+
+		d.Window(rgb, width, height, x - rad, y - rad, x + rad, y + rad, seed_plane);
+
+		segmenter.SetImage(seed_plane, width, height);
+
+		long t0 = System.nanoTime();
+
+		segmenter.SetThreshold(x, y);
+
+		YawiMetrics.Get().RecordStage(YawiMetrics.THRESHOLD, System.nanoTime() - t0);
+
+		segmenter.SetCriterion(new YawiCriterion.ColorDistance(rgb, width, height, d, segmenter.GetLowerThreshold(),
+															   segmenter.GetUpperThreshold()));
+
+		YawiContour c = segmenter.Outline(segmenter.GetSeedX(), segmenter.GetSeedY());
+
+		segmenter.SetCriterion(null);
+
+		return c;
+	}
+
+	/// trace again the current outline after a change of the settings, the
+	/// new outline is searched near the old one
+	/// returns the outline or null if there's nothing to refine or no selection
+	synchronized YawiContour Refine()
+	{
+		if(contour == null || volume != null || contour_slice != slice)
+			return null;
+
+		segmenter.SetImage(SegmentedPixels(slice), width, height);
+
+		YawiContour c = segmenter.Refine(contour, seed_x, seed_y);
+		failure = segmenter.GetFailure();
+
+		if(c != null)
+		{
+			contour_lower = segmenter.GetLowerThreshold();
+			contour_upper = segmenter.GetUpperThreshold();
+			SetContour(c);
+		}
+
+		return c;
+	}
+
+	/// sub-pixel outline of the region of the current outline, traced with its
+	/// seed and threshold range, its rounded version becomes the current outline
+	/// returns the outline or null if there's nothing to trace
+	synchronized YawiPolygon SubPixel()
+	{
+		if(contour == null || contour_slice != slice)
+			return null;
+
+		byte[] pixels = SegmentedPixels(slice);
+
+		YawiIntegralImage table = new YawiIntegralImage(pixels, width, height, contour_lower, contour_upper);
+		YawiMarchingSquares ms = new YawiMarchingSquares(table, width, height, settings);
+
+		YawiPolygon poly = ms.Trace(seed_x, seed_y, YawiMarchingSquares.EPSILON_DEF);
+
+		// the rounded points are used by the snapshots and the smoothing
+		if(poly != null)
+			SetContour(poly.Round());
+
+		return poly;
+	}
+
+	/// smooth the current outline, algorithm 1 or 2
+	/// returns the outline or null if there's no outline on the current slice
+	synchronized YawiContour Smooth(int algorithm)
+	{
+		if(contour == null || contour_slice != slice)
+			return null;
+
+		SetContour((algorithm == 1) ? contour.Smooth1() : contour.Smooth2());
+
+		return contour.Copy();
+	}
+
+	public String toString()
+	{
+		return name + " " + width + "x" + height + "x" + planes.length;
+	}
+}
@@ -0,0 +1,95 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Segmentation settings, the values exposed by Edit->Settings.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// the settings used by the segmentation, the values set with Edit->Settings
+class YawiSettings
+{
+	// default values for settings
+	static final int RAD_DEF = 2;
+	static final float PERC_DEF = 0.6f;
+	static final int SIDE_DEF = 5;
+
+	/// threshold estimators used by SetThreshold
+	static final int THR_MINMAX = 0, THR_PERCENTILE = 1, THR_SIGMA = 2;
+	static final String[] THR_NAMES = {"Min/max", "Percentiles", "Mean +/- k sigma"};
+
+	static final int THR_DEF = THR_MINMAX;
+	static final float TAIL_DEF = 0.05f;
+	static final float K_DEF = 2.5f;
+	static final float LEAK_DEF = 0;
+	static final int SNAP_DEF = 0;
+	static final int COLOR_DEF = YawiColorDistance.LAB;
+
+	/// Inside - radius threshold
+	int _rad_ts = RAD_DEF;
+	/// Inside - minimum percentage
+	float _min_perc = PERC_DEF;
+	/// SetThreshold - side
+	int _side = SIDE_DEF;
+	/// SetThreshold - estimator
+	int _thr_mode = THR_DEF;
+	/// SetThreshold - fraction of the pixels discarded at each end by THR_PERCENTILE
+	float _thr_tail = TAIL_DEF;
+	/// SetThreshold - sigma multiplier of THR_SIGMA
+	float _thr_k = K_DEF;
+	/// TraceEdge - leak guard: largest fraction of the slice covered by the bounds
+	/// of an outline, 0 to disable the guard
+	float _leak_frac = LEAK_DEF;
+	/// SetThreshold - seed snapping: radius of the neighbourhood of the seed searched
+	/// for the most homogeneous square, 0 to use the seed as it is
+	int _snap_rad = SNAP_DEF;
+	/// RGB images - distance from the colour of the seed, YawiColorDistance.PER_CHANNEL or LAB
+	int _color_mode = COLOR_DEF;
+
+	YawiSettings() { }
+
+	YawiSettings(int side, int rad_ts, float min_perc)
+	{
+		_side = side;
+		_rad_ts = rad_ts;
+		_min_perc = min_perc;
+	}
+
+	/// copy constructor
+	YawiSettings(YawiSettings s)
+	{
+		this(s._side, s._rad_ts, s._min_perc);
+
+		_thr_mode = s._thr_mode;
+		_thr_tail = s._thr_tail;
+		_thr_k = s._thr_k;
+		_leak_frac = s._leak_frac;
+		_snap_rad = s._snap_rad;
+		_color_mode = s._color_mode;
+	}
+
+	public String toString()
+	{
+		String s = "side: " + _side + " radius: " + _rad_ts + " percentage: " + _min_perc;
+
+		if(_thr_mode == THR_PERCENTILE)
+			s += " threshold: percentiles " + _thr_tail;
+		else if(_thr_mode == THR_SIGMA)
+			s += " threshold: sigma " + _thr_k;
+
+		if(_leak_frac > 0)
+			s += " leak guard: " + _leak_frac;
+
+		if(_snap_rad > 0)
+			s += " seed snapping: " + _snap_rad;
+
+		if(_color_mode != COLOR_DEF)
+			s += " colour: " + YawiColorDistance.MODE_NAMES[_color_mode];
+
+		return s;
+	}
+}
@@ -0,0 +1,231 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// On-disk cache of the slices converted to 8-bit gray by Import
+// sequence. Every slice is a raw plane in its own file, named after
+// the source path, size and modification time, so a study opened
+// again is read with a memory mapping instead of being decoded and
+// converted. Enable it with -Dyawi.cache=<directory>.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.process.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/// raw 8-bit planes of converted slices, keyed by source path, size and mtime
+class YawiSliceCache
+{
+	/// system property with the cache directory
+	static final String CACHE_PROPERTY = "yawi.cache";
+
+	/// "YAWI"
+	private static final int MAGIC = 0x59415749;
+	private static final int VERSION = 1;
+	/// size of the header without the path
+	private static final int HEADER = 40;
+
+	/// a cached slice, the pixels are read only when needed
+	static class Slice
+	{
+		final int width;
+		final int height;
+		/// type of the source image (ImagePlus.GRAY8, COLOR_RGB, ...)
+		final int type;
+
+		private final File file;
+		private final long offset;
+
+		Slice(File file, long offset, int width, int height, int type)
+		{
+			this.file = file;
+			this.offset = offset;
+			this.width = width;
+			this.height = height;
+			this.type = type;
+		}
+
+		/// the plane, copied in one go from a read only mapping of the file
+		byte[] Pixels() throws IOException
+		{
+			FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+			try
+			{
+				MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, offset, (long)width * height);
+				byte[] pixels = new byte[width * height];
+
+				map.get(pixels);
+
+				return pixels;
+			}
+			finally
+			{
+				ch.close();
+			}
+		}
+	}
+
+	private final File dir;
+
+	YawiSliceCache(File dir)
+	{
+		this.dir = dir;
+	}
+
+	/// the cache set with -Dyawi.cache, null if it's not enabled or the directory can't be created
+	static YawiSliceCache Default()
+	{
+		String path = System.getProperty(CACHE_PROPERTY);
+
+		if(path == null || path.length() == 0)
+			return null;
+
+		File dir = new File(path);
+
+		if(!dir.isDirectory() && !dir.mkdirs())
+			return null;
+
+		return new YawiSliceCache(dir);
+	}
+
+	/// the cached slice of a source file, null if it is not cached or the source has changed
+	Slice Lookup(String src_path)
+	{
+		File src = new File(src_path);
+		File file = CacheFile(src);
+
+		if(!file.isFile())
+			return null;
+
+		try
+		{
+			FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+			try
+			{
+				ByteBuffer head = ByteBuffer.allocate(HEADER);
+
+				while(head.hasRemaining() && ch.read(head) >= 0);
+
+				head.flip();
+
+				if(head.remaining() < HEADER || head.getInt() != MAGIC || head.getInt() != VERSION)
+					return null;
+
+				int width = head.getInt();
+				int height = head.getInt();
+				int type = head.getInt();
+				long length = head.getLong();
+				long mtime = head.getLong();
+				int path_len = head.getInt();
+
+				ByteBuffer path = ByteBuffer.allocate(path_len);
+
+				while(path.hasRemaining() && ch.read(path) >= 0);
+
+				// the name is a hash: the header tells if it's really this file
+				if(length != src.length() || mtime != src.lastModified() ||
+				   !new String(path.array(), "UTF-8").equals(src.getCanonicalPath()))
+					return null;
+
+				long offset = HEADER + path_len;
+
+				if(ch.size() < offset + (long)width * height)
+					return null;
+
+				return new Slice(file, offset, width, height, type);
+			}
+			finally
+			{
+				ch.close();
+			}
+		}
+		catch(IOException ex)
+		{
+			return null;
+		}
+	}
+
+	/// store the converted plane of a source file, the cache is only an
+	/// optimization so it returns false instead of failing
+	boolean Store(String src_path, int type, byte[] pixels, int width, int height)
+	{
+		File src = new File(src_path);
+		File file = CacheFile(src);
+		File tmp = null;
+
+		try
+		{
+			byte[] path = src.getCanonicalPath().getBytes("UTF-8");
+
+			ByteBuffer head = ByteBuffer.allocate(HEADER + path.length);
+			head.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(type);
+			head.putLong(src.length()).putLong(src.lastModified()).putInt(path.length);
+			head.put(path);
+
+			// written aside and renamed, a reader never sees half a file
+			tmp = File.createTempFile(file.getName(), ".tmp", dir);
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+
+			try
+			{
+				out.write(head.array());
+				out.write(pixels, 0, width * height);
+			}
+			finally
+			{
+				out.close();
+			}
+
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			return true;
+		}
+		catch(IOException ex)
+		{
+			if(tmp != null)
+				tmp.delete();
+
+			return false;
+		}
+	}
+
+	/// the cache file of a source: a hash of path, size, mtime and of the
+	/// scaling option of the conversion, that changes the converted values
+	private File CacheFile(File src)
+	{
+		String key;
+
+		try
+		{
+			key = src.getCanonicalPath();
+		}
+		catch(IOException ex)
+		{
+			key = src.getAbsolutePath();
+		}
+
+		key += "|" + src.length() + "|" + src.lastModified() + "|" + ImageConverter.getDoScaling();
+
+		// FNV-1a
+		long hash = 0xcbf29ce484222325L;
+
+		for(int i = 0; i < key.length(); i++)
+			hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+
+		return new File(dir, Long.toHexString(hash) + ".raw");
+	}
+}
@@ -0,0 +1,234 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Snapshot export: the 8-bit slices are converted through their LUT
+// straight into a RGB buffer, the outline is drawn on it and the PNG
+// is encoded on a background thread.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+/// renders and saves PNG snapshots of 8-bit slices with their outlines
+class YawiSnapshot
+{
+	/// color of the outline, the yellow of the old snapshots
+	static final int ROI_COLOR = 0xffff00;
+
+	/// background thread for the PNG encoding
+	private static ExecutorService encoder = null;
+
+	/// RGB values of the 256 entries of a LUT
+	static int[] Lut(IndexColorModel cm)
+	{
+		int[] lut = new int[256];
+		int size = Math.min(cm.getMapSize(), 256);
+
+		for(int i = 0; i < size; i++)
+			lut[i] = cm.getRGB(i) & 0xffffff;
+
+		return lut;
+	}
+
+	/// gray LUT, used when the slice has no color model
+	static int[] GrayLut()
+	{
+		int[] lut = new int[256];
+
+		for(int i = 0; i < 256; i++)
+			lut[i] = (i << 16) | (i << 8) | i;
+
+		return lut;
+	}
+
+	/// convert a 8-bit plane to RGB and draw the outline on it, contour can be null
+	static int[] Render(byte[] pixels, int width, int height, int[] lut, YawiContour contour)
+	{
+		int[] rgb = new int[width * height];
+
+		for(int i = 0; i < rgb.length; i++)
+			rgb[i] = lut[pixels[i] & 0xff];
+
+		if(contour != null)
+			DrawContour(rgb, width, height, contour, ROI_COLOR);
+
+		return rgb;
+	}
+
+	/// copy a RGB plane and draw the outline on it, contour can be null
+	static int[] Render(int[] pixels, int width, int height, YawiContour contour)
+	{
+		int[] rgb = new int[width * height];
+
+		for(int i = 0; i < rgb.length; i++)
+			rgb[i] = pixels[i] & 0xffffff;
+
+		if(contour != null)
+			DrawContour(rgb, width, height, contour, ROI_COLOR);
+
+		return rgb;
+	}
+
+	/// render a 8-bit plane with lut or a RGB plane
+	static int[] Render(Object pixels, int width, int height, int[] lut, YawiContour contour)
+	{
+		if(pixels instanceof int[])
+			return Render((int[])pixels, width, height, contour);
+
+		return Render((byte[])pixels, width, height, lut, contour);
+	}
+
+	/// draw the closed outline, the segments of a traced outline are horizontal
+	/// or vertical so they are filled directly, the other ones are walked with Bresenham
+	static void DrawContour(int[] rgb, int width, int height, YawiContour contour, int color)
+	{
+		int n = contour.npoints;
+
+		for(int i = 0; i < n; i++)
+		{
+			int j = (i + 1 < n) ? i + 1 : 0;
+
+			int x0 = contour.xpoints[i], y0 = contour.ypoints[i];
+			int x1 = contour.xpoints[j], y1 = contour.ypoints[j];
+
+			if(y0 == y1)
+			{
+				if(y0 < 0 || y0 >= height)
+					continue;
+
+				int x_a = Math.max(Math.min(x0, x1), 0);
+				int x_b = Math.min(Math.max(x0, x1), width - 1);
+				int row = y0 * width;
+
+				for(int x = x_a; x <= x_b; x++)
+					rgb[row + x] = color;
+			}
+			else if(x0 == x1)
+			{
+				if(x0 < 0 || x0 >= width)
+					continue;
+
+				int y_a = Math.max(Math.min(y0, y1), 0);
+				int y_b = Math.min(Math.max(y0, y1), height - 1);
+
+				for(int y = y_a; y <= y_b; y++)
+					rgb[y * width + x0] = color;
+			}
+			else
+			{
+				int dx = Math.abs(x1 - x0), sx = x0 < x1 ? 1 : -1;
+				int dy = -Math.abs(y1 - y0), sy = y0 < y1 ? 1 : -1;
+				int err = dx + dy;
+
+				while(true)
+				{
+					if(x0 >= 0 && y0 >= 0 && x0 < width && y0 < height)
+						rgb[y0 * width + x0] = color;
+
+					if(x0 == x1 && y0 == y1)
+						break;
+
+					int e2 = 2 * err;
+
+					if(e2 >= dy) { err += dy; x0 += sx; }
+					if(e2 <= dx) { err += dx; y0 += sy; }
+				}
+			}
+		}
+	}
+
+	/// encode a RGB buffer as PNG, the buffer is wrapped without copies
+	static void WritePng(int[] rgb, int width, int height, File file) throws IOException
+	{
+		DirectColorModel cm = new DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff);
+		DataBufferInt buffer = new DataBufferInt(rgb, rgb.length);
+		WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, cm.getMasks(), null);
+
+		BufferedImage img = new BufferedImage(cm, raster, false, null);
+
+		if(!ImageIO.write(img, "png", file))
+			throw new IOException("no PNG writer available");
+	}
+
+	/// run a job on the background thread, the jobs are run in order
+	static void Submit(Runnable job) { Encoder().execute(job); }
+
+	/// save the 8-bit or RGB slices of a stack as dir/<prefix>NNNN.png using n_threads workers
+	/// contours[i] is the outline of slice i + 1 and can be null
+	/// returns the number of files written
+	static int ExportStack(Object[] planes, final int width, final int height, final int[] lut,
+						   YawiContour[] contours, File dir, String prefix, int n_threads) throws Exception
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(n_threads, new DaemonFactory("Yawi snapshot"));
+		List<Future<File>> jobs = new ArrayList<Future<File>>();
+
+		try
+		{
+			for(int i = 0; i < planes.length; i++)
+			{
+				final Object pixels = planes[i];
+				final YawiContour contour = (contours != null && i < contours.length) ? contours[i] : null;
+				final File file = new File(dir, prefix + String.format("%04d", i + 1) + ".png");
+
+				jobs.add(pool.submit(new Callable<File>()
+				{
+					public File call() throws IOException
+					{
+						WritePng(Render(pixels, width, height, lut, contour), width, height, file);
+
+						return file;
+					}
+				}));
+			}
+
+			for(Future<File> job : jobs)
+				job.get();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		return jobs.size();
+	}
+
+	private static synchronized ExecutorService Encoder()
+	{
+		if(encoder == null)
+			encoder = Executors.newSingleThreadExecutor(new DaemonFactory("Yawi PNG encoder"));
+
+		return encoder;
+	}
+
+	/// daemon threads, they don't keep ImageJ alive
+	static class DaemonFactory implements ThreadFactory
+	{
+		private final String name;
+		private int count = 0;
+
+		DaemonFactory(String name) { this.name = name; }
+
+		public synchronized Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, name + " " + (++count));
+			t.setDaemon(true);
+
+			return t;
+		}
+	}
+}
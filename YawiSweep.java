@@ -0,0 +1,423 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Parameter sweep: segments a set of annotated seeds with every
+// combination of the settings and scores the results against the
+// reference masks (Dice/IoU) in order to tune the settings.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.*;
+import ij.io.*;
+import ij.process.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// evaluates a grid of settings on a set of annotated seeds
+class YawiSweep
+{
+	/// an annotated seed: a slice, the point clicked and the expected region
+	static class Case
+	{
+		final String name;
+		final byte[] pixels;
+		final int width;
+		final int height;
+		final int seed_x;
+		final int seed_y;
+		/// reference mask, true for the pixels of the expected region
+		final boolean[] ref_mask;
+		/// number of pixels of the reference mask
+		final int ref_area;
+
+		/// moment tables of the plane, shared by the jobs of the mean/sigma estimator
+		private YawiMomentImage moments = null;
+
+		/// summed area tables shared by the grid points, the key is the threshold range
+		private final ConcurrentHashMap<Integer, YawiIntegralImage> tables =
+			new ConcurrentHashMap<Integer, YawiIntegralImage>();
+
+		Case(String name, byte[] pixels, int width, int height, int seed_x, int seed_y, boolean[] ref_mask)
+		{
+			this.name = name;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.seed_x = seed_x;
+			this.seed_y = seed_y;
+			this.ref_mask = ref_mask;
+
+			int area = 0;
+
+			for(int i = 0; i < ref_mask.length; i++)
+				if(ref_mask[i])
+					area++;
+
+			ref_area = area;
+		}
+
+		/// summed area table for a threshold range, built once and shared
+		YawiIntegralImage GetTable(int lower, int upper)
+		{
+			Integer key = Integer.valueOf((lower << 8) | upper);
+			YawiIntegralImage table = tables.get(key);
+
+			if(table == null)
+			{
+				table = new YawiIntegralImage(pixels, width, height, lower, upper);
+
+				YawiIntegralImage prev = tables.putIfAbsent(key, table);
+
+				if(prev != null)
+					table = prev;
+			}
+
+			return table;
+		}
+
+		/// moment tables of the plane, built once and shared
+		synchronized YawiMomentImage GetMoments()
+		{
+			if(moments == null)
+				moments = new YawiMomentImage(pixels, width, height);
+
+			return moments;
+		}
+	}
+
+	/// scores of a grid point
+	static class Result
+	{
+		final YawiSettings settings;
+		/// sum of the scores of every case
+		double dice_sum;
+		double iou_sum;
+		/// number of cases without a selection
+		int failures;
+		/// time spent segmenting the cases
+		long time_ns;
+		/// number of evaluated cases
+		int cases;
+
+		Result(YawiSettings settings) { this.settings = settings; }
+
+		double Dice() { return cases > 0 ? dice_sum / cases : 0; }
+
+		double IoU() { return cases > 0 ? iou_sum / cases : 0; }
+
+		public String toString()
+		{
+			return settings + " dice: " + Format(Dice()) + " iou: " + Format(IoU()) +
+				" failures: " + failures + " time: " + (time_ns / 1000) + " us";
+		}
+	}
+
+	// grid values
+	private final int[] sides;
+	private final int[] radii;
+	private final float[] percs;
+	/// threshold estimator used for every grid point
+	private int thr_mode = YawiSettings.THR_DEF;
+
+	/// results of the last run, one for each grid point
+	private Result[] results = null;
+	/// wall time of the last run
+	private long run_ns = 0;
+	/// time spent building thresholds and tables in the last run
+	private long prep_ns = 0;
+
+	YawiSweep(int[] sides, int[] radii, float[] percs)
+	{
+		this.sides = sides;
+		this.radii = radii;
+		this.percs = percs;
+	}
+
+	/// set the threshold estimator, one of YawiSettings.THR_*
+	void SetThresholdMode(int mode) { thr_mode = mode; }
+
+	/// the grid of the Settings dialog
+	static YawiSweep DefaultGrid()
+	{
+		return new YawiSweep(new int[] {2, 3, 4, 5, 6},
+							 new int[] {2, 3, 4, 5},
+							 new float[] {0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f, 0.9f, 1.0f});
+	}
+
+	/// index of a grid point in the results
+	private int Index(int s, int r, int p) { return (s * radii.length + r) * percs.length + p; }
+
+	/// evaluate every grid point on the cases using n_threads workers
+	Result[] Run(final Case[] cases, int n_threads) throws Exception
+	{
+		final Result[] res = new Result[sides.length * radii.length * percs.length];
+
+		for(int s = 0; s < sides.length; s++)
+			for(int r = 0; r < radii.length; r++)
+				for(int p = 0; p < percs.length; p++)
+				{
+					res[Index(s, r, p)] = new Result(new YawiSettings(sides[s], radii[r], percs[p]));
+					res[Index(s, r, p)].settings._thr_mode = thr_mode;
+				}
+
+		long start = System.nanoTime();
+
+		ExecutorService pool = Executors.newFixedThreadPool(n_threads);
+		List<Future<Long>> jobs = new ArrayList<Future<Long>>();
+
+		try
+		{
+			// a job for every case and side: the threshold and its table are shared
+			// by all the radius/percentage combinations of the job
+			for(int c = 0; c < cases.length; c++)
+			{
+				for(int s = 0; s < sides.length; s++)
+				{
+					final Case cs = cases[c];
+					final int side_ind = s;
+
+					jobs.add(pool.submit(new Callable<Long>()
+					{
+						public Long call() { return Long.valueOf(RunCase(cs, side_ind, res)); }
+					}));
+				}
+			}
+
+			long prep = 0;
+
+			for(Future<Long> job : jobs)
+				prep += job.get().longValue();
+
+			prep_ns = prep;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		run_ns = System.nanoTime() - start;
+		results = res;
+
+		return res;
+	}
+
+	/// evaluate a case for a side value, returns the preparation time
+	private long RunCase(Case cs, int side_ind, Result[] res)
+	{
+		long t0 = System.nanoTime();
+
+		YawiSettings settings = new YawiSettings(sides[side_ind], radii[0], percs[0]);
+		settings._thr_mode = thr_mode;
+
+		YawiSegmenter seg = new YawiSegmenter(cs.pixels, cs.width, cs.height, settings);
+
+		if(thr_mode == YawiSettings.THR_SIGMA)
+			seg.SetMomentImage(cs.GetMoments());
+
+		seg.SetThreshold(cs.seed_x, cs.seed_y);
+
+		int lower = seg.GetLowerThreshold();
+		int upper = seg.GetUpperThreshold();
+
+		seg.SetIntegralImage(cs.GetTable(lower, upper));
+
+		long prep = System.nanoTime() - t0;
+
+		boolean[] mask = new boolean[cs.width * cs.height];
+
+		for(int r = 0; r < radii.length; r++)
+		{
+			for(int p = 0; p < percs.length; p++)
+			{
+				settings._rad_ts = radii[r];
+				settings._min_perc = percs[p];
+
+				long t1 = System.nanoTime();
+
+				YawiContour contour = seg.Outline(cs.seed_x, cs.seed_y);
+
+				double dice = 0;
+				double iou = 0;
+
+				if(contour != null)
+				{
+					Arrays.fill(mask, false);
+
+					int area = contour.FillMask(mask, cs.width, cs.height);
+					int common = 0;
+
+					for(int i = 0; i < mask.length; i++)
+						if(mask[i] && cs.ref_mask[i])
+							common++;
+
+					int total = area + cs.ref_area;
+
+					if(total > 0)
+					{
+						dice = 2.0 * common / total;
+						iou = (double)common / (total - common);
+					}
+				}
+
+				long elapsed = System.nanoTime() - t1;
+
+				Result result = res[Index(side_ind, r, p)];
+
+				synchronized(result)
+				{
+					result.cases++;
+					result.dice_sum += dice;
+					result.iou_sum += iou;
+					result.time_ns += elapsed;
+
+					if(contour == null)
+						result.failures++;
+				}
+			}
+		}
+
+		return prep;
+	}
+
+	/// the grid point with the best mean Dice score of the last run
+	Result Best()
+	{
+		Result best = null;
+
+		if(results != null)
+			for(int i = 0; i < results.length; i++)
+				if(best == null || results[i].Dice() > best.Dice() ||
+				   (results[i].Dice() == best.Dice() && results[i].time_ns < best.time_ns))
+					best = results[i];
+
+		return best;
+	}
+
+	/// a text report of the last run
+	String Report()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("                  SWEEP\n\n");
+		sb.append("grid points: " + (results == null ? 0 : results.length) + "\n");
+		sb.append("total time: " + (run_ns / 1000000) + " ms\n");
+		sb.append("setup time: " + (prep_ns / 1000000) + " ms\n\n");
+
+		if(results != null)
+			for(int i = 0; i < results.length; i++)
+				sb.append(results[i]).append('\n');
+
+		Result best = Best();
+
+		if(best != null)
+			sb.append("\nbest: ").append(best).append('\n');
+
+		return sb.toString();
+	}
+
+	private static String Format(double v) { return String.valueOf(Math.round(v * 1000) / 1000.0); }
+
+	/// load a case, the image is converted to 8-bit gray and the mask
+	/// contains the non zero pixels of the mask image
+	static Case LoadCase(String img_file, String mask_file, int seed_x, int seed_y)
+	{
+		Opener opener = new Opener();
+
+		ImagePlus img = opener.openImage(img_file);
+		ImagePlus mask = opener.openImage(mask_file);
+
+		if(img == null || mask == null)
+			return null;
+
+		if(img.getWidth() != mask.getWidth() || img.getHeight() != mask.getHeight())
+			return null;
+
+		if(img.getType() != ImagePlus.GRAY8)
+			new ImageConverter(img).convertToGray8();
+
+		ImageProcessor mask_ip = mask.getProcessor();
+		boolean[] ref = new boolean[img.getWidth() * img.getHeight()];
+
+		for(int y = 0; y < img.getHeight(); y++)
+			for(int x = 0; x < img.getWidth(); x++)
+				ref[y * img.getWidth() + x] = mask_ip.getPixel(x, y) != 0;
+
+		return new Case(img_file, (byte[])img.getProcessor().getPixels(),
+						img.getWidth(), img.getHeight(), seed_x, seed_y, ref);
+	}
+
+	/// command line usage: YawiSweep <cases file> [threads] [minmax|percentile|sigma]
+	/// every line of the cases file is: <image> <mask> <seed x> <seed y>
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 1)
+		{
+			System.err.println("usage: YawiSweep <cases file> [threads] [minmax|percentile|sigma]");
+			return;
+		}
+
+		int n_threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		List<Case> cases = new ArrayList<Case>();
+		BufferedReader in = new BufferedReader(new FileReader(args[0]));
+
+		try
+		{
+			String line;
+
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+
+				if(line.length() == 0 || line.startsWith("#"))
+					continue;
+
+				String[] tok = line.split("\\s+");
+
+				if(tok.length < 4)
+				{
+					System.err.println("Error, invalid line: " + line);
+					continue;
+				}
+
+				Case cs = LoadCase(tok[0], tok[1], Integer.parseInt(tok[2]), Integer.parseInt(tok[3]));
+
+				if(cs != null)
+					cases.add(cs);
+				else
+					System.err.println("Error loading the case: " + line);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		YawiSweep sweep = DefaultGrid();
+
+		if(args.length > 2)
+		{
+			if(args[2].equals("percentile"))
+				sweep.SetThresholdMode(YawiSettings.THR_PERCENTILE);
+			else if(args[2].equals("sigma"))
+				sweep.SetThresholdMode(YawiSettings.THR_SIGMA);
+		}
+
+		sweep.Run(cases.toArray(new Case[cases.size()]), n_threads);
+
+		System.out.print(sweep.Report());
+	}
+}
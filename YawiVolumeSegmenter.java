@@ -0,0 +1,505 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// 3D segmentation of a stack: the region is grown through the voxels
+// whose cubic Inside window has enough voxels inside the threshold.
+// The stack is split in slabs labelled in parallel, the labels are
+// merged at the slab boundaries.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// segments the 3D region containing a seed voxel
+class YawiVolumeSegmenter
+{
+	/// connectivity
+	static final int CONN_6 = 6, CONN_26 = 26;
+
+	/// result of a 3D segmentation
+	static class Result
+	{
+		/// outlines of every slice, contours[z] is empty if the region doesn't cross slice z + 1
+		final YawiContour[][] contours;
+		/// voxels of the region in every slice
+		final int[] slice_voxels;
+		/// voxels of the region
+		final long voxels;
+		/// threshold range
+		final int lower_threshold;
+		final int upper_threshold;
+		/// time of the segmentation
+		final long time_ns;
+
+		Result(YawiContour[][] contours, int[] slice_voxels, long voxels, int lower, int upper, long time_ns)
+		{
+			this.contours = contours;
+			this.slice_voxels = slice_voxels;
+			this.voxels = voxels;
+			lower_threshold = lower;
+			upper_threshold = upper;
+			this.time_ns = time_ns;
+		}
+	}
+
+	/// runs of member voxels of a slice, sorted by row and x
+	private static class Runs
+	{
+		/// first run of every row, row y has the runs row_start[y] .. row_start[y + 1] - 1
+		int[] row_start;
+		int[] x_start;
+		int[] x_end;
+		int count;
+		/// id of the first run of the slice in the union find
+		int offset;
+	}
+
+	private final Object[] planes;
+	private final int width;
+	private final int height;
+	private final int depth;
+	private final YawiSettings settings;
+	private final int connectivity;
+	private final int n_threads;
+
+	/// union find parents, indexed by run id
+	private int[] parent;
+
+	YawiVolumeSegmenter(Object[] planes, int width, int height, YawiSettings settings, int connectivity, int n_threads)
+	{
+		this.planes = planes;
+		this.width = width;
+		this.height = height;
+		this.depth = planes.length;
+		this.settings = settings;
+		this.connectivity = connectivity;
+		this.n_threads = Math.max(1, n_threads);
+	}
+
+	/// segment the region containing the voxel (x,y) of slice z (0-based)
+	/// returns null if the seed is not inside
+	Result Segment(int x, int y, int z) throws Exception
+	{
+		long start = System.nanoTime();
+
+		// threshold from the seed slice, as in 2D
+		YawiSegmenter seg = new YawiSegmenter((byte[])planes[z], width, height, settings);
+		seg.SetThreshold(x, y);
+
+		// the seed moved by the seed snapping
+		x = seg.GetSeedX();
+		y = seg.GetSeedY();
+
+		final int lower = seg.GetLowerThreshold();
+		final int upper = seg.GetUpperThreshold();
+
+		final Runs[] runs = new Runs[depth];
+
+		// slabs of consecutive slices
+		int n_slabs = Math.min(n_threads, depth);
+		final int[] slab_start = new int[n_slabs + 1];
+
+		for(int i = 0; i <= n_slabs; i++)
+			slab_start[i] = (int)((long)depth * i / n_slabs);
+
+		ExecutorService pool = Executors.newFixedThreadPool(n_threads, new YawiSnapshot.DaemonFactory("Yawi 3D"));
+
+		try
+		{
+			// runs of the member voxels
+			List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+
+			for(int i = 0; i < n_slabs; i++)
+			{
+				final int z0 = slab_start[i];
+				final int z1 = slab_start[i + 1];
+
+				jobs.add(new Callable<Object>()
+				{
+					public Object call() { FindRuns(z0, z1, lower, upper, runs); return null; }
+				});
+			}
+
+			RunAll(pool, jobs);
+
+			int total = 0;
+
+			for(int k = 0; k < depth; k++)
+			{
+				runs[k].offset = total;
+				total += runs[k].count;
+			}
+
+			parent = new int[total];
+
+			for(int i = 0; i < total; i++)
+				parent[i] = i;
+
+			// labelling of every slab, the slabs use disjoint ranges of run ids
+			jobs.clear();
+
+			for(int i = 0; i < n_slabs; i++)
+			{
+				final int z0 = slab_start[i];
+				final int z1 = slab_start[i + 1];
+
+				jobs.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						for(int k = z0; k < z1; k++)
+						{
+							ConnectSlice(runs[k]);
+
+							if(k > z0)
+								ConnectSlices(runs[k - 1], runs[k]);
+						}
+
+						return null;
+					}
+				});
+			}
+
+			RunAll(pool, jobs);
+
+			// merge the labels at the slab boundaries
+			for(int i = 1; i < n_slabs; i++)
+				ConnectSlices(runs[slab_start[i] - 1], runs[slab_start[i]]);
+
+			int seed_run = FindRun(runs[z], x, y);
+
+			if(seed_run < 0)
+				return null;
+
+			// runs of the region, computed here so the jobs below only read the labels
+			int root = Find(runs[z].offset + seed_run);
+			final boolean[] selected = new boolean[total];
+
+			for(int i = 0; i < total; i++)
+				selected[i] = (Find(i) == root);
+
+			// outlines of the region in every slice
+			final YawiContour[][] contours = new YawiContour[depth][];
+			final int[] slice_voxels = new int[depth];
+
+			jobs.clear();
+
+			for(int i = 0; i < n_slabs; i++)
+			{
+				final int z0 = slab_start[i];
+				final int z1 = slab_start[i + 1];
+
+				jobs.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						byte[] mask = new byte[width * height];
+
+						for(int k = z0; k < z1; k++)
+							contours[k] = SliceContours(runs[k], selected, mask, slice_voxels, k);
+
+						return null;
+					}
+				});
+			}
+
+			RunAll(pool, jobs);
+
+			long voxels = 0;
+
+			for(int k = 0; k < depth; k++)
+				voxels += slice_voxels[k];
+
+			return new Result(contours, slice_voxels, voxels, lower, upper, System.nanoTime() - start);
+		}
+		finally
+		{
+			pool.shutdown();
+			parent = null;
+		}
+	}
+
+	private static void RunAll(ExecutorService pool, List<Callable<Object>> jobs) throws Exception
+	{
+		List<Future<Object>> res = pool.invokeAll(jobs);
+
+		// rethrow the errors of the jobs
+		for(Future<Object> f : res)
+			f.get();
+	}
+
+	/// pixels inside the threshold in the square of every pixel of slice z
+	private int[] WindowCounts(int z, int lower, int upper)
+	{
+		int rad = settings._rad_ts;
+		int[] counts = new int[width * height];
+
+		if(z < 0 || z >= depth)
+			return counts;
+
+		YawiIntegralImage table = new YawiIntegralImage((byte[])planes[z], width, height, lower, upper);
+
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)
+				counts[y * width + x] = table.Count(x - rad, y - rad, x + rad, y + rad);
+
+		return counts;
+	}
+
+	/// runs of the member voxels of the slices z0 .. z1 - 1, the cubic window
+	/// count is a running sum of the square counts of 2 * rad + 1 slices
+	private void FindRuns(int z0, int z1, int lower, int upper, Runs[] runs)
+	{
+		int rad = settings._rad_ts;
+		int side = 2 * rad + 1;
+		int area = side * side * side;
+
+		// smallest count passing the same test of Inside(x, y, direction)
+		int min_count = 0;
+
+		while(min_count <= area && ((float)min_count) / area < settings._min_perc)
+			min_count++;
+
+		int n = width * height;
+		int[] sum = new int[n];
+
+		// square counts of the slices in the window, a ring buffer
+		int[][] ring = new int[side][];
+
+		for(int k = z0 - rad; k <= z0 + rad; k++)
+		{
+			int[] c = WindowCounts(k, lower, upper);
+			ring[(k - z0 + rad) % side] = c;
+
+			for(int i = 0; i < n; i++)
+				sum[i] += c[i];
+		}
+
+		for(int z = z0; z < z1; z++)
+		{
+			if(z > z0)
+			{
+				// slide the window: remove slice z - rad - 1, add slice z + rad
+				int slot = (z - 1 - z0) % side;
+				int[] old = ring[slot];
+				int[] c = WindowCounts(z + rad, lower, upper);
+
+				for(int i = 0; i < n; i++)
+					sum[i] += c[i] - old[i];
+
+				ring[slot] = c;
+			}
+
+			runs[z] = ExtractRuns(sum, min_count);
+		}
+	}
+
+	/// runs of the voxels with count >= min_count
+	private Runs ExtractRuns(int[] sum, int min_count)
+	{
+		Runs r = new Runs();
+		r.row_start = new int[height + 1];
+
+		int cap = 64;
+		r.x_start = new int[cap];
+		r.x_end = new int[cap];
+
+		for(int y = 0; y < height; y++)
+		{
+			r.row_start[y] = r.count;
+
+			int row = y * width;
+			int x = 0;
+
+			while(x < width)
+			{
+				if(sum[row + x] < min_count)
+				{
+					x++;
+					continue;
+				}
+
+				int s = x;
+
+				while(x < width && sum[row + x] >= min_count)
+					x++;
+
+				if(r.count == cap)
+				{
+					cap *= 2;
+
+					int[] ts = new int[cap];
+					int[] te = new int[cap];
+
+					System.arraycopy(r.x_start, 0, ts, 0, r.count);
+					System.arraycopy(r.x_end, 0, te, 0, r.count);
+
+					r.x_start = ts;
+					r.x_end = te;
+				}
+
+				r.x_start[r.count] = s;
+				r.x_end[r.count] = x - 1;
+				r.count++;
+			}
+		}
+
+		r.row_start[height] = r.count;
+
+		return r;
+	}
+
+	/// union of the connected runs of a slice
+	private void ConnectSlice(Runs r)
+	{
+		// 26-connectivity is 8-connectivity in the plane
+		int ext = (connectivity == CONN_26) ? 1 : 0;
+
+		for(int y = 1; y < height; y++)
+			ConnectRows(r, y - 1, r, y, ext);
+	}
+
+	/// union of the connected runs of two consecutive slices
+	private void ConnectSlices(Runs a, Runs b)
+	{
+		for(int y = 0; y < height; y++)
+		{
+			if(connectivity == CONN_26)
+			{
+				for(int dy = -1; dy <= 1; dy++)
+					if(y + dy >= 0 && y + dy < height)
+						ConnectRows(a, y + dy, b, y, 1);
+			}
+			else
+				ConnectRows(a, y, b, y, 0);
+		}
+	}
+
+	/// union of the overlapping runs of two rows, ext = 1 also joins diagonal runs
+	private void ConnectRows(Runs a, int ya, Runs b, int yb, int ext)
+	{
+		int i = a.row_start[ya], i_end = a.row_start[ya + 1];
+		int k = b.row_start[yb], k_end = b.row_start[yb + 1];
+
+		while(i < i_end && k < k_end)
+		{
+			if(a.x_start[i] <= b.x_end[k] + ext && b.x_start[k] <= a.x_end[i] + ext)
+				Union(a.offset + i, b.offset + k);
+
+			// advance the run that ends first
+			if(a.x_end[i] < b.x_end[k])
+				i++;
+			else
+				k++;
+		}
+	}
+
+	private int Find(int i)
+	{
+		while(parent[i] != i)
+		{
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+
+		return i;
+	}
+
+	private void Union(int a, int b)
+	{
+		a = Find(a);
+		b = Find(b);
+
+		// the smaller id is the root, so the roots of a slab stay in the slab
+		if(a < b)
+			parent[b] = a;
+		else if(b < a)
+			parent[a] = b;
+	}
+
+	/// index of the run of the slice containing (x,y), -1 if none
+	private static int FindRun(Runs r, int x, int y)
+	{
+		for(int i = r.row_start[y]; i < r.row_start[y + 1]; i++)
+			if(r.x_start[i] <= x && x <= r.x_end[i])
+				return i;
+
+		return -1;
+	}
+
+	/// outlines of the runs of a slice belonging to the region
+	private YawiContour[] SliceContours(Runs r, boolean[] selected, byte[] mask, int[] slice_voxels, int z)
+	{
+		Arrays.fill(mask, (byte)0);
+
+		int voxels = 0;
+
+		for(int y = 0; y < height; y++)
+		{
+			for(int i = r.row_start[y]; i < r.row_start[y + 1]; i++)
+			{
+				if(!selected[r.offset + i])
+					continue;
+
+				for(int x = r.x_start[i]; x <= r.x_end[i]; x++)
+					mask[y * width + x] = (byte)255;
+
+				voxels += r.x_end[i] - r.x_start[i] + 1;
+			}
+		}
+
+		slice_voxels[z] = voxels;
+
+		if(voxels == 0)
+			return new YawiContour[0];
+
+		// trace every 2D component from its upper left pixel; the leak guard is for
+		// the clicks, a component of the mask can touch the border or be large
+		YawiSettings mask_settings = new YawiSettings(settings);
+		mask_settings._leak_frac = 0;
+
+		YawiSegmenter tracer = new YawiSegmenter(mask, width, height, mask_settings);
+		tracer.SetThresholds(255, 255);
+		tracer.SetMaxSteps(4 * (width + 1) * (height + 1));
+
+		boolean[] done = new boolean[width * height];
+		List<YawiContour> list = new ArrayList<YawiContour>();
+
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
+			{
+				int ind = y * width + x;
+
+				if(mask[ind] == 0 || done[ind])
+					continue;
+
+				if((x > 0 && mask[ind - 1] != 0) || (y > 0 && mask[ind - width] != 0))
+					continue;
+
+				YawiContour c = tracer.TraceFrom(x, y);
+
+				if(c != null)
+				{
+					c.FillMask(done, width, height);
+					list.add(c);
+				}
+
+				done[ind] = true;
+			}
+		}
+
+		return list.toArray(new YawiContour[list.size()]);
+	}
+}
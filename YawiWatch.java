@@ -0,0 +1,270 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Watch folder ingestion: the slices written in a directory by a
+// scanner are segmented while the acquisition goes on. A file is read
+// when its size has not changed for a while, the slices are taken in
+// name order and the seed of a slice is the centroid of the outline of
+// the previous one, so a region moving from slice to slice is
+// followed; every outline is appended to the ROIs file as soon as it
+// is traced. Run with:
+//		java -cp ij.jar:. YawiWatch <directory> <seed x> <seed y> <ROIs file> [idle seconds]
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import ij.*;
+import ij.io.*;
+import ij.process.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/// segments the slices of a directory as they arrive
+class YawiWatch
+{
+	/// milliseconds a file has to keep its size before it is read
+	static final long SETTLE_DEF = 500;
+
+	private final File dir;
+	private final YawiSettings settings;
+	private final YawiRoiWriter writer;
+	private final long settle_ms;
+
+	/// seed of the next slice
+	private int seed_x;
+	private int seed_y;
+
+	/// slices read, slices without an outline
+	private int slices = 0;
+	private int failures = 0;
+
+	/// files already read
+	private final Set<String> done = new HashSet<String>();
+	/// files not read yet, in name order: last size seen and when it was seen
+	private final TreeMap<String, long[]> pending = new TreeMap<String, long[]>();
+
+	YawiWatch(File dir, int seed_x, int seed_y, YawiSettings settings, YawiRoiWriter writer, long settle_ms)
+	{
+		this.dir = dir;
+		this.seed_x = seed_x;
+		this.seed_y = seed_y;
+		this.settings = settings;
+		this.writer = writer;
+		this.settle_ms = settle_ms;
+	}
+
+	int GetSlices() { return slices; }
+
+	int GetFailures() { return failures; }
+
+	/// watch the directory, the files already in it are read first; it returns
+	/// after idle_ms without new slices, never if idle_ms is 0
+	void Run(long idle_ms) throws IOException, InterruptedException
+	{
+		WatchService ws = FileSystems.getDefault().newWatchService();
+
+		try
+		{
+			dir.toPath().register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+			String[] files = dir.list();
+
+			if(files != null)
+				for(String name : files)
+					Seen(name);
+
+			long last = System.currentTimeMillis();
+
+			while(true)
+			{
+				WatchKey key = ws.poll(Math.max(settle_ms / 4, 10), TimeUnit.MILLISECONDS);
+
+				if(key != null)
+				{
+					for(WatchEvent<?> event : key.pollEvents())
+						if(event.context() instanceof Path)
+							Seen(((Path)event.context()).toString());
+
+					key.reset();
+				}
+
+				long now = System.currentTimeMillis();
+
+				if(Process(now) > 0 || !pending.isEmpty())
+					last = now;
+				else if(idle_ms > 0 && now - last > idle_ms)
+					break;
+			}
+		}
+		finally
+		{
+			ws.close();
+		}
+	}
+
+	/// a file has been created or written
+	private void Seen(String name)
+	{
+		if(name.startsWith(".") || done.contains(name) || pending.containsKey(name))
+			return;
+
+		pending.put(name, new long[] { -1, 0 });
+	}
+
+	/// read the settled files in name order, a file still being written stops
+	/// the ones after it so the seeds follow the slices order; the sizes of all
+	/// the pending files are checked first, so the files written together
+	/// settle together and not one after the other
+	/// returns the number of files read
+	private int Process(long now) throws IOException
+	{
+		for(Iterator<Map.Entry<String, long[]>> it = pending.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<String, long[]> e = it.next();
+			File file = new File(dir, e.getKey());
+			long[] seen = e.getValue();
+
+			// a directory or a file already moved away
+			if(!file.isFile())
+			{
+				it.remove();
+				continue;
+			}
+
+			long size = file.length();
+
+			if(size != seen[0])
+			{
+				seen[0] = size;
+				seen[1] = now;
+			}
+		}
+
+		int n = 0;
+
+		for(Iterator<Map.Entry<String, long[]>> it = pending.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<String, long[]> e = it.next();
+
+			if(now - e.getValue()[1] < settle_ms)
+				break;
+
+			it.remove();
+			done.add(e.getKey());
+
+			Segment(new File(dir, e.getKey()));
+			n++;
+		}
+
+		return n;
+	}
+
+	/// segment a slice and move the seed to the centroid of its outline
+	private void Segment(File file) throws IOException
+	{
+		ImagePlus img = new Opener().openImage(file.getPath());
+
+		if(img == null)
+		{
+			System.out.println(file.getName() + ": not an image, skipped");
+			return;
+		}
+
+		if(img.getType() != ImagePlus.GRAY8)
+			new ImageConverter(img).convertToGray8();
+
+		byte[] pixels = (byte[])img.getProcessor().getPixels();
+		int width = img.getWidth();
+		int height = img.getHeight();
+
+		slices++;
+
+		YawiSegmenter seg = new YawiSegmenter(pixels, width, height, settings);
+		YawiContour c = seg.Segment(seed_x, seed_y);
+
+		if(c == null)
+		{
+			failures++;
+			System.out.println(file.getName() + ": no selection at " + seed_x + "," + seed_y + " (" +
+							   YawiSegmenter.FAIL_NAMES[seg.GetFailure()] + ")");
+			return;
+		}
+
+		writer.Write(file.getName(), slices, c, pixels, width, height);
+
+		System.out.println(file.getName() + ": " + c.npoints + " points, area " + YawiRoiWriter.Format(c.Area()) +
+						   ", seed " + seed_x + "," + seed_y);
+
+		// the seed of the next slice, if the centroid is inside the outline
+		YawiChainCode chain = YawiChainCode.Of(c);
+
+		if(chain != null)
+		{
+			YawiChainCode.Moments m = chain.GetMoments();
+			int cx = (int)Math.floor(m.CentroidX());
+			int cy = (int)Math.floor(m.CentroidY());
+
+			if(c.Contains(cx + 0.5, cy + 0.5))
+			{
+				seed_x = cx;
+				seed_y = cy;
+			}
+		}
+	}
+
+	/// command line usage: YawiWatch <directory> <seed x> <seed y> <ROIs file> [idle seconds]
+	/// the ROIs file is .csv, .jsonl or .zip; without idle seconds it runs until stopped
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 4)
+		{
+			System.err.println("usage: YawiWatch <directory> <seed x> <seed y> <ROIs file> [idle seconds]");
+			return;
+		}
+
+		File dir = new File(args[0]);
+
+		if(!dir.isDirectory())
+		{
+			System.err.println("Error, not a directory: " + args[0]);
+			return;
+		}
+
+		final YawiRoiWriter writer = YawiRoiWriter.Open(args[3]);
+		long idle_ms = args.length > 4 ? Long.parseLong(args[4]) * 1000 : 0;
+
+		// a RoiSet is a valid zip only once closed
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					writer.Close();
+				}
+				catch(IOException ex)
+				{
+					System.err.println("Error closing the ROIs file: " + ex.getMessage());
+				}
+			}
+		});
+
+		YawiWatch watch = new YawiWatch(dir, Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+										new YawiSettings(), writer, SETTLE_DEF);
+
+		watch.Run(idle_ms);
+
+		System.out.println(watch.GetSlices() + " slices, " + watch.GetFailures() + " without selection");
+	}
+}
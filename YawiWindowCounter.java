@@ -0,0 +1,92 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Counting of the pixels inside the threshold in the Inside square,
+// used when there's no summed area table for the current threshold.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+/// counts the pixels inside a threshold range in a rectangle of a 8-bit plane
+abstract class YawiWindowCounter
+{
+	/// system property enabling the Vector API implementation
+	static final String VECTOR_PROPERTY = "yawi.vector";
+
+	private static YawiWindowCounter instance = null;
+
+	/// number of pixels with value in [lower, upper] in the rectangle [x_a,x_b]x[y_a,y_b],
+	/// the rectangle is clipped to the image
+	abstract int Count(byte[] pixels, int width, int height, int x_a, int y_a, int x_b, int y_b, int lower, int upper);
+
+	/// name of the implementation
+	abstract String Name();
+
+	/// the counter to use: the Vector API one if enabled with -Dyawi.vector=true
+	/// and available (it needs --add-modules jdk.incubator.vector), the scalar one otherwise
+	static synchronized YawiWindowCounter Get()
+	{
+		if(instance == null)
+		{
+			if(Boolean.getBoolean(VECTOR_PROPERTY))
+				instance = LoadVector();
+
+			if(instance == null)
+				instance = new Scalar();
+		}
+
+		return instance;
+	}
+
+	/// the Vector API counter, null if it has not been compiled (its source is in
+	/// vector/, out of the plugin directory) or the incubator module is not available;
+	/// it's loaded by name so the plugin compiles without the module
+	static YawiWindowCounter LoadVector()
+	{
+		try
+		{
+			Class<?> c = Class.forName("YawiVectorCounter", true, YawiWindowCounter.class.getClassLoader());
+
+			return (YawiWindowCounter)c.getDeclaredConstructor().newInstance();
+		}
+		catch(Throwable t)
+		{
+			return null;
+		}
+	}
+
+	/// row by row scalar count, the pixels are read in memory order
+	static final class Scalar extends YawiWindowCounter
+	{
+		int Count(byte[] pixels, int width, int height, int x_a, int y_a, int x_b, int y_b, int lower, int upper)
+		{
+			if(x_a < 0) x_a = 0;
+			if(y_a < 0) y_a = 0;
+			if(x_b >= width) x_b = width - 1;
+			if(y_b >= height) y_b = height - 1;
+
+			int count = 0;
+
+			for(int y = y_a; y <= y_b; y++)
+			{
+				int row = y * width;
+
+				for(int i = row + x_a; i <= row + x_b; i++)
+				{
+					int value = pixels[i] & 0xff;
+
+					if(value >= lower && value <= upper)
+						count++;
+				}
+			}
+
+			return count;
+		}
+
+		String Name() { return "scalar"; }
+	}
+}
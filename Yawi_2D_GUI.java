@@ -37,88 +37,38 @@ import java.awt.Color;
 import java.awt.FileDialog;
 import java.awt.Menu;
 import java.awt.event.*;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
 import java.io.*;
 
 import java.lang.System;
 import java.util.Arrays;
 
-import javax.swing.ImageIcon;
-
 public class Yawi_2D_GUI implements PlugIn
 {
-	/// image data/ pixels
-	private byte[] img_pixels;
-	/// image dimension
-	private Dimension img_dim = new Dimension();
-
 	private int new_type;
 
-	/// lower threshold limit
-	private int lower_threshold;
-	/// upper threshold limit
-	private int upper_threshold;
-	/// radius of threshold rectangle
-	private int rad_tresh;
-
-	/// edge point
-	private Point edge_p = new Point();
-	/// initial direction of edge
-	private int start_dir;
-	/// directions
-	static final int UP = 0, DOWN = 1, UP_OR_DOWN = 2, LEFT = 3, RIGHT = 4, LEFT_OR_RIGHT = 5, NA = 6;
-
-	/// max number of points of a ROI. it is increased if necessary
-	private int max_points = 1000;
-
-	/// starting point, the point clicked by the user
-	private Point start_p = new Point();
-
-	/// X coordinate of the points in the border of the Roi
-	private int[] xpoints = new int[max_points];
-	/// Y coordinate of the points in the border of the Roi
-	private int[] ypoints = new int[max_points];
-	/// backup arrays - X coordinate
-	private int[] xpoints_b;
-	/// backup arrays - Y coordinate
-	private int[] ypoints_b;
-	/// number of points in the generated outline => dimension of xpoints and ypoints
-	private int npoints = 0;
+	/// segmentation state of the shown image: pixels, wand, outline, 3D result
+	private YawiSession session = null;
 
 	/// flag that rapresents the status of the plugin (working or paused)
 	private boolean working = false;
 
-	/// generated ROI
+	/// generated ROI, the one shown on the image
 	private	Roi roi = null;
 
-	// default values for settings
-	private static int RAD_DEF = 2;
-	private static float PERC_DEF = 0.6f;
-	private static int SIDE_DEF = 5;
+	/// segmentation settings, every new session gets a copy of them
+	private YawiSettings settings = new YawiSettings();
 
-	/// Inside - radius threshold
-	private int _rad_ts = RAD_DEF;
-	/// Inside - minimum percentage
-	private float _min_perc = PERC_DEF;
-	/// SetThreshold - side
-	private int _side = SIDE_DEF;
+	/// the ROIs are written here as they are generated, null if not recording
+	private YawiRoiWriter roi_writer = null;
 
-	/// screen dimension
-	Dimension screen_dim = Toolkit.getDefaultToolkit().getScreenSize();
+	/// screen dimension, set when the plugin starts
+	Dimension screen_dim = YawiResources.HEADLESS_SCREEN;
 
 	/// the main window
 	MainWindow mw = null;
 
-	/// the plugin directory of ImageJ
-	static final String base_dir = IJ.getDirectory("plugins");
-	/// Yawi2D directory
-	static final String plugin_dir = base_dir + "Yawi_2D/";
-	/// data directory of the plugin
-	static final String data_dir = plugin_dir + "data/";
-	/// icon image
-	static final String icon_file = data_dir + "icon.png";
-	/// histogram image
-	static final String hist_file = data_dir + "hist.png";
-
 	/// histogram left padding
 	static final int HIST_XPAD = 4;
 	/// histogram top padding
@@ -135,13 +85,25 @@ public class Yawi_2D_GUI implements PlugIn
 	// the plugin is running
 	public void run(String arg)
 	{
+		long t0 = System.nanoTime();
+
 		// check for IJ version
 		if (IJ.versionLessThan("1.37"))
 			return;
 
+		if(GraphicsEnvironment.isHeadless())
+		{
+			IJ.log("Yawi 2D needs a display, the segmentation classes can be used headless");
+			return;
+		}
+
+		screen_dim = YawiResources.ScreenSize();
+
                 // open a new window and show it
 		mw = new MainWindow("Yawi 2D");
 		mw.setVisible(true);
+
+		YawiMetrics.Get().RecordStage(YawiMetrics.STARTUP, System.nanoTime() - t0);
     }
 
 	/// main window
@@ -192,9 +154,11 @@ public class Yawi_2D_GUI implements PlugIn
 			// set default size of the window
 			setSize(800, 600);
 
-			// set the icon for the window
-			// requires ImageIcon from SWING because of some bug in IJ Opener/ImagePlus classes
-			setIconImage(new ImageIcon(icon_file).getImage());
+			// set the icon for the window, it is loaded only once
+			Image icon = YawiResources.Icon();
+
+			if(icon != null)
+				setIconImage(icon);
 
 			// menu data
 			Menu menu = null;
@@ -225,6 +189,25 @@ public class Yawi_2D_GUI implements PlugIn
 			item.setEnabled(false);
 			file_menu.add(item);
 
+			// export a snapshot of every slice of a stack
+			item = new MenuItem("Export stack snapshots");
+			listener = new FileStackSnapListener();
+			item.addActionListener(listener);
+			item.setEnabled(false);
+			file_menu.add(item);
+
+			// export the segmentation metrics
+			item = new MenuItem("Export metrics");
+			listener = new FileMetricsListener();
+			item.addActionListener(listener);
+			file_menu.add(item);
+
+			// record the generated ROIs to a file
+			item = new MenuItem("Record ROIs");
+			listener = new FileRecordListener();
+			item.addActionListener(listener);
+			file_menu.add(item);
+
 			file_menu.addSeparator();
 
 			// exit
@@ -256,6 +239,14 @@ public class Yawi_2D_GUI implements PlugIn
 			item.setEnabled(false);
 			edit_menu.add(item);
 
+			// sub-pixel roi
+			item = new MenuItem("Sub-pixel Roi");
+			listener = new EditSubPixelListener();
+			item.addActionListener(listener);
+			// disable until an image is loaded
+			item.setEnabled(false);
+			edit_menu.add(item);
+
 			edit_menu.addSeparator();
 
 			// Settings
@@ -266,6 +257,40 @@ public class Yawi_2D_GUI implements PlugIn
 			item.setEnabled(false);
 			edit_menu.add(item);
 
+			// Metrics
+			item = new MenuItem("Metrics");
+			listener = new MetricsListener();
+			item.addActionListener(listener);
+			// disable until an image is loaded
+			item.setEnabled(false);
+			edit_menu.add(item);
+
+			// 3D segmentation
+			item = new MenuItem("Segment volume");
+			listener = new VolumeListener();
+			item.addActionListener(listener);
+			// disable until a sequence is loaded
+			item.setEnabled(false);
+			edit_menu.add(item);
+
+			edit_menu.addSeparator();
+
+			// undo the last ROI of the slice
+			item = new MenuItem("Undo Roi", new MenuShortcut(KeyEvent.VK_Z));
+			listener = new EditUndoListener();
+			item.addActionListener(listener);
+			// disable until an image is loaded
+			item.setEnabled(false);
+			edit_menu.add(item);
+
+			// redo the last undone ROI of the slice
+			item = new MenuItem("Redo Roi", new MenuShortcut(KeyEvent.VK_Y));
+			listener = new EditRedoListener();
+			item.addActionListener(listener);
+			// disable until an image is loaded
+			item.setEnabled(false);
+			edit_menu.add(item);
+
 			menu_bar.add(edit_menu);
 			// -- END EDIT MENU --
 
@@ -370,14 +395,14 @@ public class Yawi_2D_GUI implements PlugIn
 			// build the info panel
 			p3.add(cen_int);
 			// info text area
-			txt_area = new TextArea("Yawi is not running\n", 10, 25, TextArea.SCROLLBARS_NONE);
+			txt_area = new TextArea("Yawi is not running\n", 10, 25, TextArea.SCROLLBARS_VERTICAL_ONLY);
 			txt_pan.add(txt_area);
 
 			// build the histogram panel
 			p5.add(bot_int);
 
-			Opener op = new Opener();
-			hist = op.openImage(hist_file);
+			// the background is read from disk only the first time
+			hist = YawiResources.HistBackground();
 			hist_canv = new HistCanvas(hist);
 
 			p6.add(hist_canv, BorderLayout.CENTER);
@@ -415,10 +440,17 @@ public class Yawi_2D_GUI implements PlugIn
 
 			// enable File->Export Snapshot
 			file_menu.getItem(3).setEnabled(true);
+			// enable File->Export stack snapshots
+			file_menu.getItem(4).setEnabled(with_stack);
 			// enable Edit items
 			edit_menu.getItem(0).setEnabled(true);
 			edit_menu.getItem(1).setEnabled(true);
-			edit_menu.getItem(3).setEnabled(true);
+			edit_menu.getItem(2).setEnabled(true);
+			edit_menu.getItem(4).setEnabled(true);
+			edit_menu.getItem(5).setEnabled(true);
+			edit_menu.getItem(6).setEnabled(with_stack);
+			edit_menu.getItem(8).setEnabled(true);
+			edit_menu.getItem(9).setEnabled(true);
 
 			pack();
 		}
@@ -517,23 +549,11 @@ public class Yawi_2D_GUI implements PlugIn
 			// store the ImageProcessor
 			ip = imp.getProcessor();
 
-			// save img dimension
-			img_dim.setSize(ip.getWidth(), ip.getHeight());
-			// save img pixels
-			img_pixels = (byte[])ip.getPixels();
+			// a new session for the image, the old one is dropped
+			session = new YawiSession(imp.getTitle(), new Object[] { ip.getPixels() },
+									  ip.getWidth(), ip.getHeight(), settings);
 
-			if(img_dim.width > img_dim.height)
-			{
-				// image width is bigger than 80% of screen width
-				if((double) (screen_dim.width * 0.80) < (double) img_dim.width)
-					ic.setMagnification((double) ((double)(0.80 * screen_dim.width) / img_dim.width));
-			}
-			else
-			{
-				// image height is bigger than 80% of screen height
-				if((double) (screen_dim.height * 0.80) < (double) img_dim.height)
-					ic.setMagnification((double) ((double)(0.80 * screen_dim.height) / img_dim.height));
-			}
+			SetMagnification();
 
 			imp.setWindow(this);
 
@@ -562,15 +582,57 @@ public class Yawi_2D_GUI implements PlugIn
 			// default value
 			new_type = ImagePlus.GRAY8;
 
+			// converted slices of the studies opened before, null if not enabled
+			YawiSliceCache cache = YawiSliceCache.Default();
+
 			// load all the images in the dir
 			for(int i= 0; i < files_list.length; i++)
 			{
-				img = opener.openImage(seq_dir + files_list[i]);
+				String img_path = seq_dir + files_list[i];
+
+				YawiSliceCache.Slice cached = (cache != null) ? cache.Lookup(img_path) : null;
+
+				// the type of the first image is known without decoding it
+				if(cached != null && stack == null)
+				{
+					first_dim.setSize(cached.width, cached.height);
+
+					ConversionDialog d = new ConversionDialog(mw, "Convert the images", cached.type);
+
+					stack = new ImageStack(cached.width, cached.height);
+				}
+
+				// only the 8-bit gray slices are cached
+				if(cached != null && new_type == ImagePlus.GRAY8)
+				{
+					if(cached.width == first_dim.width && cached.height == first_dim.height)
+					{
+						try
+						{
+							stack.addSlice(files_list[i], new ByteProcessor(cached.width, cached.height, cached.Pixels(), null));
+
+							loaded_imgs++;
+							continue;
+						}
+						catch(IOException ex)
+						{
+							// decode the image
+						}
+					}
+					else
+					{
+						IJ.write("Error loading \"" + files_list[i] +
+								"\"\nimage dimensions are different from the stack size, image skipped\n\n");
+						continue;
+					}
+				}
+
+				img = opener.openImage(img_path);
 
 				if(img != null)
 				{
 					// no images loaded yet
-					if(loaded_imgs == 0)
+					if(stack == null)
 					{
 						// the dimension of the first image is stored
 						first_dim.setSize(img.getWidth(), img.getHeight());
@@ -585,12 +647,18 @@ public class Yawi_2D_GUI implements PlugIn
 					// first one just skip it
 					if(img.getWidth() == first_dim.width && img.getHeight() == first_dim.height)
 					{
+						int src_type = img.getType();
+
 						if(img.getType() != new_type)
 						ConvertImage(img, new_type);
 
 						stack.addSlice(files_list[i], img.getProcessor());
 
 						loaded_imgs++;
+
+						if(cache != null && new_type == ImagePlus.GRAY8)
+							cache.Store(img_path, src_type, (byte[])img.getProcessor().getPixels(),
+										img.getWidth(), img.getHeight());
 					}
 					else
 						IJ.write("Error loading \"" + files_list[i] + 
@@ -609,24 +677,15 @@ public class Yawi_2D_GUI implements PlugIn
 				// store the ImageProcessor
 				ip = imp.getProcessor();
 
-				// save img dimension
-				img_dim.setSize(ip.getWidth(), ip.getHeight());
-				// save img pixels
-				img_pixels = (byte[])ip.getPixels();
+				Object[] planes = new Object[stack.getSize()];
 
-				if(img_dim.width > img_dim.height)
-				{
-					// image width is bigger than 80% of screen width
-					if((double) (screen_dim.width * 0.80) < (double) img_dim.width)
-						ic.setMagnification((double) ((double)(0.80 * screen_dim.width) / img_dim.width));
-				}
-				else
-				{
-					// image height is bigger than 80% of screen height
-					if((double) (screen_dim.height * 0.80) < (double) img_dim.height)
-						ic.setMagnification((double) ((double)(0.80 * screen_dim.height) / img_dim.height));
-				}
+				for(int i = 0; i < planes.length; i++)
+					planes[i] = stack.getPixels(i + 1);
 
+				// a new session for the stack, the old one is dropped
+				session = new YawiSession(new File(seq_dir).getName(), planes, ip.getWidth(), ip.getHeight(), settings);
+
+				SetMagnification();
 
 				imp.setWindow(this);
 
@@ -634,6 +693,26 @@ public class Yawi_2D_GUI implements PlugIn
 			}
 		}
 
+		/// fit the image of the session in 80% of the screen
+		void SetMagnification()
+		{
+			int width = session.GetWidth();
+			int height = session.GetHeight();
+
+			if(width > height)
+			{
+				// image width is bigger than 80% of screen width
+				if((double) (screen_dim.width * 0.80) < (double) width)
+					ic.setMagnification((double) ((double)(0.80 * screen_dim.width) / width));
+			}
+			else
+			{
+				// image height is bigger than 80% of screen height
+				if((double) (screen_dim.height * 0.80) < (double) height)
+					ic.setMagnification((double) ((double)(0.80 * screen_dim.height) / height));
+			}
+		}
+
 		/// convert an image to a new format according to new_type argument
 		void ConvertImage(ImagePlus imp, int new_type)
 		{
@@ -651,6 +730,9 @@ public class Yawi_2D_GUI implements PlugIn
 				ImageConverter conv2 = new ImageConverter(imp);
 				conv2.convertRGBtoIndexedColor(256);
 			}
+			// keep the RGB pixels, segmented by colour distance
+			else if(new_type == ImagePlus.COLOR_RGB)
+				conv.convertToRGB();
 		}
 
 		/// when a stack is loaded, set the slice to manage
@@ -661,8 +743,7 @@ public class Yawi_2D_GUI implements PlugIn
 			// store the ImageProcessor
 			ip = imp.getProcessor();
 
-			// save img pixels
-			img_pixels = (byte[])ip.getPixels();
+			session.SetSlice(ind);
 		}
 
 		/// this listener is activated when the user select File->Open
@@ -733,49 +814,212 @@ public class Yawi_2D_GUI implements PlugIn
 			}
 		}
 
+		/// LUT of the current image
+		int[] GetLut()
+		{
+			ColorModel cm = ip.getColorModel();
+
+			if(cm instanceof IndexColorModel)
+				return YawiSnapshot.Lut((IndexColorModel)cm);
+			else
+				return YawiSnapshot.GrayLut();
+		}
+
+		/// outline of the ROI of a slice, null if there's no ROI on it
+		YawiContour GetSliceContour(int slice)
+		{
+			if(roi == null)
+				return null;
+
+			return session.GetContour(slice);
+		}
+
 		// this listener is activated when the user select File->Export Snapshot
 		class FileSnapListener implements ActionListener
 		{
 			// export a snapshot
 			public void actionPerformed(ActionEvent e)
 			{
+				FileDialog fc = new FileDialog(mw, "Export snapshot...", FileDialog.SAVE);
 				// default name for the file
-				String exp_name = "snap.png";
+				fc.setFile("snap.png");
+				fc.setLocation(mw.getX() + 200, mw.getY() + 100);
+				fc.setVisible(true);
 
-				//creating new image and its processor
-				ImagePlus exp_img = NewImage.createRGBImage(exp_name, img_dim.width, img_dim.height, 1, NewImage.FILL_BLACK);
-				ImageProcessor exp_ip = exp_img.getProcessor();
+				if(fc.getFile() == null)
+					return;
 
-				//copy original image into the new
-				exp_ip.copyBits(ip, 0, 0, Blitter.COPY);
+				String exp_name = fc.getFile();
 
-				//image saver
-				FileSaver fs;
-				//creating the filesaver
-				fs = new FileSaver(exp_img);
+				if(!exp_name.toLowerCase().endsWith(".png"))
+					exp_name = exp_name + ".png";
 
-				if(roi != null)
+				final File file = new File(fc.getDirectory(), exp_name);
+				// the RGB pixels of a colour image, the 8-bit ones otherwise
+				final Object pixels = session.IsColor() ? session.GetRgb(imp.getCurrentSlice()) : session.GetPixels(imp.getCurrentSlice());
+				final int width = session.GetWidth();
+				final int height = session.GetHeight();
+				final int[] lut = GetLut();
+				final YawiContour contour = GetSliceContour(imp.getCurrentSlice());
+
+				// rendering and encoding are done on a background thread
+				YawiSnapshot.Submit(new Runnable()
 				{
-					//set lines color
-					exp_ip.setColor(Color.yellow);
+					public void run()
+					{
+						try
+						{
+							YawiSnapshot.WritePng(YawiSnapshot.Render(pixels, width, height, lut, contour),
+												  width, height, file);
+							IJ.showStatus("Snapshot saved: " + file.getPath());
+						}
+						catch(IOException ex)
+						{
+							IJ.error("Error saving the snapshot: " + file.getPath());
+						}
+					}
+				});
+			}
+		}
+
+		// this listener is activated when the user select File->Export stack snapshots
+		class FileStackSnapListener implements ActionListener
+		{
+			// export a snapshot of every slice
+			public void actionPerformed(ActionEvent e)
+			{
+				FileDialog fc = new FileDialog(mw, "Choose a directory...", FileDialog.SAVE);
+				fc.setFile("snap");
+				fc.setLocation(mw.getX() + 200, mw.getY() + 100);
+				fc.setVisible(true);
+
+				if(fc.getFile() == null)
+					return;
+
+				final File dir = new File(fc.getDirectory());
+				final String prefix = fc.getFile().replaceAll("(?i)\\.png$", "");
+
+				ImageStack stack = imp.getStack();
+				final Object[] planes = new Object[stack.getSize()];
+				final YawiContour[] contours = new YawiContour[stack.getSize()];
+
+				for(int i = 0; i < planes.length; i++)
+				{
+					planes[i] = stack.getPixels(i + 1);
+					contours[i] = GetSliceContour(i + 1);
+				}
+
+				final int[] lut = GetLut();
+				final int width = session.GetWidth();
+				final int height = session.GetHeight();
+
+				YawiSnapshot.Submit(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							int n = YawiSnapshot.ExportStack(planes, width, height, lut, contours, dir, prefix,
+															 Runtime.getRuntime().availableProcessors());
+
+							IJ.showStatus(n + " snapshots saved in " + dir.getPath());
+						}
+						catch(Exception ex)
+						{
+							IJ.error("Error saving the snapshots in: " + dir.getPath());
+						}
+					}
+				});
+			}
+		}
+
+		// this listener is activated when the user select File->Export metrics
+		class FileMetricsListener implements ActionListener
+		{
+			// append the metrics to a text file
+			public void actionPerformed(ActionEvent e)
+			{
+				FileDialog fc = new FileDialog(mw, "Export metrics...", FileDialog.SAVE);
+				fc.setFile("yawi_metrics.txt");
+				fc.setLocation(mw.getX() + 200, mw.getY() + 100);
+				fc.setVisible(true);
+
+				if(fc.getFile() == null)
+					return;
 
-					//draw ROI lines
-					for(int i = 0; i < npoints-1 ; i++)
-						exp_ip.drawLine(xpoints_b[i], ypoints_b[i], xpoints_b[i+1], ypoints_b[i+1]);
+				try
+				{
+					YawiMetrics.Get().DumpToFile(fc.getDirectory() + fc.getFile());
+				}
+				catch(IOException ex)
+				{
+					IJ.error("Error writing the file: " + fc.getDirectory() + fc.getFile());
+				}
+			}
+		}
+
+		// this listener is activated when the user select File->Record ROIs
+		class FileRecordListener implements ActionListener
+		{
+			// start or stop the recording of the ROIs
+			public void actionPerformed(ActionEvent e)
+			{
+				MenuItem item = (MenuItem)e.getSource();
 
-					exp_ip.drawLine(xpoints_b[npoints - 1], ypoints_b[npoints - 1], xpoints_b[0], ypoints_b[0]);
+				if(roi_writer != null)
+				{
+					StopRecording();
+					item.setLabel("Record ROIs");
+					return;
 				}
 
-				//save new image
-				fs.saveAsPng();
+				FileDialog fc = new FileDialog(mw, "Record ROIs to (.csv, .jsonl, .zip)...", FileDialog.SAVE);
+				fc.setFile("rois.csv");
+				fc.setLocation(mw.getX() + 200, mw.getY() + 100);
+				fc.setVisible(true);
+
+				if(fc.getFile() == null)
+					return;
+
+				try
+				{
+					roi_writer = YawiRoiWriter.Open(fc.getDirectory() + fc.getFile());
+					item.setLabel("Stop recording");
+				}
+				catch(IOException ex)
+				{
+					IJ.error("Error opening the file: " + fc.getDirectory() + fc.getFile());
+				}
 			}
 		}
 
+		/// close the file of the recorded ROIs
+		void StopRecording()
+		{
+			if(roi_writer == null)
+				return;
+
+			try
+			{
+				roi_writer.Close();
+			}
+			catch(IOException ex)
+			{
+				IJ.error("Error closing the ROIs file: " + ex.getMessage());
+			}
+
+			roi_writer = null;
+		}
+
 		// this listener is activated when the user select File->Quit
 		class FileExitListener implements ActionListener
 		{
 			// terminate the plugin
-			public void actionPerformed(ActionEvent e) { dispose(); }
+			public void actionPerformed(ActionEvent e)
+			{
+				StopRecording();
+				dispose();
+			}
 		}
 
 		// this listener is activated when the user select Edit->Smooth1
@@ -792,6 +1036,187 @@ public class Yawi_2D_GUI implements PlugIn
 			public void actionPerformed(ActionEvent e) { SmoothRoi2(); }
 		}
 
+		// this listener is activated when the user select Edit->Sub-pixel Roi
+		class EditSubPixelListener implements ActionListener
+		{
+			// sub-pixel outline of the Roi
+			public void actionPerformed(ActionEvent e) { SubPixelRoi(); }
+		}
+
+		// this listener is activated when the user select Edit->Undo Roi
+		class EditUndoListener implements ActionListener
+		{
+			// previous ROI of the slice
+			public void actionPerformed(ActionEvent e) { UndoRoi(); }
+		}
+
+		// this listener is activated when the user select Edit->Redo Roi
+		class EditRedoListener implements ActionListener
+		{
+			// next ROI of the slice
+			public void actionPerformed(ActionEvent e) { RedoRoi(); }
+		}
+
+		/// this listener is activated when the user select Edit->Segment volume
+		class VolumeListener implements ActionListener
+		{
+			// 3D segmentation from the last point clicked
+			public void actionPerformed(ActionEvent e)
+			{
+				if(roi == null || !session.HasContour())
+				{
+					PrintInfo("Click on the region to segment first");
+					return;
+				}
+
+				// the job works on its own copy of what it needs: the GUI can
+				// segment or load another image in the meantime
+				final YawiSession sess = session;
+				final int gen = sess.GetGeneration();
+				final Object[] planes = sess.GetPlanes();
+				final int width = sess.GetWidth();
+				final int height = sess.GetHeight();
+				final int seed_x = sess.GetSeedX();
+				final int seed_y = sess.GetSeedY();
+				final int seed_z = sess.GetContourSlice() - 1;
+				final YawiSettings s = new YawiSettings(sess.settings);
+
+				PrintInfo("Segmenting the volume...");
+
+				new Thread(new Runnable()
+				{
+					public void run()
+					{
+						YawiVolumeSegmenter.Result res = null;
+
+						try
+						{
+							YawiVolumeSegmenter vs = new YawiVolumeSegmenter(planes, width, height, s,
+								YawiVolumeSegmenter.CONN_6, Runtime.getRuntime().availableProcessors());
+
+							res = vs.Segment(seed_x, seed_y, seed_z);
+						}
+						catch(Exception ex)
+						{
+							IJ.error("Error segmenting the volume: " + ex);
+						}
+
+						final YawiVolumeSegmenter.Result result = res;
+
+						EventQueue.invokeLater(new Runnable()
+						{
+							public void run() { SetVolume(sess, result, gen); }
+						});
+					}
+				}, "Yawi 3D").start();
+			}
+		}
+
+		/// store the result of a 3D segmentation started when the outline of
+		/// sess was number gen and show it
+		void SetVolume(YawiSession sess, YawiVolumeSegmenter.Result result, int gen)
+		{
+			// another image has been loaded or the seed outline has been replaced
+			if(sess != session || !sess.SetVolume(result, gen))
+			{
+				PrintInfo("The volume has been discarded, the outline has changed");
+				return;
+			}
+
+			YawiVolumeSegmenter.Result volume = result;
+
+			if(volume == null)
+			{
+				PrintInfo("No volume avalaible, retry...");
+				return;
+			}
+
+			ShowVolumeSlice(imp.getCurrentSlice());
+
+			ij.measure.Calibration cal = imp.getCalibration();
+			double voxel = cal.pixelWidth * cal.pixelHeight * cal.pixelDepth;
+
+			int slices = 0;
+
+			for(int i = 0; i < volume.slice_voxels.length; i++)
+				if(volume.slice_voxels[i] > 0)
+					slices++;
+
+			// RECIST: the longest diameter of the lesion over all the slices
+			YawiFeret longest = null;
+			int longest_slice = 0;
+
+			for(int z = 0; z < volume.contours.length; z++)
+				for(int k = 0; k < volume.contours[z].length; k++)
+				{
+					YawiFeret f = YawiFeret.Of(volume.contours[z][k], cal.pixelWidth, cal.pixelHeight);
+
+					if(f != null && (longest == null || f.max > longest.max))
+					{
+						longest = f;
+						longest_slice = z + 1;
+					}
+				}
+
+			PrintInfo("                  VOLUME DATA\n\nvoxels: " + volume.voxels +
+					  "\nvolume: " + IJ.d2s(volume.voxels * voxel, 2) + " " + cal.getUnit() + "^3" +
+					  "\nslices: " + slices +
+					  "\ntime: " + (volume.time_ns / 1000000) + " ms" +
+					  ((longest == null) ? "" :
+					   "\n\nlongest diameter: " + IJ.d2s(longest.max, 2) + " " + cal.getUnits() + " (slice " + longest_slice + ")" +
+					   "\nshort axis: " + IJ.d2s(longest.short_axis, 2) + " " + cal.getUnits()));
+
+			// the outlines of every slice are written to the ROIs file
+			if(roi_writer != null)
+			{
+				ImageStack stack = imp.getStack();
+
+				try
+				{
+					for(int z = 0; z < volume.contours.length; z++)
+						for(int k = 0; k < volume.contours[z].length; k++)
+							roi_writer.Write(stack.getShortSliceLabel(z + 1), z + 1, volume.contours[z][k],
+											 session.GetPixels(z + 1), session.GetWidth(), session.GetHeight());
+				}
+				catch(IOException ex)
+				{
+					IJ.error("Error writing the ROIs file: " + ex.getMessage());
+					StopRecording();
+				}
+			}
+		}
+
+		/// show the outline of the 3D region on a slice
+		void ShowVolumeSlice(int slice)
+		{
+			YawiContour[] cs = session.GetVolume().contours[slice - 1];
+
+			if(cs.length == 0)
+			{
+				imp.killRoi();
+				return;
+			}
+
+			// the largest outline of the slice
+			YawiContour c = cs[0];
+
+			for(int i = 1; i < cs.length; i++)
+				if(cs[i].Area() > c.Area())
+					c = cs[i];
+
+			session.ShowVolumeSlice(slice, c.Copy());
+
+			roi = new PolygonRoi((int[])c.xpoints.clone(), (int[])c.ypoints.clone(), c.npoints, Roi.TRACED_ROI);
+			imp.setRoi(roi);
+		}
+
+		/// this listener is activated when the user select Edit->Metrics
+		class MetricsListener implements ActionListener
+		{
+			// show the metrics in the Results area
+			public void actionPerformed(ActionEvent e) { PrintInfo(YawiMetrics.Get().Dump()); }
+		}
+
 		/// this listener is activated when the user select Edit->Settings
 		class SettingsListener implements ActionListener
 		{
@@ -799,6 +1224,10 @@ public class Yawi_2D_GUI implements PlugIn
 			{
 				// show an AWT FileDialog to choose the file
 				SettingsDialog sd = new SettingsDialog(mw, "Settings");
+
+				// the dialog is modal, the current ROI follows the new settings
+				if(sd.changed)
+					RefineROI();
 			}
 		}
 
@@ -843,19 +1272,55 @@ public class Yawi_2D_GUI implements PlugIn
 					"To export a screenshot of the current image:\n" +
 					"1. File->Export Snapshot\n" +
 					"2. Set the name of the PNG file to export (i.e. \"snap.png\")\n" +
+					"File->Export stack snapshots saves a PNG file for every slice of a sequence.\n" +
 					"NOTE: an image/image sequence is required to perform this operation.\n\n" +
+					"To inspect the segmentation times and counters:\n" +
+					"1. Edit->Metrics shows them in the Results area\n" +
+					"2. File->Export metrics appends them to a text file\n\n" +
+					"To segment a region through a whole sequence:\n" +
+					"1. Click on the region in one of the slices\n" +
+					"2. Edit->Segment volume grows the region in 3D and shows its volume\n" +
+					"3. Use the slide bar to see the outline on every slice\n\n" +
+					"To open a sequence faster the next times:\n" +
+					"1. Start ImageJ with -Dyawi.cache=<directory>\n" +
+					"2. The slices converted to 8-bit gray are stored in the directory and read from there " +
+					"until the image files change\n\n" +
+					"To save the ROIs of a whole stack:\n" +
+					"1. File->Record ROIs and choose a .csv, .jsonl or .zip (ImageJ RoiSet) file\n" +
+					"2. Every generated ROI is written to the file with its statistics\n" +
+					"3. File->Stop recording to close the file\n\n" +
 					"To improve the generated ROI:\n" +
 					"1. Edit->Smooth1 Roi\n" +
-					"2. Edit->Smooth2 Roi (this could be instable and mess up the ROI)\n\n" +
+					"2. Edit->Smooth2 Roi (this could be instable and mess up the ROI)\n" +
+					"3. Edit->Sub-pixel Roi replaces the ROI with a sub-pixel outline with less points\n" +
+					"4. Edit->Settings updates the ROI with the new values, its outline is searched near the old one\n" +
+					"5. Edit->Undo Roi and Edit->Redo Roi (Ctrl+Z, Ctrl+Y) step through the ROIs of the slice\n\n" +
 					"----------------------------------------\n\n" +
 					"Settings data\n\n" +
 					"- Threshold square dimension:\n" +
 					"     dimension of the square used to set the threshold, usually an high value means a wider threshold range\n\n" +
+					"- Threshold estimator:\n" +
+					"     Min/max uses the whole range of the square, Percentiles discards the darkest and brightest 5% of the pixels " +
+					"and Mean +/- k sigma uses the mean and the standard deviation of the square; the last two are not opened by a " +
+					"few noisy pixels and can be used with bigger squares\n\n" +
+					"- Sigma multiplier k:\n" +
+					"     half width of the range of Mean +/- k sigma in standard deviations, a higher value means a wider " +
+					"threshold range\n\n" +
 					"- Outline search square dimension:\n" +
 					"     dimension of the square used during the outline search, usually an high value means less accuracy in the search\n\n" +
 					"- Outline search inside percentage:\n" +
 					"     minimum percentage of pixels inside a square that have to be inside the threshold in order to consider the " +
-					"square as inside a ROI, usually an high value means more accuracy\n\n", true);
+					"square as inside a ROI, usually an high value means more accuracy\n\n" +
+					"- Leak guard:\n" +
+					"     with a value greater than 0 the tracing stops as soon as the outline reaches the image border, its bounds " +
+					"cover more than this percentage of the slice or it gets too long for them, and the reason is shown\n\n" +
+					"- Seed snapping radius:\n" +
+					"     with a value greater than 0 the threshold is set on the most uniform square within this distance " +
+					"from the click, useful when the click is close to the border of the region\n\n" +
+					"- Colour distance:\n" +
+					"     for the images opened as RGB color, the region is made of the pixels close to the colour around " +
+					"the click: Per channel compares R, G and B one by one, CIE Lab measures the distance as the eye sees it " +
+					"(Delta E)\n\n", true);
 
 				d.setVisible(true);
 			}
@@ -867,6 +1332,10 @@ public class Yawi_2D_GUI implements PlugIn
 			public void adjustmentValueChanged(AdjustmentEvent e) 
 			{
 				SetSlice(e.getValue());
+
+				if(session.GetVolume() != null)
+					ShowVolumeSlice(e.getValue());
+
 				mw.RepaintHistogram();
 			}
 		}
@@ -913,6 +1382,7 @@ public class Yawi_2D_GUI implements PlugIn
 		{
 			Checkbox c1;
 			Checkbox c2;
+			Checkbox c3;
 
 			public ConversionDialog(Frame parent, String title, int type)
 			{
@@ -923,6 +1393,7 @@ public class Yawi_2D_GUI implements PlugIn
 				CheckboxGroup group = new CheckboxGroup();
 				c1 = new Checkbox("8-bit gray", group, true);
 				c2 = new Checkbox("8-bit color", group, false);
+				c3 = new Checkbox("RGB color (colour distance)", group, false);
 
 				Label l = new Label("", Label.CENTER);
 
@@ -956,10 +1427,11 @@ public class Yawi_2D_GUI implements PlugIn
 				add(l, BorderLayout.NORTH);
 
 				Panel p = new Panel();
-				p.setLayout(new GridLayout(2, 1));
+				p.setLayout(new GridLayout(3, 1));
 
 				p.add(c1);
 				p.add(c2);
+				p.add(c3);
 
 				add(p, BorderLayout.CENTER);
 
@@ -993,6 +1465,8 @@ public class Yawi_2D_GUI implements PlugIn
 					new_type = ImagePlus.GRAY8;
 				else if(c2.getState())
 					new_type = ImagePlus.COLOR_256;
+				else if(c3.getState())
+					new_type = ImagePlus.COLOR_RGB;
 				else
 					new_type = ImagePlus.GRAY16;
 
@@ -1013,14 +1487,25 @@ public class Yawi_2D_GUI implements PlugIn
 			Scrollbar rad_sel;
 			Scrollbar perc_sel;
 			Scrollbar side_sel;
+			Scrollbar leak_sel;
+			Scrollbar snap_sel;
+			Scrollbar k_sel;
+			Choice thr_sel;
+			Choice color_sel;
 
 			Label v1;
 			Label v2;
 			Label v3;
+			Label v5;
+			Label v6;
+			Label v7;
 
 			Button ok;
 			Button reset;
 
+			/// true if the settings have been stored with Ok
+			boolean changed = false;
+
 			public SettingsDialog(Frame parent, String title)
 			{
 				super(parent, title, true);
@@ -1028,51 +1513,97 @@ public class Yawi_2D_GUI implements PlugIn
 				setLayout(new BorderLayout());
 
 				InsetsPanel p1 = new InsetsPanel(10, 10, 10, 10);
-				p1.setLayout(new GridLayout(3, 1));
+				p1.setLayout(new GridLayout(8, 1));
 
+				Label l4 = new Label("Threshold estimator");
+				Label l9 = new Label("Sigma multiplier k (Mean +/- k sigma)");
 				Label l3 = new Label("Threshold square dimension");
 				Label l1 = new Label("Outline search square dimension");
 				Label l2 = new Label("Outline search inside percentage");
+				Label l6 = new Label("Leak guard (% of the slice, 0 = off)");
+				Label l7 = new Label("Seed snapping radius (0 = off)");
+				Label l8 = new Label("Colour distance (RGB images)");
 
+				p1.add(l4);
+				p1.add(l9);
 				p1.add(l3);
 				p1.add(l1);
 				p1.add(l2);
+				p1.add(l6);
+				p1.add(l7);
+				p1.add(l8);
 
 				add(p1, BorderLayout.WEST);
 
 				InsetsPanel p2 = new InsetsPanel(10, 20, 10, 20);
-				p2.setLayout(new GridLayout(3, 1));
+				p2.setLayout(new GridLayout(8, 1));
 				((GridLayout)(p2.getLayout())).setVgap(10);
 
+				thr_sel = new Choice();
+
+				for(int i = 0; i < YawiSettings.THR_NAMES.length; i++)
+					thr_sel.add(YawiSettings.THR_NAMES[i]);
+
+				thr_sel.select(settings._thr_mode);
+
+				color_sel = new Choice();
+
+				for(int i = 0; i < YawiColorDistance.MODE_NAMES.length; i++)
+					color_sel.add(YawiColorDistance.MODE_NAMES[i]);
+
+				color_sel.select(settings._color_mode);
+
 				// scrollbar parameters: orientation, value, visible, min, max
- 				side_sel = new Scrollbar(Scrollbar.HORIZONTAL, _side, 1, 2, 7);
- 				rad_sel = new Scrollbar(Scrollbar.HORIZONTAL, _rad_ts, 1, 2, 6);
- 				perc_sel = new Scrollbar(Scrollbar.HORIZONTAL, ((int)(_min_perc * 10)), 1, 3, 11);
+ 				side_sel = new Scrollbar(Scrollbar.HORIZONTAL, settings._side, 1, 2, 26);
+ 				rad_sel = new Scrollbar(Scrollbar.HORIZONTAL, settings._rad_ts, 1, 2, 6);
+ 				perc_sel = new Scrollbar(Scrollbar.HORIZONTAL, ((int)(settings._min_perc * 10)), 1, 3, 11);
+ 				leak_sel = new Scrollbar(Scrollbar.HORIZONTAL, Math.round(settings._leak_frac * 10), 1, 0, 11);
+ 				snap_sel = new Scrollbar(Scrollbar.HORIZONTAL, settings._snap_rad, 1, 0, 11);
+ 				k_sel = new Scrollbar(Scrollbar.HORIZONTAL, Math.round(settings._thr_k * 10), 1, 5, 51);
 
 				side_sel.setBlockIncrement(1);
 				rad_sel.setBlockIncrement(1);
 				perc_sel.setBlockIncrement(1);
+				leak_sel.setBlockIncrement(1);
+				snap_sel.setBlockIncrement(1);
+				k_sel.setBlockIncrement(1);
 
 				side_sel.addAdjustmentListener(this);
 				rad_sel.addAdjustmentListener(this);
 				perc_sel.addAdjustmentListener(this);
+				leak_sel.addAdjustmentListener(this);
+				snap_sel.addAdjustmentListener(this);
+				k_sel.addAdjustmentListener(this);
 
+				p2.add(thr_sel);
+				p2.add(k_sel);
 				p2.add(side_sel);
 				p2.add(rad_sel);
 				p2.add(perc_sel);
+				p2.add(leak_sel);
+				p2.add(snap_sel);
+				p2.add(color_sel);
 
 				add(p2, BorderLayout.CENTER);
 
 				InsetsPanel p3 = new InsetsPanel(10, 10, 10, 10);
-				p3.setLayout(new GridLayout(3, 1));
+				p3.setLayout(new GridLayout(8, 1));
 
-				v1 = new Label(String.valueOf(_rad_ts), Label.RIGHT);
-				v2 = new Label(String.valueOf(((int)(_min_perc * 10))), Label.RIGHT);
-				v3 = new Label(String.valueOf(_side), Label.RIGHT);
+				v1 = new Label(String.valueOf(settings._rad_ts), Label.RIGHT);
+				v2 = new Label(String.valueOf(((int)(settings._min_perc * 10))), Label.RIGHT);
+				v3 = new Label(String.valueOf(settings._side), Label.RIGHT);
+				v5 = new Label(String.valueOf(Math.round(settings._leak_frac * 100)), Label.RIGHT);
+				v6 = new Label(String.valueOf(settings._snap_rad), Label.RIGHT);
+				v7 = new Label(String.valueOf(Math.round(settings._thr_k * 10) / 10.0f), Label.RIGHT);
 
+				p3.add(new Label(""));
+				p3.add(v7);
 				p3.add(v3);
 				p3.add(v1);
 				p3.add(v2);
+				p3.add(v5);
+				p3.add(v6);
+				p3.add(new Label(""));
 
 				add(p3, BorderLayout.EAST);
 
@@ -1116,27 +1647,57 @@ public class Yawi_2D_GUI implements PlugIn
 				// reset to default values
 				if(obj == reset)
 				{
-					side_sel.setValue(SIDE_DEF);
-					v3.setText(String.valueOf(SIDE_DEF));
+					thr_sel.select(YawiSettings.THR_DEF);
+
+					k_sel.setValue(Math.round(YawiSettings.K_DEF * 10));
+					v7.setText(String.valueOf(YawiSettings.K_DEF));
 
-					rad_sel.setValue(RAD_DEF);
-					v1.setText(String.valueOf(RAD_DEF));
+					side_sel.setValue(YawiSettings.SIDE_DEF);
+					v3.setText(String.valueOf(YawiSettings.SIDE_DEF));
 
-					perc_sel.setValue(((int)(PERC_DEF * 10)));
-					v2.setText(String.valueOf(((int)(PERC_DEF * 10))));
+					rad_sel.setValue(YawiSettings.RAD_DEF);
+					v1.setText(String.valueOf(YawiSettings.RAD_DEF));
+
+					perc_sel.setValue(((int)(YawiSettings.PERC_DEF * 10)));
+					v2.setText(String.valueOf(((int)(YawiSettings.PERC_DEF * 10))));
+
+					leak_sel.setValue(Math.round(YawiSettings.LEAK_DEF * 10));
+					v5.setText(String.valueOf(Math.round(YawiSettings.LEAK_DEF * 100)));
+
+					snap_sel.setValue(YawiSettings.SNAP_DEF);
+					v6.setText(String.valueOf(YawiSettings.SNAP_DEF));
+
+					color_sel.select(YawiSettings.COLOR_DEF);
 				}
 				// store setted values and exit
 				else if(obj == ok)
 				{
-					_side = side_sel.getValue();
-					_rad_ts = rad_sel.getValue();
-					_min_perc = (float)(perc_sel.getValue() / 10.0f);
+					Store(settings);
+
+					// the shown image follows the new settings too
+					if(session != null)
+						Store(session.settings);
+
+					changed = true;
 
 					setVisible(false);
 					dispose();
 				}
 			}
 
+			/// copy the values of the dialog to s
+			void Store(YawiSettings s)
+			{
+				s._thr_mode = thr_sel.getSelectedIndex();
+				s._thr_k = k_sel.getValue() / 10.0f;
+				s._side = side_sel.getValue();
+				s._rad_ts = rad_sel.getValue();
+				s._min_perc = (float)(perc_sel.getValue() / 10.0f);
+				s._leak_frac = leak_sel.getValue() / 10.0f;
+				s._snap_rad = snap_sel.getValue();
+				s._color_mode = color_sel.getSelectedIndex();
+			}
+
 			// scrollbar moved
 			public void adjustmentValueChanged(AdjustmentEvent e)
 			{
@@ -1148,6 +1709,12 @@ public class Yawi_2D_GUI implements PlugIn
 					v1.setText(String.valueOf(rad_sel.getValue()));
 				else if(obj == perc_sel)
 					v2.setText(String.valueOf(perc_sel.getValue()));
+				else if(obj == leak_sel)
+					v5.setText(String.valueOf(leak_sel.getValue() * 10));
+				else if(obj == snap_sel)
+					v6.setText(String.valueOf(snap_sel.getValue()));
+				else if(obj == k_sel)
+					v7.setText(String.valueOf(k_sel.getValue() / 10.0f));
 			}
 
 			public Insets getInsets()
@@ -1200,7 +1767,7 @@ public class Yawi_2D_GUI implements PlugIn
 		void drawOverlay(Graphics g)
 		{
 			g.setColor(Color.green);
-			g.drawString("Roi from " + start_p.x + "," + start_p.y , 15, 15);
+			g.drawString("Roi from " + session.GetSeedX() + "," + session.GetSeedY() , 15, 15);
 		}
 
 		public void mouseReleased(MouseEvent e)
@@ -1290,30 +1857,75 @@ public class Yawi_2D_GUI implements PlugIn
 	/// generate the ROI
 	public void MakeROI(int x, int y)
 	{
-		start_p.setLocation(x, y);
+		ShowContour(session.Segment(x, y));
+	}
 
-		SetThreshold(x, y);
-		AutoOutline(x, y);
+	/// trace again the current ROI after a change of the settings, the new
+	/// outline is searched near the old one
+	public void RefineROI()
+	{
+		if(session == null || roi == null || session.GetVolume() != null ||
+		   session.GetContourSlice() != mw.GetImagePlus().getCurrentSlice())
+			return;
 
+		ShowContour(session.Refine());
+	}
+
+	/// set a new outline as the current ROI
+	private void ShowContour(YawiContour contour)
+	{
 		//there's a selection
-		if(TraceEdge())
+		if(contour != null)
 		{
 			Roi previousRoi = (mw.GetImagePlus()).getRoi();
-			roi = new PolygonRoi(xpoints, ypoints, npoints, Roi.TRACED_ROI);
+			// PolygonRoi makes the arrays relative to the bounds, it gets a copy
+			roi = new PolygonRoi((int[])contour.xpoints.clone(), (int[])contour.ypoints.clone(), contour.npoints, Roi.TRACED_ROI);
 			(mw.GetImagePlus()).killRoi();
 			(mw.GetImagePlus()).setRoi(roi);
 
 			if(previousRoi != null)
 				roi.update(IJ.shiftKeyDown(), IJ.altKeyDown());
 
-			PrintRoiInfo(roi);
+			long t0 = System.nanoTime();
+
+			PrintRoiInfo(roi, contour);
+
+			YawiMetrics.Get().RecordStage(YawiMetrics.INFO, System.nanoTime() - t0);
+
+			if(roi_writer != null)
+				RecordRoi(contour);
+
 			mw.RepaintHistogram();
 		}
 		else	//no selection
 		{
 			(mw.GetImagePlus()).killRoi();
+			// the actions on the ROI don't act on the one no longer shown
+			roi = null;
 
-			mw.PrintInfo("No selection avalaible, retry...");
+			int failure = session.GetFailure();
+
+			mw.PrintInfo("No selection avalaible, retry..." +
+						 ((failure != YawiSegmenter.FAIL_NONE) ? "\n\n" + YawiSegmenter.FAIL_NAMES[failure] : ""));
+		}
+	}
+
+	/// write a generated outline to the ROIs file
+	private void RecordRoi(YawiContour contour)
+	{
+		ImagePlus imp = mw.GetImagePlus();
+		int slice = imp.getCurrentSlice();
+
+		String name = (imp.getStackSize() > 1) ? imp.getStack().getShortSliceLabel(slice) : imp.getTitle();
+
+		try
+		{
+			roi_writer.Write(name, slice, contour, session.GetPixels(slice), session.GetWidth(), session.GetHeight());
+		}
+		catch(IOException ex)
+		{
+			IJ.error("Error writing the ROIs file: " + ex.getMessage());
+			mw.StopRecording();
 		}
 	}
 
@@ -1346,480 +1958,112 @@ public class Yawi_2D_GUI implements PlugIn
 		mw.PrintInfo(info);
 	}
 
-	/// set the threshold of the ROI
-	private void SetThreshold(int x, int y)
+	/// print some info about a traced outline, computed from its chain code
+	/// in time linear in the perimeter instead of scanning its bounds
+	private void PrintRoiInfo(Roi roi, YawiContour contour)
 	{
-		int dist = _side / 2;
-		int color;
+		YawiChainCode chain = YawiChainCode.Of(contour);
 
-		int i,k;
+		// not a chain of unit steps
+		if(chain == null)
+		{
+			PrintRoiInfo(roi);
+			return;
+		}
 
-		lower_threshold = 255;
-		upper_threshold = 0;
+		Rectangle roi_rect = chain.GetBounds();
+		YawiChainCode.Moments m = chain.GetMoments();
 
-		for(i = (y - dist); i <= (y + dist);i++)
-		{
-			for(k = (x - dist); k <= (x + dist);k++)
-			{
-				color = GetColor(k, i);
+		// RECIST measures in the units of the image
+		ij.measure.Calibration cal = mw.GetImagePlus().getCalibration();
+		YawiFeret feret = YawiFeret.Of(contour, cal.pixelWidth, cal.pixelHeight);
 
-				if(color > upper_threshold)
-					upper_threshold = color;
-				else if(color < lower_threshold)
-					lower_threshold = color;
-			}
-		}
-	}
+		String info = "                  ROI DATA\n\nx: " + roi_rect.x + "\ny: " + roi_rect.y +
+					"\nwidth: " + roi_rect.width + "\nheight: " + roi_rect.height +
+					"\narea: " + ((long)m.area) + "\nperimeter: " + ((int)chain.Perimeter()) +
+					"\ncentroid: " + IJ.d2s(m.CentroidX(), 2) + ", " + IJ.d2s(m.CentroidY(), 2) +
+					"\nangle: " + IJ.d2s(m.Angle(), 1) +
+					"\n\nlongest diameter: " + IJ.d2s(feret.max, 2) + " " + cal.getUnits() +
+					"\nshort axis: " + IJ.d2s(feret.short_axis, 2) + " " + cal.getUnits() +
+					"\nmin Feret: " + IJ.d2s(feret.min, 2) + " " + cal.getUnits();
 
-	/// return the color of a pixel located at (x,y)
-	private int GetColor(int x, int y)
-	{
-		if(x >= 0 && y >= 0 && x < img_dim.width && y < img_dim.height)
-			return img_pixels[(img_dim.width * y) + x] & 0xff;
-		else
-			return 0;
+		mw.PrintInfo(info);
 	}
 
-	/// find ROI border starting from (start_x,start_y) point inside the area
-	private void AutoOutline(int start_x, int start_y)
+	/// replace the ROI with the sub-pixel outline of the same region,
+	/// the outline is decimated so it has much less points than the traced one
+	private void SubPixelRoi()
 	{
-		edge_p.setLocation(start_x, start_y);
+		if(roi == null || session.GetContour(mw.GetImagePlus().getCurrentSlice()) == null)
+			return;
 
-		int direction = 0;
+		// the rounded outline is used by the snapshots and the smoothing
+		YawiPolygon poly = session.SubPixel();
 
-		if(Inside(edge_p.x, edge_p.y, RIGHT))
+		if(poly == null)
 		{
-			// if DELTAthreshold is very small we use the ImageJ inside
-			if((upper_threshold - lower_threshold) < 5)
-				do { edge_p.x++; } while(Inside(edge_p.x, edge_p.y) && edge_p.x < img_dim.width);
-			else
-			{
-				do { edge_p.x++; } while(Inside(edge_p.x, edge_p.y, RIGHT) && edge_p.x < img_dim.width);
-				// we are still into the threshold area
-				if(Inside(edge_p.x, edge_p.y))
-					do { edge_p.x++; } while(Inside(edge_p.x, edge_p.y) && edge_p.x < img_dim.width);
-				// we are out the threshold area more than 1 pixel
-				else if(!Inside(edge_p.x - 1, edge_p.y))
-					do { edge_p.x--; } while(!Inside(edge_p.x, edge_p.y, LEFT) && edge_p.x > 0);
-			}
-
-			// initial direction
-			if(!Inside(edge_p.x - 1, edge_p.y - 1))
-				direction = RIGHT;
-			else if(Inside(edge_p.x, edge_p.y - 1))
-		 		direction = LEFT;
-			else
-		 		direction = DOWN;
-		}
-		else
-		{
-			// this case is not managed
+			mw.PrintInfo("No sub-pixel outline avalaible, retry...");
+			return;
 		}
 
-		// start direction is set for traceEdge
-		start_dir = direction;
+		roi = new PolygonRoi(new FloatPolygon(poly.xpoints, poly.ypoints, poly.npoints), Roi.POLYGON);
+		(mw.GetImagePlus()).setRoi(roi);
+
+		PrintRoiInfo(roi);
 	}
 
-	/// ImageJ inside, checks just 1 pixel
-	/// check if the pixel color is inside the threshold or not
-	private boolean Inside(int x, int y)
+	/// go back to the previous ROI of the slice
+	private void UndoRoi()
 	{
-		int value = -1;
-
-		if(x >= 0 && y >= 0 && x < img_dim.width && y < img_dim.height)
-			value = img_pixels[(img_dim.width * y) + x] & 0xff;
-
-		return (value >= lower_threshold && value <= upper_threshold);
+		ShowRestored(session.Undo(), "Nothing to undo on this slice");
 	}
 
-	/// Yawi2D inside, checks a square area
-	/// check if most of the pixels are inside the threshold or not
-	private boolean Inside(int x, int y, int direction)
+	/// go forward to the next ROI of the slice
+	private void RedoRoi()
 	{
-		int x_a, x_b;
-		int y_a, y_b;
-
-		x_a = x_b = y_a = y_b = 0;
-
-
-		// moving UP
-		if(direction == UP)
-		{
-			if(x - _rad_ts > 0)
-				x_a = x - _rad_ts;
-			else
-				x_a = 0;
-
-			if(x + rad_tresh < img_dim.width)
-				x_b = x + _rad_ts;
-			else
-				x_b = img_dim.width - 1;
-
-			if(y-(_rad_ts * 2) > 0)
-				y_a = y - (_rad_ts * 2);
-			else
-				y_a = 0;
-
-			y_b = y;
-		}
-
-		// moving DOWN
-		if(direction == DOWN)
-		{
-			if(x - _rad_ts > 0)
-				x_a = x - _rad_ts;
-			else
-				x_a = 0;
-
-			if(x + _rad_ts < img_dim.width)
-		 		x_b = x + _rad_ts;
-			else
-				x_b = img_dim.width - 1;
-
-			y_a = y;
-
-			if(y + (_rad_ts * 2) < img_dim.height)
-				y_b = y+(_rad_ts * 2);
-			else
-				y_b = img_dim.height - 1;
-		}
-
-		// moving LEFT
-		if(direction == LEFT)
-		{
-			if(x - (2 * _rad_ts) > 0)
-				x_a = x - (2 * _rad_ts);
-			else
-				x_a = 0;
-
-			x_b = x;
-
-			if(y - _rad_ts > 0)
-				y_a = y - _rad_ts;
-			else
-				y_a = 0;
-
-			if(y + _rad_ts < img_dim.height)
-				y_b = y + _rad_ts;
-			else
-				y_b = img_dim.height - 1;
-		}
-
-		// moving RIGHT
-		if(direction == RIGHT)
-		{
-			x_a = x;
-
-			if(x+(2 * _rad_ts) < img_dim.width)
-				x_b = x + (2 * _rad_ts);
-			else
-				x_b = img_dim.width - 1;
-
-			if(y - _rad_ts > 0)
-				y_a = y - _rad_ts;
-			else
-				y_a = 0;
-
-			if(y + _rad_ts < img_dim.height)
-				y_b = y + _rad_ts;
-			else
-				y_b = img_dim.height - 1;
-		}
-
-		int area = ((_rad_ts * 2) + 1)*((_rad_ts * 2) + 1);
-		int inside_count = 0;
-		int xp,yp;
-
-		for(xp = x_a; xp <= x_b; xp++)
-		{
-			for(yp = y_a; yp <= y_b; yp++)
-			{
-					if(Inside(xp,yp))
-						inside_count++;
-			}
-		}
-
-		return (((float)inside_count) / area >= _min_perc);
+		ShowRestored(session.Redo(), "Nothing to redo on this slice");
 	}
 
-	/// traces an object defined by lower and upper threshold values.
-	/// The boundary points are stored in the public xpoints and ypoints fields
-	private boolean TraceEdge()
+	/// show an outline of the history, it's not recorded again
+	private void ShowRestored(YawiContour contour, String none)
 	{
-		int secure = 0;
-
-		int[] table =
-		{
-							// 1234 1=upper left pixel,  2=upper right, 3=lower left, 4=lower right
-			NA, 			// 0000 should never happen
-			RIGHT,			// 000X
-			DOWN,			// 00X0
-			RIGHT,			// 00XX
-			UP,				// 0X00
-			UP,				// 0X0X
-			UP_OR_DOWN,		// 0XX0 Go up or down depending on current direction
-			UP,				// 0XXX
-			LEFT,			// X000
-			LEFT_OR_RIGHT,  // X00X Go left or right depending on current direction
-			DOWN,			// X0X0
-			RIGHT,			// X0XX
-			LEFT,			// XX00
-			LEFT,			// XX0X
-			DOWN,			// XXX0
-			NA,				// XXXX Should never happen
-		};
-
-		int index;
-		int new_direction;
-		int x = edge_p.x;
-		int y = edge_p.y;
-		int direction = start_dir;
-
-		// upper left
-		boolean UL = Inside(x - 1, y - 1);
-		// upper right
-		boolean UR = Inside(x, y - 1);
-		// lower left
-		boolean LL = Inside(x - 1, y);
-		// lower right
-		boolean LR = Inside(x, y);
-
-		int count = 0;
-
-		do
+		if(contour == null)
 		{
-			index = 0;
-
-			if(LR) index |= 1;
-			if(LL) index |= 2;
-			if(UR) index |= 4;
-			if(UL) index |= 8;
-
-			new_direction = table[index];
-
-			// uncertainty, up or down
-			if(new_direction == UP_OR_DOWN)
-			{
-				if(direction == RIGHT)
-					new_direction = UP;
-				else
-					new_direction = DOWN;
-			}
-
-			// uncertainty, left or right
-			if(new_direction == LEFT_OR_RIGHT)
-			{
-				if(direction == UP)
-			   		new_direction = LEFT;
-			 	else
-				 	new_direction = RIGHT;
-			}
-
-			// error
-		   	if(new_direction == NA)
-				 return false;
-
-			// a new direction means a new selection's point
-			if(new_direction != direction)
-		 	{
-				xpoints[count] = x;
-			 	ypoints[count] = y;
-			 	count++;
-
-				// xpoints and ypoints need more memory
-			 	if(count == xpoints.length)
-			 	{
-					int[] xtemp = new int[max_points * 2];
-				 	int[] ytemp = new int[max_points * 2];
-
-				 	System.arraycopy(xpoints, 0, xtemp, 0, max_points);
-				 	System.arraycopy(ypoints, 0, ytemp, 0, max_points);
-
-				 	xpoints = xtemp;
-				 	ypoints = ytemp;
-
-				 	max_points *= 2;
-				}
-			}
-
-			// moving along the selected direction
-		  	switch(new_direction)
-			{
-				case UP:
-		 	    	y = y - 1;
-				 	LL = UL;
-				 	LR = UR;
-				 	UL = Inside(x - 1, y - 1);
-				 	UR = Inside(x, y - 1);
-				 	break;
-
-			 	case DOWN:
-				 	y = y + 1;
-				 	UL = LL;
-				 	UR = LR;
-				 	LL = Inside(x - 1, y);
-				 	LR = Inside(x, y);
-				 	break;
-
- 		 		case LEFT:
-					x = x - 1;
-				 	UR = UL;
-				 	LR = LL;
-				 	UL = Inside(x - 1, y - 1);
-				 	LL = Inside(x - 1, y);
-				 	break;
-
-			 	case RIGHT:
-				 	x = x + 1;
-				 	UL = UR;
-				 	LL = LR;
-				 	UR = Inside(x, y - 1);
-				 	LR = Inside(x, y);
-				 	break;
-			}
-
-		  	direction = new_direction;
-
-		 	if(secure < 10000)
-				secure++;
-		 	else	// traceEdge OVERFLOW!!!
-				return false;
-
-		} while ((x != edge_p.x || y != edge_p.y || direction != start_dir));
-
-		// number of ROI points
-	 	npoints = count;
+			mw.PrintInfo(none);
+			return;
+		}
 
-		// backup ROI point
-	 	xpoints_b = new int[npoints];
-	 	ypoints_b = new int[npoints];
+		// PolygonRoi makes the arrays relative to the bounds, it gets a copy
+		roi = new PolygonRoi((int[])contour.xpoints.clone(), (int[])contour.ypoints.clone(), contour.npoints, Roi.TRACED_ROI);
+		(mw.GetImagePlus()).setRoi(roi);
 
-		for(int i = 0; i < npoints ; i++)
-		{
-				xpoints_b[i] = xpoints[i];
-				ypoints_b[i] = ypoints[i];
-		}
+		PrintRoiInfo(roi, contour);
 
-		return true;
+		mw.RepaintHistogram();
 	}
 
 	/// first algorithm for smoothing the ROI
 	private void SmoothRoi1()
 	{
-		// init new arrays
-		int[] xpoints_smooth = new int[npoints];
-		int[] ypoints_smooth = new int[npoints];
-
-		boolean search = true;
-		boolean found = false;
-		int s_ind;
-		int smooth_points = 0;
-
-		for(int i = 0; i < npoints; i++)
-		{
-			s_ind = i + 1;
-
-			while(s_ind < npoints && !found)
-			{
-				// found an equal point
-				if(xpoints_b[i] == xpoints_b[s_ind] && ypoints_b[i] == ypoints_b[s_ind])
-					found = true;
-
-				s_ind++;
-			}
-
-			if(found)
-			{
-				s_ind--;
-
-				found = false;
-				i = s_ind;
-			}
-
-			xpoints_smooth[smooth_points] = xpoints_b[i];
-			ypoints_smooth[smooth_points] = ypoints_b[i];
-
-			smooth_points++;
-		}
-
-		// store the smoothed Roi coordinates
-		for(int i = 0; i < smooth_points; i++)
-		{
-			xpoints_b[i] = xpoints_smooth[i];
-			ypoints_b[i] = ypoints_smooth[i];
-		}
-
-		npoints = smooth_points;
-		roi = new PolygonRoi(xpoints_smooth, ypoints_smooth, smooth_points, Roi.TRACED_ROI);
-		(mw.GetImagePlus()).setRoi(roi);
+		SetSmoothed(session.Smooth(1));
 	}
 
 	/// second algorithm for smoothing the ROI
 	private void SmoothRoi2()
 	{
-		//make new arrays
-		int[] xpoints_smooth = new int[npoints];
-			int[] ypoints_smooth = new int[npoints];
-
-		boolean search = true;
-		boolean found = false;
-		int s_ind;
-		int smooth_points = 0;
-
-		int cur_ind = 0;
-
-		while(cur_ind < npoints)
-		{
-			//copy a point
-			xpoints_smooth[smooth_points] = xpoints_b[cur_ind];
-			ypoints_smooth[smooth_points] = ypoints_b[cur_ind];
-			smooth_points++;
-
-			s_ind = cur_ind + 1;
-
-			// look for a close point
-			while(s_ind < npoints && !found)
-			{
-				// found a close point
-				if((xpoints_b[cur_ind] == xpoints_b[s_ind] &&
-					Math.abs(ypoints_b[cur_ind] - ypoints_b[s_ind]) == 2) ||
-				   (ypoints_b[cur_ind] == ypoints_b[s_ind] &&
-					Math.abs(xpoints_b[cur_ind] - xpoints_b[s_ind]) == 2))
-					found = true;
-
-				s_ind++;
-			}
-
-			// close point found
-			if(found)
-			{
-				s_ind--;
-
-				found = false;
-				cur_ind = s_ind;
-			}
-			else
-				cur_ind++;
-
-			if(cur_ind < npoints)
-			{
-				xpoints_smooth[smooth_points] = xpoints_b[cur_ind];
-				ypoints_smooth[smooth_points] = ypoints_b[cur_ind];
-
-				smooth_points++;
-				cur_ind++;
-			}
-		}
+		SetSmoothed(session.Smooth(2));
+	}
 
-		for(int i = 0; i < smooth_points; i++)
+	/// show a smoothed outline as the current ROI
+	private void SetSmoothed(YawiContour smooth)
+	{
+		if(smooth == null)
 		{
-			xpoints_b[i] = xpoints_smooth[i];
-			ypoints_b[i] = ypoints_smooth[i];
+			mw.PrintInfo("No ROI to smooth on this slice");
+			return;
 		}
 
-		npoints = smooth_points;
-
-		roi = new PolygonRoi(xpoints_smooth, ypoints_smooth, smooth_points, Roi.TRACED_ROI);
+		roi = new PolygonRoi(smooth.xpoints, smooth.ypoints, smooth.npoints, Roi.TRACED_ROI);
 		(mw.GetImagePlus()).setRoi(roi);
 	}
 }
@@ -0,0 +1,77 @@
+/////////////////////////////////////////////////////////////////////
+//
+//		Yawi2D (Yet Another Wand for ImageJ 2D) - 2.1.0-SVN
+//				http://yawi3d.sourceforge.net
+//
+// Vector API implementation of the window count. It needs the
+// incubator module, so it is kept out of the plugin directory: the
+// plugin compiles with a plain javac *.java and loads this class only
+// if it is there. Compile it after the plugin and run with the module:
+//		javac --add-modules jdk.incubator.vector -cp ij.jar:<plugin classes> -d <plugin classes> vector/*.java
+//		java --add-modules jdk.incubator.vector -Dyawi.vector=true ...
+// Without it the plugin uses the scalar count.
+//
+// This software is released under GPL license, you can find a
+// copy of this license at http://www.gnu.org/copyleft/gpl.html
+//
+/////////////////////////////////////////////////////////////////////
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/// counts a row of the window with a vector compare and a popcount of the mask bits
+final class YawiVectorCounter extends YawiWindowCounter
+{
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_128;
+
+	int Count(byte[] pixels, int width, int height, int x_a, int y_a, int x_b, int y_b, int lower, int upper)
+	{
+		if(x_a < 0) x_a = 0;
+		if(y_a < 0) y_a = 0;
+		if(x_b >= width) x_b = width - 1;
+		if(y_b >= height) y_b = height - 1;
+
+		if(lower > upper || x_a > x_b)
+			return 0;
+
+		// the bytes are signed: flipping the sign bit maps 0..255 to -128..127
+		// keeping the order, so the unsigned range becomes a signed one
+		byte lo = (byte)(lower ^ 0x80);
+		byte hi = (byte)(Math.min(upper, 255) ^ 0x80);
+
+		int lanes = SPECIES.length();
+		int count = 0;
+
+		for(int y = y_a; y <= y_b; y++)
+		{
+			int end = y * width + x_b + 1;
+
+			for(int i = y * width + x_a; i < end; i += lanes)
+			{
+				int n = Math.min(lanes, end - i);
+
+				// a masked load is much slower than a plain one: read the whole vector
+				// when it fits in the array and drop the lanes past the row afterwards
+				ByteVector v = (i + lanes <= pixels.length)
+							   ? ByteVector.fromArray(SPECIES, pixels, i)
+							   : ByteVector.fromArray(SPECIES, pixels, i, SPECIES.indexInRange(i, end));
+
+				v = v.lanewise(VectorOperators.XOR, (byte)0x80);
+
+				long inside = v.compare(VectorOperators.GE, lo)
+							   .and(v.compare(VectorOperators.LE, hi))
+							   .toLong();
+
+				if(n < 64)
+					inside &= (1L << n) - 1;
+
+				count += Long.bitCount(inside);
+			}
+		}
+
+		return count;
+	}
+
+	String Name() { return "vector " + SPECIES.length() * 8 + " bit"; }
+}